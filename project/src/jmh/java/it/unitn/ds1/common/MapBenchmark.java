@@ -0,0 +1,100 @@
+package it.unitn.ds1.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Lookups of a transaction in the maps the nodes keep them in: BidiHashMap both ways, from the name of a
+// transaction to its ID and back, and LongHashMap against a HashMap with boxed keys, by ID. The keys looked up
+// follow a random order, the same for every map, so that the caches do not favour one of them.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    public int size;
+
+    private final BidiHashMap<String, Long> bidiHashMap = new BidiHashMap<>();
+    private final LongHashMap<String> longHashMap = new LongHashMap<>();
+    private final Map<Long, String> hashMap = new HashMap<>();
+
+    private long[] ids;
+    private String[] names;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        ids = new long[size];
+        names = new String[size];
+        for (int i = 0; i < size; i++) {
+            // coordinator and counter, as in TransactionID
+            ids[i] = ((long) (i % 10) << 32) | i;
+            names[i] = "client" + (i % 100) + "-" + i;
+            bidiHashMap.put(names[i], ids[i]);
+            longHashMap.put(ids[i], names[i]);
+            hashMap.put(ids[i], names[i]);
+        }
+
+        Random r = new Random(42);
+        for (int i = size - 1; i > 0; i--) {
+            int j = r.nextInt(i + 1);
+            long id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            String name = names[i];
+            names[i] = names[j];
+            names[j] = name;
+        }
+    }
+
+    private int next() {
+        int i = next;
+        next = next + 1 == size ? 0 : next + 1;
+        return i;
+    }
+
+    @Benchmark
+    public Long bidiGet() {
+        return bidiHashMap.get(names[next()]);
+    }
+
+    @Benchmark
+    public String bidiGetKey() {
+        return bidiHashMap.getKey(ids[next()]);
+    }
+
+    // a mapping replaced, as when a transaction is begun again
+    @Benchmark
+    public Long bidiPutAndRemove() {
+        int i = next();
+        bidiHashMap.removeValue(ids[i]);
+        return bidiHashMap.put(names[i], ids[i]);
+    }
+
+    @Benchmark
+    public String longHashMapGet() {
+        return longHashMap.get(ids[next()]);
+    }
+
+    @Benchmark
+    public String hashMapGet() {
+        return hashMap.get(ids[next()]);
+    }
+}
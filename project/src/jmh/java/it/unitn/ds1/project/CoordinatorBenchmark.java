@@ -0,0 +1,109 @@
+package it.unitn.ds1.project;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import it.unitn.ds1.common.LongHashMap;
+import it.unitn.ds1.project.message.dss.decision.DSSDecision;
+import it.unitn.ds1.project.model.Transaction;
+import it.unitn.ds1.project.model.TransactionID;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The bookkeeping of a coordinator for the 2PC of one transaction with the given number of participants, among
+// inFlight others in its table: a YES vote from each participant, counted as onVote does, then the decision
+// and an acknowledgement from each participant, as onDSSDecisionAck takes them, until the record is retired.
+// The DSSes are TestKit probes; nothing is sent to them, the timers and the network are left out.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoordinatorBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int participants;
+
+    @Param({"1", "100", "10000"})
+    public int inFlight;
+
+    private ActorSystem system;
+    private ActorRef client;
+    private final List<ActorRef> dataStores = new ArrayList<>();
+
+    private final LongHashMap<Transaction> transactions = new LongHashMap<>();
+    private final LongHashMap<DSSDecision> decision = new LongHashMap<>();
+    private int transactionCounter = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        system = ActorSystem.create("benchmark");
+        client = new TestKit(system).getRef();
+        for (int i = 0; i < participants; i++) {
+            dataStores.add(new TestKit(system).getRef());
+        }
+        // the others, waiting for their votes
+        for (int i = 0; i < inFlight; i++) {
+            begin();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        TestKit.shutdownActorSystem(system);
+    }
+
+    @Benchmark
+    public boolean voteAndAcknowledge() {
+        long transactionID = begin();
+
+        boolean allYes = false;
+        for (ActorRef voter : dataStores) {
+            Transaction t = transactions.get(transactionID);
+            if (t == null || decision.containsKey(t.id)) {
+                continue;
+            }
+            t.yesVoters.add(voter);
+            t.observePrepare(transactionCounter);
+            allYes = t.allVotedYes();
+            if (allYes) {
+                decision.put(t.id, DSSDecision.COMMIT);
+                t.awaitAcknowledgements();
+            }
+        }
+
+        for (ActorRef acknowledger : dataStores) {
+            Transaction t = transactions.get(transactionID);
+            if (t != null && t.getUnacknowledged().remove(acknowledger) && t.isAcknowledged()) {
+                transactions.remove(t.id);
+                decision.remove(t.id);
+            }
+        }
+        return allYes;
+    }
+
+    // a transaction that has touched every DSS and is waiting for the votes, as after TxnEnd
+    private long begin() {
+        long transactionID = TransactionID.of(0, ++transactionCounter);
+        Transaction t = new Transaction(transactionID, client, transactionCounter, null, false);
+        t.participants.addAll(dataStores);
+        transactions.put(transactionID, t);
+        return transactionID;
+    }
+}
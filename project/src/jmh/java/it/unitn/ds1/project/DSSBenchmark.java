@@ -0,0 +1,129 @@
+package it.unitn.ds1.project;
+
+import it.unitn.ds1.project.concurrency.ConcurrencyControl;
+import it.unitn.ds1.project.concurrency.MultiVersionConcurrencyControl;
+import it.unitn.ds1.project.concurrency.OptimisticConcurrencyControl;
+import it.unitn.ds1.project.concurrency.TwoPhaseLocking;
+import it.unitn.ds1.project.model.DataItem;
+import it.unitn.ds1.project.model.PrivateWorkspace;
+import it.unitn.ds1.project.model.TransactionID;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// One transaction of workspaceSize keys through the concurrency control of a DSS, the way its handlers drive it:
+//  - read: the access and copy of onDSSReadRequest, for each key;
+//  - prepare: then a write to each key, and the validation and locking of checkConsistency;
+//  - commit: then the apply loop of onDecisionResponse.
+// Each one releases the transaction at the end, so the cost of a phase is the difference with the one before.
+// The handlers are private and, besides this, only log and send: the WAL, the network and the actor are left out.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DSSBenchmark {
+
+    @Param({"OCC", "MVCC", "TWO_PHASE_LOCKING"})
+    public ConcurrencyControl.Type concurrency;
+
+    @Param({"1", "4", "16", "64"})
+    public int workspaceSize;
+
+    // keys of the DSS: the transactions go round them, so that MVCC keeps its versions
+    private static final int KEYS = 1024;
+
+    private ConcurrencyControl concurrencyControl;
+    private int transactionCounter = 0;
+    private long timestamp = 0;
+    private int nextKey = 0;
+
+    @Setup
+    public void setUp() {
+        int[] keys = IntStream.range(0, KEYS).toArray();
+        switch (concurrency) {
+            case MVCC:
+                concurrencyControl = new MultiVersionConcurrencyControl(0, keys,
+                        DSS.MVCC_VERSIONS, DSS.INITIAL_VALUE, DSS.INITIAL_VERSION);
+                break;
+            case TWO_PHASE_LOCKING:
+                concurrencyControl = new TwoPhaseLocking(0, keys,
+                        DSS.INITIAL_VALUE, DSS.INITIAL_VERSION, Init.DEADLOCK_PREVENTION);
+                break;
+            default:
+                concurrencyControl = new OptimisticConcurrencyControl(0, keys,
+                        DSS.INITIAL_VALUE, DSS.INITIAL_VERSION);
+                break;
+        }
+    }
+
+    @Benchmark
+    public PrivateWorkspace read() {
+        long transactionID = TransactionID.of(0, ++transactionCounter);
+        PrivateWorkspace workspace = execute(transactionID, false);
+        concurrencyControl.release(transactionID);
+        return workspace;
+    }
+
+    @Benchmark
+    public boolean prepare() {
+        long transactionID = TransactionID.of(0, ++transactionCounter);
+        PrivateWorkspace workspace = execute(transactionID, true);
+        boolean commit = concurrencyControl.prepare(transactionID, workspace, ++timestamp);
+        concurrencyControl.release(transactionID);
+        return commit;
+    }
+
+    @Benchmark
+    public boolean commit() {
+        long transactionID = TransactionID.of(0, ++transactionCounter);
+        PrivateWorkspace workspace = execute(transactionID, true);
+        boolean commit = concurrencyControl.prepare(transactionID, workspace, ++timestamp);
+        if (commit) {
+            concurrencyControl.commit(workspace, ++timestamp);
+        }
+        concurrencyControl.release(transactionID);
+        return commit;
+    }
+
+    // reads workspaceSize keys, and writes them back if asked, as the read and write handlers do
+    private PrivateWorkspace execute(long transactionID, boolean write) {
+        PrivateWorkspace workspace = new PrivateWorkspace();
+        workspace.setStartTimestamp(++timestamp);
+
+        for (int i = 0; i < workspaceSize; i++) {
+            int key = nextKey;
+            nextKey = (nextKey + 1) % KEYS;
+
+            access(transactionID, workspace, key, false);
+            workspace.put(key, concurrencyControl.copy(key, workspace));
+            if (write) {
+                access(transactionID, workspace, key, true);
+                DataItem item = workspace.get(key);
+                item.setValue(item.getValue() + 1);
+                item.incrementVersion();
+            }
+        }
+        return workspace;
+    }
+
+    // alone on its keys, a transaction never waits: if it does, the numbers are not those of the hot path
+    private void access(long transactionID, PrivateWorkspace workspace, int key, boolean write) {
+        ConcurrencyControl.Access access = concurrencyControl.access(transactionID, workspace, key, write);
+        if (access != ConcurrencyControl.Access.GRANTED) {
+            throw new IllegalStateException("Access to key " + key + " not granted: " + access);
+        }
+    }
+}
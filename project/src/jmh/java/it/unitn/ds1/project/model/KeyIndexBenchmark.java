@@ -0,0 +1,78 @@
+package it.unitn.ds1.project.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Lookups of a key in the KeyIndex of a store, up to more than 2^16 keys: a hash that kept only some of the
+// bits of the key would pile them up in a few runs of buckets there. The keys are a contiguous range, as with
+// RANGE, or spread over the ints, as with CONSISTENT_HASH; half of the lookups are for keys not held. The keys
+// looked up follow a random order, so that the caches do not favour the first ones.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyIndexBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    public int size;
+
+    @Param({"RANGE", "SPREAD"})
+    public String keys;
+
+    private KeyIndex index;
+    private int[] lookups;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        Random r = new Random(42);
+        Set<Integer> seen = new HashSet<>();
+        int[] held = new int[size];
+        lookups = new int[size * 2];
+        for (int i = 0; i < size; i++) {
+            // even keys held, the odd ones next to them not
+            int key;
+            do {
+                key = "RANGE".equals(keys) ? i * 2 : r.nextInt() & ~1;
+            } while (!seen.add(key));
+            held[i] = key;
+            lookups[i * 2] = key;
+            lookups[i * 2 + 1] = key + 1;
+        }
+        index = new KeyIndex(held);
+
+        for (int i = lookups.length - 1; i > 0; i--) {
+            int j = r.nextInt(i + 1);
+            int key = lookups[i];
+            lookups[i] = lookups[j];
+            lookups[j] = key;
+        }
+    }
+
+    private int next() {
+        int i = next;
+        next = next + 1 == lookups.length ? 0 : next + 1;
+        return i;
+    }
+
+    @Benchmark
+    public int slotOf() {
+        return index.slotOf(lookups[next()]);
+    }
+}
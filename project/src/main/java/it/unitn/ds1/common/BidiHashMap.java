@@ -13,8 +13,12 @@ public class BidiHashMap<T, U> extends HashMap<T, U> {
 
     @Override
     public U put(T key, U value) {
+        U previous = super.put(key, value);
+        if (previous != null) {
+            this.reverseHashMap.remove(previous, key);
+        }
         this.reverseHashMap.put(value, key);
-        return super.put(key, value);
+        return previous;
     }
 
     @Override
@@ -30,6 +34,15 @@ public class BidiHashMap<T, U> extends HashMap<T, U> {
         return reverseHashMap.get(value);
     }
 
+    // drops the value, and the mapping of its key if the key still maps to it
+    public T removeValue(U value) {
+        T key = reverseHashMap.remove(value);
+        if (key != null) {
+            super.remove(key, value);
+        }
+        return key;
+    }
+
     @Override
     public void putAll(Map<? extends T, ? extends U> m) {
         for (Map.Entry<? extends T, ? extends U> e : m.entrySet()) {
@@ -39,6 +52,21 @@ public class BidiHashMap<T, U> extends HashMap<T, U> {
         }
     }
 
+    @Override
+    public U remove(Object key) {
+        U value = super.remove(key);
+        if (value != null) {
+            this.reverseHashMap.remove(value, key);
+        }
+        return value;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        this.reverseHashMap.clear();
+    }
+
     @Override
     public boolean remove(Object key, Object value) {
         return super.remove(key, value) && this.reverseHashMap.remove(value, key);
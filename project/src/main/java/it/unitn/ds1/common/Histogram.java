@@ -0,0 +1,105 @@
+package it.unitn.ds1.common;
+
+import java.util.Arrays;
+
+// Histogram of non-negative long values with a bounded relative error, in the way of HdrHistogram: values below
+// 128 have a bucket each, larger ones fall into 64 buckets per power of two, so a value is known within 1/64 of
+// itself. Recording is a few shifts and an array increment, whatever the range; the whole range of longs takes
+// under 4000 buckets.
+public class Histogram {
+    private static final int SUB_BITS = 6;
+    private static final int HALF = 1 << SUB_BITS;          // buckets per power of two
+    private static final int LINEAR = HALF << 1;            // values with a bucket each
+    private static final int BUCKETS = LINEAR + (63 - SUB_BITS) * HALF;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count = 0;
+    private long sum = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+
+    public Histogram() {
+    }
+
+    public Histogram(Histogram other) {
+        add(other);
+    }
+
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts[indexOf(value)]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void add(Histogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long min() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    // the value below which `percentile` % of the values are, within the error of its bucket
+    public long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // the last bucket holds the max, which is known exactly
+                return seen == count ? max : Math.min(max, Math.max(min, middleOf(i)));
+            }
+        }
+        return max;
+    }
+
+    private static int indexOf(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        // value >>> shift has SUB_BITS + 1 bits, its highest one set
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return LINEAR + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    private static long middleOf(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / HALF + 1;
+        long lowest = (long) ((index - LINEAR) % HALF + HALF) << shift;
+        return lowest + (1L << shift) / 2;
+    }
+}
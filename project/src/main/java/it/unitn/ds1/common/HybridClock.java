@@ -0,0 +1,16 @@
+package it.unitn.ds1.common;
+
+// Hybrid logical clock: physical time in microseconds, made strictly increasing and pushed
+// past every timestamp received from another node, so that causally later events get larger timestamps.
+public class HybridClock {
+    private long last = 0;
+
+    public long now() {
+        last = Math.max(last + 1, System.currentTimeMillis() * 1000);
+        return last;
+    }
+
+    public void observe(long timestamp) {
+        last = Math.max(last, timestamp);
+    }
+}
@@ -1,14 +1,65 @@
 package it.unitn.ds1.common;
 
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// Logging for every actor of the JVM. A call only fills an event in a lock-free ring (see LogRingBuffer); a
+// background thread formats the events and writes them, in order, so the actors wait neither for the output
+// nor for each other. A message the level filters out costs nothing when it is given as a template with its
+// arguments ("{}" for each), or as a supplier. The arguments of a template are formatted later, by the writer:
+// they must not change after the call (strings, numbers, enums, immutable messages).
 public class Log {
 
-    private static LogLevel setLevel = null;
+    // TEXT: "[LEVEL] id: message" lines; JSON: one object per line, with the arguments of a template apart
+    public enum Format {TEXT, JSON}
+
+    private static final int RING_SIZE = 1 << 16;       // events waiting for the writer at most
+    private static final int OUTPUT_BUFFER = 1 << 16;   // chars
+    private static final long IDLE_WAIT = 1_000_000;    // sleep of the writer with nothing to write, ns
+
+    private static volatile LogLevel setLevel = null;
+    private static volatile Format format = Format.TEXT;
+    private static volatile Writer out;
+    private static final LogRingBuffer ring = new LogRingBuffer(RING_SIZE);
+    private static Thread writer = null;
 
     public static void initializeLog(LogLevel level) {
-        setLevel = level;
+        initializeLog(level, Format.TEXT, null);
+    }
+
+    // the output goes to the file at path (appended to) if not null, to stdout otherwise
+    public static synchronized void initializeLog(LogLevel level, Format format, String path) {
+        Writer output;
+        try {
+            output = new BufferedWriter(new OutputStreamWriter(path == null ? new FileOutputStream(FileDescriptor.out)
+                    : new FileOutputStream(path, true), StandardCharsets.UTF_8), OUTPUT_BUFFER);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot log to " + path, e);
+        }
+        if (out != null) {
+            flush();
+        }
+        Log.out = output;
+        Log.format = format;
+        Log.setLevel = level;
+
+        if (writer == null) {
+            writer = new Thread(Log::write, "log-writer");
+            writer.setDaemon(true);
+            writer.start();
+            // what is still in the ring when the JVM exits is written anyway
+            Runtime.getRuntime().addShutdownHook(new Thread(Log::flush));
+        }
     }
 
-    public static void partialLog(boolean startOfLine, LogLevel level, int id, String s) {
+    public static boolean isEnabled(LogLevel level) {
         if (level == null) {
             throw new RuntimeException("Logging must have a level!");
         }
@@ -17,26 +68,161 @@ public class Log {
             throw new RuntimeException("Initialize Log class first.");
         }
 
-        if (setLevel.compareTo(level) <= 0) {
-            if (startOfLine) {
-                System.out.format("[%s] %2d: %s", level, id, s);
-            } else {
-                System.out.format("%s", s);
+        return setLevel.compareTo(level) <= 0;
+    }
+
+    public static void log(LogLevel level, int id, String s) {
+        if (isEnabled(level)) {
+            enqueue(level, id, s, null);
+        }
+    }
+
+    // built only if the level is enabled, by the caller
+    public static void log(LogLevel level, int id, Supplier<String> message) {
+        if (isEnabled(level)) {
+            enqueue(level, id, message.get(), null);
+        }
+    }
+
+    // each "{}" of the template stands for the next argument, formatted by the writer
+    public static void log(LogLevel level, int id, String template, Object... args) {
+        if (isEnabled(level)) {
+            enqueue(level, id, template, args);
+        }
+    }
+
+    // Waits until everything logged before the call has been written. Who writes to stdout directly (a prompt)
+    // calls it first, so that the output does not interleave.
+    public static void flush() {
+        long target = ring.claimed();
+        while (ring.released() < target) {
+            LockSupport.parkNanos(IDLE_WAIT / 10);
+        }
+        try {
+            if (out != null) {
+                out.flush();
             }
+        } catch (IOException e) {
+            System.err.println("Cannot write the log: " + e.getMessage());
         }
     }
 
-    public static void log(LogLevel level, int id, String s) {
-        if (level == null) {
-            throw new RuntimeException("Logging must have a level!");
+    private static void enqueue(LogLevel level, int id, String message, Object[] args) {
+        long position;
+        while ((position = ring.claim()) < 0) {
+            // the writer is behind: wait for it rather than lose lines
+            Thread.yield();
         }
+        LogRingBuffer.Event event = ring.event(position);
+        event.time = System.currentTimeMillis();
+        event.level = level;
+        event.id = id;
+        event.message = message;
+        event.args = args;
+        ring.publish(position);
+    }
 
-        if (setLevel == null) {
-            throw new RuntimeException("Initialize Log class first.");
+    /*-- Writer thread -------------------------------------------------------- */
+
+    private static void write() {
+        StringBuilder line = new StringBuilder(256);
+        StringBuilder scratch = new StringBuilder(256);
+        char[] chars = new char[256];
+        while (true) {
+            LogRingBuffer.Event event = ring.peek();
+            try {
+                if (event == null) {
+                    out.flush();
+                    LockSupport.parkNanos(IDLE_WAIT);
+                    continue;
+                }
+
+                line.setLength(0);
+                if (format == Format.JSON) {
+                    formatJson(line, scratch, event);
+                } else {
+                    formatText(line, event);
+                }
+                if (chars.length < line.length()) {
+                    chars = new char[Integer.highestOneBit(line.length()) << 1];
+                }
+                line.getChars(0, line.length(), chars, 0);
+                out.write(chars, 0, line.length());
+            } catch (IOException e) {
+                System.err.println("Cannot write the log: " + e.getMessage());
+            }
+            ring.release();
+        }
+    }
+
+    private static void formatText(StringBuilder line, LogRingBuffer.Event event) {
+        line.append('[').append(event.level).append("] ");
+        if (event.id >= 0 && event.id < 10) {
+            line.append(' ');
         }
+        line.append(event.id).append(": ");
+        expand(line, event);
+        line.append('\n');
+    }
 
-        if (setLevel.compareTo(level) <= 0) {
-            System.out.format("[%s] %2d: %s\n", level, id, s);
+    private static void formatJson(StringBuilder line, StringBuilder scratch, LogRingBuffer.Event event) {
+        line.append("{\"time\":").append(event.time)
+                .append(",\"level\":\"").append(event.level)
+                .append("\",\"node\":").append(event.id)
+                .append(",\"message\":\"");
+        scratch.setLength(0);
+        expand(scratch, event);
+        escape(line, scratch);
+        line.append('"');
+
+        if (event.args != null) {
+            line.append(",\"template\":\"");
+            escape(line, event.message);
+            line.append("\",\"args\":[");
+            for (int i = 0; i < event.args.length; i++) {
+                Object arg = event.args[i];
+                line.append(i > 0 ? "," : "");
+                if (arg instanceof Number || arg instanceof Boolean) {
+                    line.append(arg);
+                } else {
+                    line.append('"');
+                    escape(line, String.valueOf(arg));
+                    line.append('"');
+                }
+            }
+            line.append(']');
+        }
+        line.append("}\n");
+    }
+
+    private static void expand(StringBuilder line, LogRingBuffer.Event event) {
+        String template = event.message;
+        if (event.args == null) {
+            line.append(template);
+            return;
+        }
+        int next = 0;
+        int from = 0;
+        int at;
+        while ((at = template.indexOf("{}", from)) >= 0 && next < event.args.length) {
+            line.append(template, from, at).append(event.args[next++]);
+            from = at + 2;
+        }
+        line.append(template, from, template.length());
+    }
+
+    private static void escape(StringBuilder line, CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c == '\n') {
+                line.append("\\n");
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
         }
     }
 }
@@ -0,0 +1,90 @@
+package it.unitn.ds1.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bounded ring of log events with many producers and one consumer, without locks (after Vyukov's bounded queue):
+// every slot has a sequence number telling whether it is free for the producer of a given round or full for
+// the consumer. A producer claims a slot with a CAS on the tail, fills the event kept there and publishes it;
+// the events are allocated once, with the ring, and reused round after round.
+class LogRingBuffer {
+
+    // one log call, filled by its producer and read by the consumer
+    static final class Event {
+        long time;
+        LogLevel level;
+        int id;
+        String message;         // the text, or the template of the arguments
+        Object[] args;          // null for a plain text
+    }
+
+    private final Event[] events;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;     // moved by the consumer only
+
+    LogRingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of two: " + capacity);
+        }
+        this.events = new Event[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            events[i] = new Event();
+            sequences.set(i, i);
+        }
+    }
+
+    // the position of a free slot, whose event the caller fills before publishing it; -1 if the ring is full
+    long claim() {
+        long position = tail.get();
+        while (true) {
+            long lag = sequences.get((int) position & mask) - position;
+            if (lag == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    return position;
+                }
+                position = tail.get();
+            } else if (lag < 0) {
+                return -1; // the consumer has not read the slot of the previous round yet
+            } else {
+                position = tail.get(); // another producer took it
+            }
+        }
+    }
+
+    Event event(long position) {
+        return events[(int) position & mask];
+    }
+
+    // the event is filled: the consumer may read it
+    void publish(long position) {
+        sequences.set((int) position & mask, position + 1);
+    }
+
+    // consumer only: the next event, or null if it is not published yet
+    Event peek() {
+        return sequences.get((int) head & mask) == head + 1 ? events[(int) head & mask] : null;
+    }
+
+    // consumer only: done with the event of peek(), its slot is free for the next round
+    void release() {
+        Event event = events[(int) head & mask];
+        event.message = null;
+        event.args = null;
+        sequences.set((int) head & mask, head + mask + 1);
+        head++;
+    }
+
+    // events claimed so far
+    long claimed() {
+        return tail.get();
+    }
+
+    // events released so far: every one before this position has been read
+    long released() {
+        return head;
+    }
+}
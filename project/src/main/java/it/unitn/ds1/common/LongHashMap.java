@@ -0,0 +1,184 @@
+package it.unitn.ds1.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongFunction;
+
+// Hash map with primitive long keys: open addressing with linear probing over packed arrays, so that
+// looking a key up neither boxes it nor follows a chain of entries. Null values are not allowed,
+// a null slot is an empty one.
+public class LongHashMap<V> {
+    private static final int INITIAL_CAPACITY = 16;     // always a power of two
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+
+    public LongHashMap() {
+        this.keys = new long[INITIAL_CAPACITY];
+        this.values = new Object[INITIAL_CAPACITY];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return values[find(key)] != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        return (V) values[find(key)];
+    }
+
+    public V getOrDefault(long key, V defaultValue) {
+        V value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    // the previous value, null if there was none
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Cannot map " + key + " to null");
+        }
+        int slot = find(key);
+        @SuppressWarnings("unchecked")
+        V previous = (V) values[slot];
+        keys[slot] = key;
+        values[slot] = value;
+        if (previous == null && ++size > keys.length * LOAD_FACTOR) {
+            resize(keys.length * 2);
+        }
+        return previous;
+    }
+
+    public V putIfAbsent(long key, V value) {
+        V current = get(key);
+        return current != null ? current : put(key, value);
+    }
+
+    public V computeIfAbsent(long key, LongFunction<? extends V> function) {
+        V current = get(key);
+        if (current == null) {
+            current = function.apply(key);
+            put(key, current);
+        }
+        return current;
+    }
+
+    // the removed value, null if there was none
+    public V remove(long key) {
+        int slot = find(key);
+        @SuppressWarnings("unchecked")
+        V previous = (V) values[slot];
+        if (previous == null) {
+            return null;
+        }
+        values[slot] = null;
+        size--;
+
+        // shift back the entries of the run that follows, so that no probe sequence is broken
+        int mask = keys.length - 1;
+        int hole = slot;
+        for (int i = (slot + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+            int home = hash(keys[i]) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                values[i] = null;
+                hole = i;
+            }
+        }
+        return previous;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    // a copy of the keys: the map can be changed while going through them
+    public long[] keys() {
+        long[] copy = new long[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                copy[n++] = keys[i];
+            }
+        }
+        return copy;
+    }
+
+    // a copy of the values
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> copy = new ArrayList<>(size);
+        for (Object value : values) {
+            if (value != null) {
+                copy.add((V) value);
+            }
+        }
+        return copy;
+    }
+
+    // the map must not be changed from the consumer
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                consumer.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    // the slot holding the key, or the empty slot where it would go
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (values[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // keys that differ only in their high bits (e.g. the same counter at two coordinators) must spread
+    static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEach((key, value) -> sb.append(sb.length() > 1 ? ", " : "").append(key).append('=').append(value));
+        return sb.append('}').toString();
+    }
+}
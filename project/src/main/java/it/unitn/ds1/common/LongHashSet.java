@@ -0,0 +1,42 @@
+package it.unitn.ds1.common;
+
+import java.util.Arrays;
+
+// Set of primitive longs, backed by a LongHashMap
+public class LongHashSet {
+    private final LongHashMap<Boolean> map = new LongHashMap<>();
+
+    public boolean add(long value) {
+        return map.put(value, Boolean.TRUE) == null;
+    }
+
+    public boolean contains(long value) {
+        return map.containsKey(value);
+    }
+
+    public boolean remove(long value) {
+        return map.remove(value) != null;
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    // a copy: the set can be changed while going through it
+    public long[] toArray() {
+        return map.keys();
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(map.keys());
+    }
+}
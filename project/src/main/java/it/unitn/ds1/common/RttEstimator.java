@@ -0,0 +1,59 @@
+package it.unitn.ds1.common;
+
+// Estimate of the round-trip time to one peer, and of how long to wait for an answer before giving up on it,
+// as TCP does for its retransmission timeout (RFC 6298, after Jacobson and Karels): the timeout is the smoothed
+// mean of the samples plus four times their mean deviation, within [min, max]. Each expired timeout doubles it
+// until the next sample (backoff). The owner takes no sample from an exchange it repeated, since it cannot
+// tell which copy was answered (Karn's rule).
+public class RttEstimator {
+    private static final double ALPHA = 1.0 / 8;    // weight of a sample in the mean
+    private static final double BETA = 1.0 / 4;     // weight of a sample in the deviation
+    private static final int K = 4;                 // deviations in the timeout
+    private static final int MAX_BACKOFF = 64;
+
+    private final int min;
+    private final int max;
+    private double mean = -1;           // ms, -1 until the first sample
+    private double deviation = 0;       // ms
+    private int backoff = 1;
+
+    public RttEstimator(int min, int max) {
+        this.min = min;
+        this.max = max;
+    }
+
+    // a round trip that took rtt ms
+    public void observe(double rtt) {
+        if (mean < 0) {
+            mean = rtt;
+            deviation = rtt / 2;
+        } else {
+            deviation = (1 - BETA) * deviation + BETA * Math.abs(mean - rtt);
+            mean = (1 - ALPHA) * mean + ALPHA * rtt;
+        }
+        backoff = 1;
+    }
+
+    // the peer did not answer in time
+    public void backOff() {
+        backoff = Math.min(backoff * 2, MAX_BACKOFF);
+    }
+
+    public boolean hasSamples() {
+        return mean >= 0;
+    }
+
+    // ms; max until the first sample
+    public int timeout() {
+        if (mean < 0) {
+            return max;
+        }
+        double timeout = (mean + Math.max(1, K * deviation)) * backoff;
+        return (int) Math.max(min, Math.min(max, Math.ceil(timeout)));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("rtt %.1f ms +- %.1f, timeout %d ms", mean, deviation, timeout());
+    }
+}
@@ -0,0 +1,150 @@
+package it.unitn.ds1.common;
+
+import java.util.function.LongConsumer;
+
+// Hashed timing wheel (Varghese and Lauck) for the timers of one actor, keyed by a long (a transaction ID).
+// Time goes by in ticks: a timer lives in the bucket of the tick it is due at, modulo the size of the wheel,
+// in a doubly linked list; a map from the key to its entry makes setting and cancelling a timer O(1).
+// advance() visits only the buckets of the ticks gone by, so the owner needs one periodic tick message
+// instead of a scheduled task per timer. A timer fires within one tick after its delay, never before.
+public class TimingWheel {
+    private final int tick;             // ms
+    private final int mask;
+    // one list per bucket, and a last one of the timers that are due and about to fire
+    private final Timer[] buckets;
+    private final int due;
+    private final LongHashMap<Timer> timers = new LongHashMap<>();
+    private long current = 0;           // last tick advanced to, in ticks since the epoch
+    private Timer free = null;          // entries to reuse
+
+    private static final class Timer {
+        long key;
+        long dueTick;
+        int bucket;
+        Timer prev;
+        Timer next;
+    }
+
+    public TimingWheel(int tick, int size) {
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("The size of the wheel must be a power of two: " + size);
+        }
+        this.tick = tick;
+        this.mask = size - 1;
+        this.buckets = new Timer[size + 1];
+        this.due = size;
+    }
+
+    public int size() {
+        return timers.size();
+    }
+
+    public boolean isEmpty() {
+        return timers.isEmpty();
+    }
+
+    public boolean isScheduled(long key) {
+        return timers.containsKey(key);
+    }
+
+    // the timer of key fires after delay ms from now, replacing the one pending, if any
+    public void schedule(long key, int delay, long now) {
+        if (timers.isEmpty()) {
+            // nothing is in the buckets skipped
+            current = Math.max(current, now / tick);
+        }
+        Timer timer = timers.get(key);
+        if (timer != null) {
+            unlink(timer);
+        } else {
+            timer = free != null ? free : new Timer();
+            free = timer.next;
+            timer.key = key;
+            timers.put(key, timer);
+        }
+        timer.dueTick = Math.max(current + 1, (now + delay + tick - 1) / tick);
+        link(timer, (int) timer.dueTick & mask);
+    }
+
+    // false if the timer of key was not pending
+    public boolean cancel(long key) {
+        Timer timer = timers.remove(key);
+        if (timer == null) {
+            return false;
+        }
+        unlink(timer);
+        recycle(timer);
+        return true;
+    }
+
+    public void clear() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = null;
+        }
+        timers.clear();
+    }
+
+    // when the next tick is due, ms since the epoch
+    public long nextTickAt() {
+        return (current + 1) * tick;
+    }
+
+    // Fires, one by one, the timers due by now. A timer may be set or cancelled while the others fire: a
+    // timer cancelled before its turn does not fire.
+    public void advance(long now, LongConsumer expired) {
+        long target = now / tick;
+        if (target > current) {
+            // after more than a round every bucket is visited once
+            long steps = Math.min(target - current, mask + 1);
+            for (long t = current + 1; t <= current + steps; t++) {
+                Timer timer = buckets[(int) t & mask];
+                while (timer != null) {
+                    Timer next = timer.next;
+                    if (timer.dueTick <= target) {
+                        unlink(timer);
+                        link(timer, due);
+                    }
+                    timer = next;
+                }
+            }
+            current = target;
+        }
+
+        Timer timer;
+        while ((timer = buckets[due]) != null) {
+            long key = timer.key;
+            unlink(timer);
+            timers.remove(key);
+            recycle(timer);
+            expired.accept(key);
+        }
+    }
+
+    private void link(Timer timer, int bucket) {
+        timer.bucket = bucket;
+        timer.prev = null;
+        timer.next = buckets[bucket];
+        if (timer.next != null) {
+            timer.next.prev = timer;
+        }
+        buckets[bucket] = timer;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            buckets[timer.bucket] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+        timer.prev = null;
+        timer.next = null;
+    }
+
+    private void recycle(Timer timer) {
+        timer.next = free;
+        free = timer;
+    }
+}
@@ -1,18 +1,28 @@
 package it.unitn.ds1.project;
 
 import akka.actor.AbstractActor;
-import akka.actor.Cancellable;
+import akka.actor.ActorRef;
+import it.unitn.ds1.common.HybridClock;
 import it.unitn.ds1.common.Log;
 import it.unitn.ds1.common.LogLevel;
+import it.unitn.ds1.common.LongHashMap;
+import it.unitn.ds1.common.RttEstimator;
+import it.unitn.ds1.common.TimingWheel;
+import it.unitn.ds1.project.message.NetworkTick;
+import it.unitn.ds1.project.message.TimerTick;
 import it.unitn.ds1.project.message.dss.DSSMessage;
 import it.unitn.ds1.project.message.dss.Recovery;
-import it.unitn.ds1.project.message.dss.Timeout;
 import it.unitn.ds1.project.message.dss.decision.DSSDecision;
 import it.unitn.ds1.project.message.dss.decision.DSSDecisionRequest;
 import it.unitn.ds1.project.message.dss.decision.DSSDecisionResponse;
+import it.unitn.ds1.project.model.DecisionCache;
 import scala.concurrent.duration.Duration;
 
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
@@ -20,20 +30,40 @@ import java.util.concurrent.TimeUnit;
 public abstract class AbstractNode extends AbstractActor {
     final static int VOTE_TIMEOUT = 10000;      // timeout for the votes, ms
     final static int DECISION_TIMEOUT = 10000;  // timeout for the decision, ms
+    final static int DECISION_RETENTION = 2 * DECISION_TIMEOUT;    // stay of a retired decision in the cache, ms
+    final static int DECISION_CACHE_SIZE = 10000;    // max retired decisions kept
+    final static int MIN_TIMEOUT = 1000;        // floor of the adaptive timeouts, ms
+    final static int TIMER_TICK = 100;          // resolution of the transaction timeouts, ms
+    final static int TIMER_WHEEL_SIZE = 512;    // buckets of the wheel: TIMER_TICK * TIMER_WHEEL_SIZE ms per round
 
     final static int MAX_DELAY = 5;
 
     protected int id;                           // node ID
+    protected final Config config;
 
     protected final Random r;
 
-    protected Map<String, DSSDecision> decision;
-    protected Map<String, Cancellable> timeouts;
+    protected LongHashMap<DSSDecision> decision;
+    protected LongHashMap<Long> commitTimestamps;
+    // the timeout of each transaction, driven by one TimerTick at a time while any is pending
+    protected final TimingWheel timeouts = new TimingWheel(TIMER_TICK, TIMER_WHEEL_SIZE);
+    // decisions of the transactions already retired, for the late requests
+    protected final DecisionCache retired = new DecisionCache(DECISION_RETENTION, DECISION_CACHE_SIZE);
+    protected boolean crashed = false;
 
-    protected AbstractNode(int id) {
+    // source of snapshot, prepare and commit timestamps
+    protected final HybridClock clock = new HybridClock();
+
+    // messages waiting for their simulated network delay, one FIFO queue per destination
+    private final Map<ActorRef, Deque<DelayedMessage>> outbox = new HashMap<>();
+    private long nextTickAt = Long.MAX_VALUE;
+    private long nextTimerTickAt = Long.MAX_VALUE;
+
+    protected AbstractNode(int id, Config config) {
         this.id = id;
-        this.decision = new HashMap<>();
-        this.timeouts = new HashMap<>();
+        this.config = config;
+        this.decision = new LongHashMap<>();
+        this.commitTimestamps = new LongHashMap<>();
         this.r = new Random();
     }
 
@@ -46,6 +76,10 @@ public abstract class AbstractNode extends AbstractActor {
     protected Receive crashed() {
         return receiveBuilder()
                 .match(Recovery.class, this::onRecovery)
+                // messages already sent are in the network: a crash does not stop them
+                .match(NetworkTick.class, this::onNetworkTick)
+                // the timers are gone: the pending tick only ends the chain
+                .match(TimerTick.class, this::onTimerTick)
                 .matchAny(msg -> {
                 })
                 .build();
@@ -53,7 +87,7 @@ public abstract class AbstractNode extends AbstractActor {
 
     // abstract methods to be implemented in extending classes
     protected abstract void onRecovery(Recovery msg);
-    protected abstract void onTimeout(Timeout msg);
+    protected abstract void onTimeout(long transactionID);
 
     // multicast
     protected abstract void multicast(DSSMessage m);
@@ -61,6 +95,7 @@ public abstract class AbstractNode extends AbstractActor {
 
     protected void crash(int crashTime) {
         getContext().become(crashed());
+        crashed = true;
         timeouts.clear();
         Log.log(LogLevel.DEBUG, this.id, "Entered crashed mode");
 
@@ -73,43 +108,201 @@ public abstract class AbstractNode extends AbstractActor {
         );
     }
 
-    // schedule a Timeout message in specified time
-    protected void setTimeout(String transactionID, int time) {
-        timeouts.put(transactionID, getContext().system().scheduler().scheduleOnce(
-                Duration.create(time, TimeUnit.MILLISECONDS),
+    // back to normal operation after a crash
+    protected void resume() {
+        getContext().become(createReceive());
+        crashed = false;
+    }
+
+    // onTimeout(transactionID) in the specified time, unless set again or cancelled before
+    protected void setTimeout(long transactionID, int time) {
+        timeouts.schedule(transactionID, time, System.currentTimeMillis());
+        scheduleTimerTick(timeouts.nextTickAt());
+    }
+
+    protected void onTimerTick(TimerTick msg) {
+        nextTimerTickAt = Long.MAX_VALUE;
+        timeouts.advance(System.currentTimeMillis(), this::onTimeout);
+        if (!timeouts.isEmpty()) {
+            scheduleTimerTick(timeouts.nextTickAt());
+        }
+    }
+
+    private void scheduleTimerTick(long at) {
+        if (at >= nextTimerTickAt) {
+            return; // an earlier tick is already on its way
+        }
+        nextTimerTickAt = at;
+        getContext().system().scheduler().scheduleOnce(
+                Duration.create(Math.max(0, at - System.currentTimeMillis()), TimeUnit.MILLISECONDS),
                 getSelf(),
-                new Timeout(transactionID), // the message to send
+                new TimerTick(), // message sent to myself
                 getContext().system().dispatcher(), getSelf()
-        ));
+        );
     }
 
     // fix the final decision of the current node
-    protected void fixDecision(String transactionID, DSSDecision d) {
+    protected void fixDecision(long transactionID, DSSDecision d) {
+        fixDecision(transactionID, d, 0);
+    }
+
+    protected void fixDecision(long transactionID, DSSDecision d, long commitTimestamp) {
         if (!hasDecided(transactionID)) {
             this.decision.put(transactionID, d);
-            Log.log(LogLevel.INFO, this.id, "Fixed decision " + d);
+            if (d == DSSDecision.COMMIT) {
+                this.commitTimestamps.put(transactionID, commitTimestamp);
+            }
+            Log.log(LogLevel.INFO, this.id, "Fixed decision {}", d);
         }
     }
 
-    protected boolean hasDecided(String transactionID) {
-        return decision.get(transactionID) != null;
+    protected DSSDecisionResponse decisionResponse(long transactionID) {
+        if (decision.containsKey(transactionID)) {
+            return new DSSDecisionResponse(transactionID, decision.get(transactionID),
+                    commitTimestamps.getOrDefault(transactionID, 0L));
+        }
+        return new DSSDecisionResponse(transactionID, retired.decision(transactionID),
+                retired.commitTimestamp(transactionID));
+    }
+
+    protected boolean hasDecided(long transactionID) {
+        return decision.get(transactionID) != null || retired.contains(transactionID);
     } // has the node decided?
 
+    protected DSSDecision decisionOf(long transactionID) {
+        DSSDecision d = decision.get(transactionID);
+        return d != null ? d : retired.decision(transactionID);
+    }
+
+    // Nobody needs the transaction any more: its state goes, and its decision moves to the cache.
+    // Extending classes drop their own state, then call this.
+    protected void retire(long transactionID) {
+        DSSDecision d = decision.remove(transactionID);
+        if (d != null) {
+            retired.add(transactionID, d, commitTimestamps.getOrDefault(transactionID, 0L), System.currentTimeMillis());
+        }
+        commitTimestamps.remove(transactionID);
+        timeouts.cancel(transactionID);
+    }
+
     protected void onDSSDecisionRequest(DSSDecisionRequest msg) {
         if (hasDecided(msg.transactionID)) {
-            getSender().tell(new DSSDecisionResponse(msg.transactionID,
-                    decision.get(msg.transactionID)), getSelf());
+            getSender().tell(decisionResponse(msg.transactionID), getSelf());
         }
         // just ignoring if we don't know the decision
     }
 
-    /* -- Auxiliary ---------------------- */
+    /* -- Adaptive timeouts ---------------------- */
+
+    // With ADAPTIVE_TIMEOUTS, the wait for a round trip follows the ones measured so far with each peer (see
+    // RttEstimator), between MIN_TIMEOUT and the fixed timeout, which is also the wait for a peer never heard.
+
+    protected void observeRoundTrip(Map<ActorRef, RttEstimator> roundTrips, ActorRef peer, long sentAt) {
+        if (peer != null && sentAt != 0) {
+            roundTrips.computeIfAbsent(peer, p -> new RttEstimator(MIN_TIMEOUT, Integer.MAX_VALUE))
+                    .observe((System.nanoTime() - sentAt) / 1e6);
+        }
+    }
+
+    // the longest wait among the peers, as the round is over only once they all answered
+    protected int timeoutOf(Map<ActorRef, RttEstimator> roundTrips, Collection<ActorRef> peers, int fixed) {
+        if (!config.adaptiveTimeouts || peers.isEmpty()) {
+            return fixed;
+        }
+        int timeout = MIN_TIMEOUT;
+        for (ActorRef peer : peers) {
+            RttEstimator estimator = roundTrips.get(peer);
+            if (estimator == null || !estimator.hasSamples()) {
+                return fixed;
+            }
+            timeout = Math.max(timeout, estimator.timeout());
+        }
+        return Math.min(timeout, fixed);
+    }
+
+    protected int timeoutOf(Map<ActorRef, RttEstimator> roundTrips, ActorRef peer, int fixed) {
+        return peer == null ? fixed : timeoutOf(roundTrips, List.of(peer), fixed);
+    }
+
+    // the peers did not answer in time: wait longer for them next time
+    protected void backOff(Map<ActorRef, RttEstimator> roundTrips, Collection<ActorRef> peers) {
+        for (ActorRef peer : peers) {
+            RttEstimator estimator = roundTrips.get(peer);
+            if (estimator != null) {
+                estimator.backOff();
+            }
+        }
+    }
+
+    /* -- Simulated network ---------------------- */
+
+    // send a message after a random network delay
+    protected void send(ActorRef destination, Object m) {
+        send(destination, m, r.nextInt(MAX_DELAY));
+    }
+
+    // Send a message after the given delay, without blocking the actor: the message is parked in
+    // the outbox and delivered by a NetworkTick. A message never overtakes an earlier one sent to
+    // the same destination, so channels stay FIFO as they were with a blocking delay.
+    protected void send(ActorRef destination, Object m, int delay) {
+        Deque<DelayedMessage> channel = outbox.get(destination);
+        if (delay <= 0 && channel == null) {
+            destination.tell(m, getSelf());
+            return;
+        }
+
+        long deliverAt = System.currentTimeMillis() + delay;
+        if (channel == null) {
+            channel = new ArrayDeque<>();
+            outbox.put(destination, channel);
+        } else {
+            deliverAt = Math.max(deliverAt, channel.peekLast().deliverAt);
+        }
+        channel.addLast(new DelayedMessage(m, deliverAt));
+        scheduleTick(deliverAt);
+    }
+
+    protected void onNetworkTick(NetworkTick msg) {
+        nextTickAt = Long.MAX_VALUE;
+        long now = System.currentTimeMillis();
+        long earliest = Long.MAX_VALUE;
+
+        for (Map.Entry<ActorRef, Deque<DelayedMessage>> entry : outbox.entrySet()) {
+            Deque<DelayedMessage> channel = entry.getValue();
+            while (!channel.isEmpty() && channel.peekFirst().deliverAt <= now) {
+                entry.getKey().tell(channel.pollFirst().message, getSelf());
+            }
+            if (!channel.isEmpty()) {
+                earliest = Math.min(earliest, channel.peekFirst().deliverAt);
+            }
+        }
+        outbox.values().removeIf(Deque::isEmpty);
+
+        if (earliest != Long.MAX_VALUE) {
+            scheduleTick(earliest);
+        }
+    }
+
+    private void scheduleTick(long at) {
+        if (at >= nextTickAt) {
+            return; // an earlier tick is already on its way
+        }
+        nextTickAt = at;
+        getContext().system().scheduler().scheduleOnce(
+                Duration.create(Math.max(0, at - System.currentTimeMillis()), TimeUnit.MILLISECONDS),
+                getSelf(),
+                new NetworkTick(), // message sent to myself
+                getContext().system().dispatcher(), getSelf()
+        );
+    }
+
+    private static class DelayedMessage {
+        final Object message;
+        final long deliverAt;
 
-    protected void delay(int d) {
-        try {
-            Thread.sleep(d);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        DelayedMessage(Object message, long deliverAt) {
+            this.message = message;
+            this.deliverAt = deliverAt;
         }
     }
 }
@@ -6,32 +6,40 @@ import akka.actor.Cancellable;
 import akka.actor.Props;
 import it.unitn.ds1.common.Log;
 import it.unitn.ds1.common.LogLevel;
+import it.unitn.ds1.common.LongHashMap;
 import it.unitn.ds1.project.message.ClientWelcomeMsg;
 import it.unitn.ds1.project.message.StopMsg;
 import it.unitn.ds1.project.message.txn.begin.TxnAcceptMsg;
 import it.unitn.ds1.project.message.txn.begin.TxnAcceptTimeoutMsg;
+import it.unitn.ds1.project.message.txn.begin.NextTxnMsg;
 import it.unitn.ds1.project.message.txn.begin.TxnBeginMsg;
 import it.unitn.ds1.project.message.txn.end.TxnEndMsg;
 import it.unitn.ds1.project.message.txn.end.TxnResultMsg;
 import it.unitn.ds1.project.message.txn.read.TxnReadRequestMsg;
 import it.unitn.ds1.project.message.txn.read.TxnReadResultMsg;
 import it.unitn.ds1.project.message.txn.write.TxnWriteRequestMsg;
+import it.unitn.ds1.project.metrics.Metrics;
+import it.unitn.ds1.project.workload.KeyChooser;
+import it.unitn.ds1.project.workload.Workload;
 import scala.concurrent.duration.Duration;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 public class Client extends AbstractActor {
 
     private static final double COMMIT_PROBABILITY = 1;
-    private static final double WRITE_PROBABILITY = 0.5;
+    private static final double STALE_READ_PROBABILITY = 0.2;  // read-only TXNs accepting stale values
 
     private static final int MAX_SEQUENTIAL_TXN = 1;
 
-    private static final int MIN_TXN_LENGTH = 5;
-    private static final int MAX_TXN_LENGTH = 10;
-    private static final int RAND_LENGTH_RANGE = MAX_TXN_LENGTH - MIN_TXN_LENGTH + 1;
+    private static final int MIN_PAUSE = 10;        // pause before any TXN, ms
+    private static final int MAX_WAVE_PAUSE = 3000; // extra random pause between the TXNs of a wave (closed loop), ms
+    private static final int SECOND_KEY_TRIES = 10;  // picks of the chooser for a key other than the first
 
 
     private final Integer clientId;
@@ -40,22 +48,24 @@ public class Client extends AbstractActor {
     // the maximum key associated to items of the store
     private Integer maxKey;
 
+    // the load to generate, and the keys it picks
+    private Workload workload;
+    private KeyChooser keyChooser;
+
     // keep track of the number of TXNs (attempted, successfully committed)
     private Integer numAttemptedTxn;
     private Integer numCommittedTxn;
 
-    private Integer numAttemptedTxnInWave;
+    private Integer numScheduledInWave;     // TXNs of the wave given a slot: begun, or about to
+    private Integer numBegunInWave;
+    private Integer numEndedInWave;
+    private Integer numCommittedInWave;
     private Integer numMaxTxnInWave;
+    private long waveStart;
 
-
-    // TXN operation (move some amount from a value to another)
-    private Boolean acceptedTxn;
-    private ActorRef currentCoordinator;
-    private Integer firstKey, secondKey;
-    private Integer firstValue, secondValue;
-    private Integer numOpTotal;
-    private Integer numOpDone;
-    private Cancellable acceptTimeout;
+    // the TXNs waiting for a coordinator to accept them, by attempt, and those accepted, by transaction ID
+    private final Map<Integer, Txn> beginning = new HashMap<>();
+    private final LongHashMap<Txn> running = new LongHashMap<>();
     private final Random r;
 
     /*-- Actor constructor ---------------------------------------------------- */
@@ -76,6 +86,7 @@ public class Client extends AbstractActor {
         return receiveBuilder()
                 .match(ClientWelcomeMsg.class, this::onClientWelcome)
                 .match(StopMsg.class, this::onStop)
+                .match(NextTxnMsg.class, this::onNextTxn)
                 // CLIENT <-- COORDINATOR
                 .match(TxnAcceptMsg.class, this::onTxnAccept)
                 .match(TxnAcceptTimeoutMsg.class, this::onTxnAcceptTimeout)
@@ -86,85 +97,129 @@ public class Client extends AbstractActor {
 
     /*-- Actor methods -------------------------------------------------------- */
 
-    // start a new TXN: choose a random coordinator, send TxnBeginMsg and set timeout
-    void beginTxn() {
-        // some delay between transactions from the same client
-        try {
-            Thread.sleep(10);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+    // some delay between transactions from the same client: the actor is free in the meantime
+    void scheduleTxn(int delay) {
+        numScheduledInWave++;
+        getContext().system().scheduler().scheduleOnce(
+                Duration.create(delay, TimeUnit.MILLISECONDS),
+                getSelf(),
+                new NextTxnMsg(), // message sent to myself
+                getContext().system().dispatcher(), getSelf()
+        );
+    }
 
-        acceptedTxn = false;
-        numAttemptedTxn++;
+    // start a new TXN: choose a random coordinator, send TxnBeginMsg and set timeout
+    void beginTxn(int numInWave, long begunAt) {
+        int attempt = ++numAttemptedTxn;
+        Txn txn = new Txn(numInWave, begunAt, r.nextDouble() < STALE_READ_PROBABILITY);
+        beginning.put(attempt, txn);
 
         // contact a random coordinator and begin TXN
-        currentCoordinator = coordinators.get(r.nextInt(coordinators.size()));
-        currentCoordinator.tell(new TxnBeginMsg(clientId), getSelf());
+        txn.coordinator = coordinators.get(r.nextInt(coordinators.size()));
+        txn.coordinator.tell(new TxnBeginMsg(clientId, attempt, txn.staleReads), getSelf());
 
         // how many operations (taking some amount and adding it somewhere else)?
-        int numExtraOp = RAND_LENGTH_RANGE > 0 ? r.nextInt(RAND_LENGTH_RANGE) : 0;
-        numOpTotal = MIN_TXN_LENGTH + numExtraOp;
-        numOpDone = 0;
+        txn.numOpTotal = workload.txnLength(r);
+        txn.numOpDone = 0;
 
         // timeout for confirmation of TXN by the coordinator (sent to self)
-        acceptTimeout = getContext().system().scheduler().scheduleOnce(
+        txn.acceptTimeout = getContext().system().scheduler().scheduleOnce(
                 Duration.create(5000, TimeUnit.MILLISECONDS),
                 getSelf(),
-                new TxnAcceptTimeoutMsg(), // message sent to myself
+                new TxnAcceptTimeoutMsg(attempt), // message sent to myself
                 getContext().system().dispatcher(), getSelf()
         );
-        Log.log(LogLevel.BASIC, clientId, "BEGIN [" + numAttemptedTxnInWave + "/" + numMaxTxnInWave + "]");
+        Log.log(LogLevel.BASIC, clientId, "BEGIN [{}/{}]{}",
+                numInWave, numMaxTxnInWave, txn.staleReads ? " (stale reads)" : "");
     }
 
-    // end the current TXN sending TxnEndMsg to the coordinator
-    void endTxn() {
+    // end the TXN sending TxnEndMsg to the coordinator
+    void endTxn(Txn txn) {
         boolean doCommit = r.nextDouble() < COMMIT_PROBABILITY;
-        currentCoordinator.tell(new TxnEndMsg(clientId, doCommit), getSelf());
-        firstValue = null;
-        secondValue = null;
-        Log.log(LogLevel.BASIC, clientId, "END OF TXN ["
-                + numAttemptedTxnInWave + "/" + numMaxTxnInWave + "]" + (!doCommit ? " (force abort)" : ""));
+        txn.coordinator.tell(new TxnEndMsg(clientId, txn.transactionID, doCommit), getSelf());
+        txn.firstValue = null;
+        txn.secondValue = null;
+        Log.log(LogLevel.BASIC, clientId, "END OF TXN [{}/{}]{}",
+                txn.numInWave, numMaxTxnInWave, !doCommit ? " (force abort)" : "");
     }
 
     // READ two items (will move some amount from the value of the first to the second)
-    void readTwo() {
+    void readTwo(Txn txn) {
         // read two different keys
-        firstKey = r.nextInt(maxKey + 1);
-        int randKeyOffset = 1 + r.nextInt(maxKey - 1);
-        secondKey = (firstKey + randKeyOffset) % (maxKey + 1);
+        txn.firstKey = keyChooser.next(r);
+        txn.secondKey = secondKey(txn.firstKey);
 
         // READ requests
-        currentCoordinator.tell(new TxnReadRequestMsg(clientId, firstKey), getSelf());
-        currentCoordinator.tell(new TxnReadRequestMsg(clientId, secondKey), getSelf());
+        txn.coordinator.tell(new TxnReadRequestMsg(clientId, txn.transactionID, txn.firstKey), getSelf());
+        txn.coordinator.tell(new TxnReadRequestMsg(clientId, txn.transactionID, txn.secondKey), getSelf());
 
         // delete the current read values
-        firstValue = null;
-        secondValue = null;
-        Log.log(LogLevel.INFO, clientId, "READ #" + numOpDone + " (" + firstKey + "), (" + secondKey + ")");
+        txn.firstValue = null;
+        txn.secondValue = null;
+        txn.readAt = System.nanoTime();
+        Log.log(LogLevel.INFO, clientId, "READ #{} ({}), ({})", txn.numOpDone, txn.firstKey, txn.secondKey);
+    }
+
+    // A key other than the first, from the chooser if it gives one within a few picks: a chooser whose picks all
+    // fall on one key (a single hot key that gets every operation) would loop forever. Else any other key.
+    private int secondKey(int firstKey) {
+        for (int i = 0; i < SECOND_KEY_TRIES; i++) {
+            int key = keyChooser.next(r);
+            if (key != firstKey) {
+                return key;
+            }
+        }
+        int keyCount = maxKey + 1;
+        return (firstKey + 1 + r.nextInt(keyCount - 1)) % keyCount;
     }
 
     // WRITE two items (called with probability WRITE_PROBABILITY after readTwo() values are returned)
-    void writeTwo() {
+    void writeTwo(Txn txn) {
         // take some amount from one value and pass it to the other, then request writes
         Integer amountTaken = 0;
-        if (firstValue >= 1) amountTaken = 1 + r.nextInt(firstValue);
-        currentCoordinator.tell(new TxnWriteRequestMsg(clientId, firstKey, firstValue - amountTaken), getSelf());
-        currentCoordinator.tell(new TxnWriteRequestMsg(clientId, secondKey, secondValue + amountTaken), getSelf());
-        Log.log(LogLevel.INFO, clientId, "WRITE #" + numOpDone
-                + " taken " + amountTaken
-                + " (" + firstKey + ", " + (firstValue - amountTaken) + "), ("
-                + secondKey + ", " + (secondValue + amountTaken) + ")");
+        if (txn.firstValue >= 1) amountTaken = 1 + r.nextInt(txn.firstValue);
+        txn.coordinator.tell(new TxnWriteRequestMsg(clientId, txn.transactionID,
+                txn.firstKey, txn.firstValue - amountTaken), getSelf());
+        txn.coordinator.tell(new TxnWriteRequestMsg(clientId, txn.transactionID,
+                txn.secondKey, txn.secondValue + amountTaken), getSelf());
+        keyChooser.written(txn.firstKey);
+        keyChooser.written(txn.secondKey);
+        Log.log(LogLevel.INFO, clientId, "WRITE #{} taken {} ({}, {}), ({}, {})", txn.numOpDone, amountTaken,
+                txn.firstKey, txn.firstValue - amountTaken, txn.secondKey, txn.secondValue + amountTaken);
     }
 
     /*-- General messages ----------------------------------------------------- */
 
     private void onClientWelcome(ClientWelcomeMsg msg) {
-        this.numAttemptedTxnInWave = 1;
-        this.numMaxTxnInWave = r.nextInt(MAX_SEQUENTIAL_TXN) + 1;
+        this.numScheduledInWave = 0;
+        this.numBegunInWave = 0;
+        this.numEndedInWave = 0;
+        this.numCommittedInWave = 0;
+        this.numMaxTxnInWave = msg.maxTxn > 0 ? msg.maxTxn : r.nextInt(MAX_SEQUENTIAL_TXN) + 1;
+        this.waveStart = System.currentTimeMillis();
         this.coordinators = msg.coordinators;
+        if (!msg.workload.equals(workload) || !msg.maxKey.equals(maxKey)) {
+            this.keyChooser = msg.workload.keyChooser(msg.maxKey + 1);
+        }
         this.maxKey = msg.maxKey;
-        beginTxn();
+        this.workload = msg.workload;
+
+        if (workload.mode == Workload.Mode.OPEN) {
+            scheduleTxn(workload.interArrival(r));
+            return;
+        }
+        // the first TXNs of the wave start together, the others as slots free up
+        while (numScheduledInWave < Math.min(workload.inFlight, numMaxTxnInWave)) {
+            scheduleTxn(MIN_PAUSE);
+        }
+    }
+
+    // an open-loop client schedules the next arrival right away, whatever happens to this TXN
+    private void onNextTxn(NextTxnMsg msg) {
+        beginTxn(++numBegunInWave, System.nanoTime());
+        if (workload.mode == Workload.Mode.OPEN && numScheduledInWave < numMaxTxnInWave) {
+            scheduleTxn(workload.interArrival(r));
+        }
     }
 
     private void onStop(StopMsg msg) {
@@ -175,71 +230,107 @@ public class Client extends AbstractActor {
 
     private void onTxnAccept(TxnAcceptMsg msg) {
         Log.log(LogLevel.DEBUG, clientId, "Received TxnAccept");
-        acceptedTxn = true;
-        acceptTimeout.cancel();
-        readTwo();
+        Txn txn = beginning.remove(msg.attempt);
+        if (txn == null) {
+            // a late accept, for an attempt I have given up on: the coordinator would keep it forever
+            getSender().tell(new TxnEndMsg(clientId, msg.transactionID, false), getSelf());
+            return;
+        }
+        txn.transactionID = msg.transactionID;
+        txn.acceptTimeout.cancel();
+        running.put(txn.transactionID, txn);
+        readTwo(txn);
     }
 
     private void onTxnAcceptTimeout(TxnAcceptTimeoutMsg msg) {
-        if (!acceptedTxn) {
+        Txn txn = beginning.remove(msg.attempt);
+        if (txn != null) {
             Log.log(LogLevel.BASIC, clientId, "Timed out, retrying...");
-            beginTxn();
+            beginTxn(txn.numInWave, txn.begunAt);
         }
     }
 
     private void onReadResult(TxnReadResultMsg msg) {
-        Log.log(LogLevel.INFO, clientId, "READ RESULT (" + msg.key + ", " + msg.value + ")");
+        Txn txn = running.get(msg.transactionID);
+        if (txn == null) {
+            return; // a late answer, for a TXN already over
+        }
+        Log.log(LogLevel.INFO, clientId, "READ RESULT ({}, {})", msg.key, msg.value);
 
         // save the read value(s)
-        if (msg.key.equals(firstKey)) firstValue = msg.value;
-        if (msg.key.equals(secondKey)) secondValue = msg.value;
+        if (msg.key.equals(txn.firstKey)) txn.firstValue = msg.value;
+        if (msg.key.equals(txn.secondKey)) txn.secondValue = msg.value;
 
-        boolean opDone = firstValue != null && secondValue != null;
+        boolean opDone = txn.firstValue != null && txn.secondValue != null;
 
         // do we only read or also write?
         double writeRandom = r.nextDouble();
-        boolean doWrite = writeRandom < WRITE_PROBABILITY;
+        boolean doWrite = writeRandom < workload.writeProbability && !txn.staleReads;
         if (doWrite && opDone) {
-            writeTwo();
+            writeTwo(txn);
         }
 
         // check if the transaction should end;
         // otherwise, read two again
         if (opDone) {
-            numOpDone++;
+            txn.numOpDone++;
+            Metrics.recordSince(Metrics.CLIENT_READ, txn.readAt);
         }
 
-        if (numOpDone >= numOpTotal) {
-            endTxn();
+        if (txn.numOpDone >= txn.numOpTotal) {
+            endTxn(txn);
         } else if (opDone) {
-            readTwo();
+            readTwo(txn);
         }
     }
 
     private void onTxnResult(TxnResultMsg msg) {
+        Txn txn = running.remove(msg.transactionID);
+        if (txn == null) {
+            return; // the outcome of a TXN I gave up on, or told again
+        }
+        numEndedInWave++;
+        Metrics.recordSince(Metrics.CLIENT_TXN, txn.begunAt);
+        Metrics.count(msg.commit ? Metrics.COMMITS : Metrics.ABORTS);
         if (msg.commit) {
             numCommittedTxn++;
-            Log.log(LogLevel.BASIC, clientId, "COMMIT OK [wave "
-                    + numAttemptedTxnInWave + "/" + numMaxTxnInWave + "] (total committed " +
-                    "" + numCommittedTxn + "/" + numAttemptedTxn + ")");
+            numCommittedInWave++;
+            Log.log(LogLevel.BASIC, clientId, "COMMIT OK [wave {}/{}] (total committed {}/{})",
+                    numEndedInWave, numMaxTxnInWave, numCommittedTxn, numAttemptedTxn);
         } else {
-            Log.log(LogLevel.BASIC, clientId, "COMMIT FAIL [wave " +
-                    numAttemptedTxnInWave + "/" + numMaxTxnInWave + "] (total committed " +
-                    (numCommittedTxn) + "/" + numAttemptedTxn + ")");
+            Log.log(LogLevel.BASIC, clientId, "COMMIT FAIL [wave {}/{}] (total committed {}/{})",
+                    numEndedInWave, numMaxTxnInWave, numCommittedTxn, numAttemptedTxn);
         }
 
-        numAttemptedTxnInWave++;
-
-        if (numAttemptedTxnInWave <= numMaxTxnInWave) {
-            try {
-                // Random wait
-                Thread.sleep(r.nextInt(3000));
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-            beginTxn();
-        } else {
+        if (workload.mode == Workload.Mode.CLOSED && numScheduledInWave < numMaxTxnInWave) {
+            scheduleTxn(MIN_PAUSE + r.nextInt(MAX_WAVE_PAUSE));
+        } else if (numEndedInWave >= numMaxTxnInWave) {
             Log.log(LogLevel.BASIC, clientId, "-----------> WAVE TERMINATED <-----------");
+            double seconds = Math.max(1, System.currentTimeMillis() - waveStart) / 1000.0;
+            Log.log(LogLevel.BASIC, clientId, () -> String.format(Locale.ROOT,
+                    "Wave: %.2f commits/s, abort rate %.2f",
+                    numCommittedInWave / seconds, 1 - (double) numCommittedInWave / numEndedInWave));
+        }
+    }
+
+    // TXN operation (move some amount from a value to another), one per TXN in flight
+    private static class Txn {
+        final int numInWave;
+        final long begunAt;     // System.nanoTime() of the first attempt
+        final boolean staleReads;
+        ActorRef coordinator;
+        long transactionID;
+        Integer firstKey, secondKey;
+        Integer firstValue, secondValue;
+        Integer numOpTotal;
+        Integer numOpDone;
+        Cancellable acceptTimeout;
+        long readAt;            // when the reads of the current operation left
+
+        Txn(int numInWave, long begunAt, boolean staleReads) {
+            this.numInWave = numInWave;
+            this.begunAt = begunAt;
+            this.staleReads = staleReads;
         }
     }
 
@@ -0,0 +1,180 @@
+package it.unitn.ds1.project;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.pattern.Patterns;
+import it.unitn.ds1.common.Log;
+import it.unitn.ds1.common.LogLevel;
+import it.unitn.ds1.project.message.ClientWelcomeMsg;
+import it.unitn.ds1.project.message.CoordinatorWelcomeMsg;
+import it.unitn.ds1.project.message.DSSWelcomeMsg;
+import it.unitn.ds1.project.message.StopMsg;
+import it.unitn.ds1.project.message.dss.RequestSummaryMsg;
+import it.unitn.ds1.project.message.dss.SummaryMsg;
+import it.unitn.ds1.project.message.dss.migration.MigrationStartMsg;
+import it.unitn.ds1.project.metrics.Metrics;
+import it.unitn.ds1.project.partition.ConsistentHashPartitioner;
+import it.unitn.ds1.project.partition.Partitioner;
+import it.unitn.ds1.project.partition.RangePartitioner;
+import scala.concurrent.Await;
+import scala.concurrent.Future;
+import scala.concurrent.duration.Duration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// The actors of a run, created from its Config: the clients, the coordinators, and the DSSes with
+// their backups. Both the interactive Init and the ScenarioRunner drive the system through it.
+class Cluster {
+    private final List<ActorRef> clientGroup = new ArrayList<>();
+    private final List<ActorRef> coordinatorGroup = new ArrayList<>();
+    private final List<ActorRef> dataStoreGroup = new ArrayList<>();
+    private final List<List<ActorRef>> replicaGroups = new ArrayList<>();
+    // coordinators and DSSes, by ID
+    private final Map<Integer, ActorRef> nodes = new HashMap<>();
+    private final Config config;
+
+    private Cluster(Config config) {
+        this.config = config;
+    }
+
+    // creates the actors and welcomes the coordinators and the DSSes; the clients wait for welcomeClients
+    static Cluster start(ActorSystem system, Config config) {
+        Cluster cluster = new Cluster(config);
+
+        for (int i = 0; i < config.clients; i++) {
+            Log.log(LogLevel.DEBUG, -1, "Generating Client actor with ID {}", i);
+            cluster.clientGroup.add(system.actorOf(Client.props(i)));
+        }
+
+        for (int i = 100; i - 100 < config.coordinators; i++) {
+            Log.log(LogLevel.DEBUG, -1, "Generating Coordinator actor with ID {}", i);
+            ActorRef coordinator = system.actorOf(Coordinator.props(i, config));
+            cluster.coordinatorGroup.add(coordinator);
+            cluster.nodes.put(i, coordinator);
+        }
+
+        Partitioner partitioner = createPartitioner(config);
+
+        for (int i = 1000; i - 1000 < config.dataStores; i++) {
+            int[] keys = partitioner.keysOf(i - 1000);
+            List<ActorRef> replicas = new ArrayList<>();
+            for (int k = 0; k <= config.backups; k++) {
+                int id = replicaID(config, i, k);
+                Log.log(LogLevel.DEBUG, -1, "Generating Datastore actor with ID {} and {} keys{}", id, keys.length,
+                        k > 0 ? " (backup)" : "");
+                ActorRef dss = system.actorOf(DSS.props(id, i - 1000, keys, config));
+                replicas.add(dss);
+                cluster.nodes.put(id, dss);
+            }
+            cluster.dataStoreGroup.add(replicas.get(0));
+            cluster.replicaGroups.add(replicas);
+        }
+
+        // Tell all coordinators the group of datastores, their replicas and where each key lives
+        for (ActorRef coordinator : cluster.coordinatorGroup) {
+            CoordinatorWelcomeMsg msg = new CoordinatorWelcomeMsg(cluster.dataStoreGroup, cluster.replicaGroups, partitioner);
+            coordinator.tell(msg, ActorRef.noSender());
+        }
+
+        // Also tell all datastores the group of datastores
+        DSSWelcomeMsg dssWelcome = new DSSWelcomeMsg(cluster.dataStoreGroup, cluster.coordinatorGroup, cluster.replicaGroups);
+        cluster.replicaGroups.forEach(replicas -> replicas.forEach(dss -> dss.tell(dssWelcome, ActorRef.noSender())));
+
+        Log.log(LogLevel.BASIC, -1, config.workload.toString());
+
+        if (config.metricsReport > 0) {
+            system.scheduler().scheduleAtFixedRate(
+                    Duration.create(config.metricsReport, TimeUnit.MILLISECONDS),
+                    Duration.create(config.metricsReport, TimeUnit.MILLISECONDS),
+                    () -> Metrics.report(config.metricsCsv).forEach(line -> Log.log(LogLevel.BASIC, -1, line)),
+                    system.dispatcher()
+            );
+        }
+
+        if (config.splitAfter > 0) {
+            system.scheduler().scheduleOnce(
+                    Duration.create(config.splitAfter, TimeUnit.MILLISECONDS),
+                    cluster.dataStoreGroup.get(config.splitSource),
+                    new MigrationStartMsg(config.splitTarget),
+                    system.dispatcher(), ActorRef.noSender()
+            );
+        }
+        return cluster;
+    }
+
+    // backup k of DSS i, leaving room for every DSS below the first backup
+    private static int replicaID(Config config, int primaryID, int k) {
+        int stride = 100;
+        while (stride < config.dataStores) {
+            stride *= 10;
+        }
+        return primaryID + stride * k;
+    }
+
+    private static Partitioner createPartitioner(Config config) {
+        switch (config.partitioner) {
+            case CONSISTENT_HASH:
+                int[] virtualNodes = new int[config.dataStores];
+                for (int i = 0; i < config.dataStores; i++) {
+                    virtualNodes[i] = config.virtualNodesOf(i);
+                }
+                return new ConsistentHashPartitioner(config.maxKeystore + 1, virtualNodes);
+            default:
+                return new RangePartitioner(config.dataStores, config.keysPerDss);
+        }
+    }
+
+    // Tell all clients the group of coordinators, the max keystore and the load to generate, which starts
+    // a wave of maxTxn TXNs each (0 for a random number)
+    void welcomeClients(int maxTxn) {
+        for (ActorRef client : clientGroup) {
+            client.tell(new ClientWelcomeMsg(config.maxKeystore, coordinatorGroup, config.workload, maxTxn), ActorRef.noSender());
+        }
+    }
+
+    // the clients begin no more TXNs, and drop those they have open
+    void stopClients() {
+        clientGroup.forEach(client -> client.tell(new StopMsg(), ActorRef.noSender()));
+    }
+
+    // a coordinator or a DSS, null if there is none with that ID
+    ActorRef node(int id) {
+        return nodes.get(id);
+    }
+
+    // each primary logs the sum of its items: whichever replica is the primary now answers
+    void requestSummary() {
+        replicaGroups.forEach(replicas -> replicas.forEach(
+                dss -> dss.tell(new RequestSummaryMsg(), ActorRef.noSender())));
+    }
+
+    // The sum of the items of each partition, from its primary. A partition is missing if its primary does not
+    // answer within the timeout, e.g. because it has crashed.
+    Map<Integer, Long> readSums(int timeout) throws InterruptedException {
+        List<Future<Object>> replies = new ArrayList<>();
+        replicaGroups.forEach(replicas -> replicas.forEach(
+                dss -> replies.add(Patterns.ask(dss, new RequestSummaryMsg(), timeout))));
+
+        Map<Integer, Long> sums = new HashMap<>();
+        for (Future<Object> reply : replies) {
+            try {
+                // each ask fails by itself once its timeout is over
+                SummaryMsg summary = (SummaryMsg) Await.result(reply, Duration.Inf());
+                sums.put(summary.partition, summary.sum);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                // not the primary, or not answering: another replica may
+            }
+        }
+        return sums;
+    }
+
+    int partitions() {
+        return replicaGroups.size();
+    }
+}
@@ -0,0 +1,205 @@
+package it.unitn.ds1.project;
+
+import it.unitn.ds1.common.Log;
+import it.unitn.ds1.common.LogLevel;
+import it.unitn.ds1.project.concurrency.ConcurrencyControl;
+import it.unitn.ds1.project.concurrency.TwoPhaseLocking;
+import it.unitn.ds1.project.partition.Partitioner;
+import it.unitn.ds1.project.workload.KeyChooser;
+import it.unitn.ds1.project.workload.Workload;
+
+// The settings of a run, fixed before any actor is created: the defaults of Init, or those of a Scenario on top
+// of them. The Cluster hands it to every node it creates. The derived settings (the max key, the write quorum
+// unless given) are computed here, from the others, and a run that would be meaningless is refused.
+public class Config {
+    public final LogLevel logLevel;
+    public final Log.Format logFormat;
+    public final String logFile;
+
+    public final int clients;
+    public final int coordinators;
+    public final int dataStores;
+    public final int keysPerDss;
+    public final int maxKeystore;
+
+    public final boolean crashCoordinatorAfterOneVoteRequest;
+    public final boolean crashCoordinatorAfterAllVoteRequest;
+    public final boolean crashCoordinatorAfterOneDecisionResponse;
+    public final boolean crashCoordinatorAfterAllDecisionResponse;
+    public final boolean crashDssBeforeVoteResponse;
+    public final boolean crashDssBeforeDecisionResponse;
+    public final int crashingDss;
+
+    public final boolean batchVoteRequests;
+    public final boolean onePhaseCommit;
+    public final boolean adaptiveTimeouts;
+    public final ConcurrencyControl.Type concurrencyControl;
+    public final TwoPhaseLocking.DeadlockPrevention deadlockPrevention;
+
+    public final Partitioner.Type partitioner;
+    public final int virtualNodesPerDss;
+    private final int[] virtualNodes;
+
+    public final int splitAfter;
+    public final int splitSource;
+    public final int splitTarget;
+
+    public final int backups;
+    public final int writeQuorum;
+    public final int readQuorum;
+
+    public final Workload workload;
+
+    public final int metricsReport;
+    public final String metricsCsv;
+
+    public final String walDirectory;
+
+    private Config(Builder b) {
+        logLevel = b.logLevel;
+        logFormat = b.logFormat;
+        logFile = b.logFile;
+
+        clients = b.clients;
+        coordinators = b.coordinators;
+        dataStores = b.dataStores;
+        keysPerDss = b.keysPerDss;
+        maxKeystore = dataStores * keysPerDss - 1;
+
+        crashCoordinatorAfterOneVoteRequest = b.crashCoordinatorAfterOneVoteRequest;
+        crashCoordinatorAfterAllVoteRequest = b.crashCoordinatorAfterAllVoteRequest;
+        crashCoordinatorAfterOneDecisionResponse = b.crashCoordinatorAfterOneDecisionResponse;
+        crashCoordinatorAfterAllDecisionResponse = b.crashCoordinatorAfterAllDecisionResponse;
+        crashDssBeforeVoteResponse = b.crashDssBeforeVoteResponse;
+        crashDssBeforeDecisionResponse = b.crashDssBeforeDecisionResponse;
+        crashingDss = b.crashingDss;
+
+        batchVoteRequests = b.batchVoteRequests;
+        onePhaseCommit = b.onePhaseCommit;
+        adaptiveTimeouts = b.adaptiveTimeouts;
+        concurrencyControl = b.concurrencyControl;
+        deadlockPrevention = b.deadlockPrevention;
+
+        partitioner = b.partitioner;
+        virtualNodesPerDss = b.virtualNodesPerDss;
+        virtualNodes = b.virtualNodes.clone();
+
+        splitAfter = b.splitAfter;
+        splitSource = b.splitSource;
+        splitTarget = b.splitTarget;
+
+        backups = b.backups;
+        writeQuorum = b.writeQuorum > 0 ? b.writeQuorum : backups + 1;
+        readQuorum = b.readQuorum;
+
+        // the workload checks its own settings
+        workload = new Workload(b.workloadMode, b.clientInFlight, b.arrivalRate,
+                b.keyDistribution, b.zipfTheta, b.hotKeyFraction, b.hotOpFraction,
+                b.writeProbability, b.minTxnLength, b.maxTxnLength);
+
+        metricsReport = b.metricsReport;
+        metricsCsv = b.metricsCsv;
+
+        walDirectory = b.walDirectory;
+
+        check();
+    }
+
+    // the settings of Init
+    public static Config defaults() {
+        return new Builder().build();
+    }
+
+    // what would make the run meaningless, or the IDs of two nodes the same
+    private void check() {
+        if (clients < 1 || coordinators < 1 || dataStores < 1 || keysPerDss < 1) {
+            throw new IllegalArgumentException("Needs a client, a coordinator, a DSS and a key per DSS");
+        }
+        if (maxKeystore < 1) {
+            throw new IllegalArgumentException("Needs at least 2 keys in all, as every operation moves an amount"
+                    + " between two of them: " + dataStores + " DSSes x " + keysPerDss + " keys");
+        }
+        if (coordinators > 900) {
+            throw new IllegalArgumentException("At most 900 coordinators, whose IDs are below those of the DSSes");
+        }
+        if (writeQuorum > backups + 1 || readQuorum + writeQuorum <= backups + 1) {
+            throw new IllegalArgumentException("Bad quorums over " + (backups + 1) + " replicas: read "
+                    + readQuorum + ", write " + writeQuorum);
+        }
+        if (splitAfter > 0 && (Math.max(splitSource, splitTarget) >= dataStores || splitSource == splitTarget)) {
+            throw new IllegalArgumentException("Bad split, from DSS " + splitSource + " to " + splitTarget);
+        }
+    }
+
+    // the virtual nodes of DSS i on the hash ring
+    public int virtualNodesOf(int i) {
+        return i < virtualNodes.length ? virtualNodes[i] : virtualNodesPerDss;
+    }
+
+    // The settings to change before building the Config, the defaults of Init until set.
+    public static class Builder {
+        LogLevel logLevel = Init.LOG_LEVEL;
+        Log.Format logFormat = Init.LOG_FORMAT;
+        String logFile = Init.LOG_FILE;
+
+        int clients = Init.N_CLIENTS;
+        int coordinators = Init.N_COORDINATORS;
+        int dataStores = Init.N_DATASTORE;
+        int keysPerDss = Init.KEYS_PER_DSS;
+
+        boolean crashCoordinatorAfterOneVoteRequest = Init.CRASH_COORDINATOR_AFTER_ONE_VOTE_REQUEST;
+        boolean crashCoordinatorAfterAllVoteRequest = Init.CRASH_COORDINATOR_AFTER_ALL_VOTE_REQUEST;
+        boolean crashCoordinatorAfterOneDecisionResponse = Init.CRASH_COORDINATOR_AFTER_ONE_DECISION_RESPONSE;
+        boolean crashCoordinatorAfterAllDecisionResponse = Init.CRASH_COORDINATOR_AFTER_ALL_DECISION_RESPONSE;
+        boolean crashDssBeforeVoteResponse = Init.CRASH_DSS_BEFORE_VOTE_RESPONSE;
+        boolean crashDssBeforeDecisionResponse = Init.CRASH_DSS_BEFORE_DECISION_RESPONSE;
+        int crashingDss = Init.CRASHING_DSS;
+
+        boolean batchVoteRequests = Init.BATCH_VOTE_REQUESTS;
+        boolean onePhaseCommit = Init.ONE_PHASE_COMMIT;
+        boolean adaptiveTimeouts = Init.ADAPTIVE_TIMEOUTS;
+        ConcurrencyControl.Type concurrencyControl = Init.CONCURRENCY_CONTROL;
+        TwoPhaseLocking.DeadlockPrevention deadlockPrevention = Init.DEADLOCK_PREVENTION;
+
+        Partitioner.Type partitioner = Init.PARTITIONER;
+        int virtualNodesPerDss = Init.VIRTUAL_NODES_PER_DSS;
+        int[] virtualNodes = Init.VIRTUAL_NODES;
+
+        int splitAfter = Init.SPLIT_AFTER;
+        int splitSource = Init.SPLIT_SOURCE;
+        int splitTarget = Init.SPLIT_TARGET;
+
+        int backups = Init.N_BACKUPS;
+        int writeQuorum = Init.WRITE_QUORUM;
+        int readQuorum = Init.READ_QUORUM;
+
+        Workload.Mode workloadMode = Init.WORKLOAD_MODE;
+        int clientInFlight = Init.CLIENT_IN_FLIGHT;
+        double arrivalRate = Init.ARRIVAL_RATE;
+        KeyChooser.Type keyDistribution = Init.KEY_DISTRIBUTION;
+        double zipfTheta = Init.ZIPF_THETA;
+        double hotKeyFraction = Init.HOT_KEY_FRACTION;
+        double hotOpFraction = Init.HOT_OP_FRACTION;
+        double writeProbability = Init.WRITE_PROBABILITY;
+        int minTxnLength = Init.MIN_TXN_LENGTH;
+        int maxTxnLength = Init.MAX_TXN_LENGTH;
+
+        int metricsReport = Init.METRICS_REPORT;
+        String metricsCsv = Init.METRICS_CSV;
+
+        String walDirectory = Init.WAL_DIRECTORY;
+
+        public Config build() {
+            return new Config(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "clients=" + clients +
+                ", coordinators=" + coordinators +
+                ", datastores=" + dataStores + " x " + (backups + 1) +
+                ", keys=" + (maxKeystore + 1) +
+                ", concurrencyControl=" + concurrencyControl;
+    }
+}
@@ -2,19 +2,31 @@ package it.unitn.ds1.project;
 
 import akka.actor.ActorRef;
 import akka.actor.Props;
-import it.unitn.ds1.common.BidiHashMap;
 import it.unitn.ds1.common.Log;
 import it.unitn.ds1.common.LogLevel;
+import it.unitn.ds1.common.LongHashMap;
+import it.unitn.ds1.common.LongHashSet;
+import it.unitn.ds1.common.RttEstimator;
 import it.unitn.ds1.project.message.CoordinatorWelcomeMsg;
+import it.unitn.ds1.project.message.CrashMsg;
+import it.unitn.ds1.project.message.NetworkTick;
+import it.unitn.ds1.project.message.TimerTick;
 import it.unitn.ds1.project.message.dss.DSSMessage;
 import it.unitn.ds1.project.message.dss.Recovery;
-import it.unitn.ds1.project.message.dss.Timeout;
+import it.unitn.ds1.project.message.dss.commit.DSSCommitRequest;
 import it.unitn.ds1.project.message.dss.decision.DSSDecision;
+import it.unitn.ds1.project.message.dss.decision.DSSDecisionAck;
 import it.unitn.ds1.project.message.dss.decision.DSSDecisionRequest;
 import it.unitn.ds1.project.message.dss.decision.DSSDecisionResponse;
 import it.unitn.ds1.project.message.dss.read.DSSReadRequestMsg;
 import it.unitn.ds1.project.message.dss.read.DSSReadResultMsg;
+import it.unitn.ds1.project.message.dss.read.DSSStaleReadRequestMsg;
+import it.unitn.ds1.project.message.dss.read.StaleReadTimeout;
+import it.unitn.ds1.project.message.dss.replication.ReplicaView;
 import it.unitn.ds1.project.message.dss.vote.DSSVote;
+import it.unitn.ds1.project.message.dss.vote.DSSVoteBatchFlush;
+import it.unitn.ds1.project.message.dss.vote.DSSVoteBatchRequest;
+import it.unitn.ds1.project.message.dss.vote.DSSVoteBatchResponse;
 import it.unitn.ds1.project.message.dss.vote.DSSVoteRequest;
 import it.unitn.ds1.project.message.dss.vote.DSSVoteResponse;
 import it.unitn.ds1.project.message.dss.write.DSSWriteRequestMsg;
@@ -25,33 +37,60 @@ import it.unitn.ds1.project.message.txn.end.TxnResultMsg;
 import it.unitn.ds1.project.message.txn.read.TxnReadRequestMsg;
 import it.unitn.ds1.project.message.txn.read.TxnReadResultMsg;
 import it.unitn.ds1.project.message.txn.write.TxnWriteRequestMsg;
+import it.unitn.ds1.project.message.dss.migration.RoutingDrained;
+import it.unitn.ds1.project.message.dss.migration.RoutingUpdate;
+import it.unitn.ds1.project.metrics.AbortReason;
+import it.unitn.ds1.project.metrics.Metrics;
+import it.unitn.ds1.project.model.Transaction;
+import it.unitn.ds1.project.model.TransactionID;
+import it.unitn.ds1.project.partition.RoutingTable;
+import it.unitn.ds1.project.replication.QuorumRead;
+import scala.concurrent.duration.Duration;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 public class Coordinator extends AbstractNode {
 
-    // list of datastore actors
+    // list of datastore actors: the current primary of each partition, and the view it is primary of
     private final List<ActorRef> dataStores = new ArrayList<>();
+    private int[] primaryViews;
 
-    // maps actorRefs of clients to transactionID strings
-    private final BidiHashMap<ActorRef, String> transactionMapping = new BidiHashMap<>();
+    // all the replicas of each partition, which serve stale reads
+    private final List<List<ActorRef>> replicaGroups = new ArrayList<>();
 
-    // here all the nodes that sent YES are collected
-    private final HashMap<String, Set<ActorRef>> yesVotersMap = new HashMap<>();
+    // which DSS holds each key; replaced at every migration
+    private RoutingTable routing;
 
-    // list of DSS contacted for a transaction
-    private final HashMap<String, Set<ActorRef>> dataStoreMapping = new HashMap<>();
+    // migrations waiting for my transactions that may still route to their source, and the source to tell
+    private final HashMap<String, LongHashSet> drainingMigrations = new HashMap<>();
+    private final HashMap<String, ActorRef> migrationSources = new HashMap<>();
+
+    // transactions I assigned an ID to, the low half of the next ID
+    private int transactionCounter = 0;
+
+    // my transactions not retired yet, by ID: client, participants and votes of each
+    private final LongHashMap<Transaction> transactions = new LongHashMap<>();
+
+    // by DSS, from the end of a transaction to its vote, and from the decision to its acknowledgement
+    private final Map<ActorRef, RttEstimator> voteRoundTrips = new HashMap<>();
+    private final Map<ActorRef, RttEstimator> decisionRoundTrips = new HashMap<>();
+
+    // vote requests of the transactions ended in the current batching window
+    private final List<DSSVoteRequest> pendingVoteRequests = new ArrayList<>();
 
     final static int CRASH_TIME = 40000;
+    final static int VOTE_BATCH_WINDOW = 5;     // time a vote request waits for others to batch with, ms
+    final static int STALE_READ_TIMEOUT = 200;  // wait of a stale read before asking the primary, ms
 
     /*-- Actor constructor ---------------------------------------------------- */
 
-    public Coordinator(int id) {
-        super(id);
+    public Coordinator(int id, Config config) {
+        super(id, config);
     }
 
-    static public Props props(int id) {
-        return Props.create(Coordinator.class, () -> new Coordinator(id));
+    static public Props props(int id, Config config) {
+        return Props.create(Coordinator.class, () -> new Coordinator(id, config));
     }
 
     @Override
@@ -69,10 +108,19 @@ public class Coordinator extends AbstractNode {
                 // COORDINATOR <- DSS
                 .match(DSSReadResultMsg.class, this::onDSSReadResult)
                 .match(DSSVoteResponse.class, this::onDSSVoteResponse)
+                .match(DSSVoteBatchResponse.class, this::onDSSVoteBatchResponse)
+                .match(DSSVoteBatchFlush.class, this::onDSSVoteBatchFlush)
                 .match(DSSDecisionRequest.class, this::onDSSDecisionRequest)
+                .match(DSSDecisionResponse.class, this::onDSSDecisionResponse)
+                .match(DSSDecisionAck.class, this::onDSSDecisionAck)
+                .match(RoutingUpdate.class, this::onRoutingUpdate)
+                .match(ReplicaView.class, this::onReplicaView)
+                .match(StaleReadTimeout.class, this::onStaleReadTimeout)
 
-                .match(Timeout.class, this::onTimeout)
+                .match(TimerTick.class, this::onTimerTick)
                 .match(Recovery.class, this::onRecovery)
+                .match(NetworkTick.class, this::onNetworkTick)
+                .match(CrashMsg.class, msg -> crash(msg.duration))
                 .build();
     }
 
@@ -80,136 +128,422 @@ public class Coordinator extends AbstractNode {
 
     private void onCoordinatorWelcome(CoordinatorWelcomeMsg msg) {
         this.dataStores.addAll(msg.dss);
+        this.replicaGroups.addAll(msg.replicas);
+        this.primaryViews = new int[msg.dss.size()];
+        this.routing = new RoutingTable(msg.partitioner);
     }
 
     /*-- Actor methods (for Client) -------------------------------------------------------- */
 
     private void onTxnBegin(TxnBeginMsg msg) {
-        Log.log(LogLevel.DEBUG, this.id, "Received TxnBegin from " + msg.clientId);
-        String transactionID = UUID.randomUUID().toString();
+        Log.log(LogLevel.DEBUG, this.id, "Received TxnBegin from {}", msg.clientId);
+        long transactionID = TransactionID.of(this.id, ++transactionCounter);
 
-        this.transactionMapping.put(getSender(), transactionID);
-        this.yesVotersMap.putIfAbsent(transactionID, new HashSet<>());
-        this.dataStoreMapping.putIfAbsent(transactionID, new HashSet<>());
+        this.transactions.put(transactionID,
+                new Transaction(transactionID, getSender(), clock.now(), routing, msg.staleReads));
 
-        delay(r.nextInt(MAX_DELAY));
-        getSender().tell(new TxnAcceptMsg(), getSelf());
-        Log.log(LogLevel.INFO, this.id, "Assigned tID " + transactionID
+        send(getSender(), new TxnAcceptMsg(transactionID, msg.attempt));
+        Log.log(LogLevel.INFO, this.id, () -> "Assigned tID " + TransactionID.toString(transactionID)
                 + " to Txn involving client" + msg.clientId);
     }
 
     private void onTxnReadRequest(TxnReadRequestMsg msg) {
-        Log.log(LogLevel.DEBUG, this.id, "Received TxnReadRequest from  "
-                + msg.clientId + " and key " + msg.key);
+        Log.log(LogLevel.DEBUG, this.id, "Received TxnReadRequest from {} and key {}", msg.clientId, msg.key);
 
+        Transaction t = transactions.get(msg.transactionID);
+        if (t == null || hasDecided(t.id)) {
+            return; // already over, e.g. aborted on recovery: the client has been told
+        }
+        if (t.isStaleRead()) {
+            staleRead(t, msg.key);
+            return;
+        }
         // Forwarding request to relevant DSS
-        String transactionID = transactionMapping.get(getSender());
-        ActorRef destination = getCorrespondingDSS(msg.key);
+        ActorRef destination = getCorrespondingDSS(t, msg.key);
 
-        this.dataStoreMapping.get(transactionID).add(destination);
+        t.participants.add(destination);
 
-        delay(r.nextInt(MAX_DELAY));
-        destination.tell(new DSSReadRequestMsg(transactionID, msg.key), getSelf());
+        send(destination, new DSSReadRequestMsg(t.id, msg.key, t.startTimestamp));
         // No response
     }
 
+    // READ_QUORUM random replicas of the key answer, with what they have committed so far, and the value with
+    // the highest version wins: the DSSes are not participants
+    private void staleRead(Transaction t, int key) {
+        List<ActorRef> replicas = new ArrayList<>(replicaGroups.get(t.routing.partitionOf(key)));
+        Collections.shuffle(replicas, r);
+        int quorum = Math.min(config.readQuorum, replicas.size());
+
+        t.staleReads.put(key, new QuorumRead(quorum));
+        DSSStaleReadRequestMsg request = new DSSStaleReadRequestMsg(t.id, key, t.startTimestamp);
+        replicas.subList(0, quorum).forEach(replica -> send(replica, request));
+        scheduleStaleReadTimeout(t.id, key);
+    }
+
+    // some replica is down or behind: the current primary of the key answers
+    private void onStaleReadTimeout(StaleReadTimeout msg) {
+        Transaction t = transactions.get(msg.transactionID);
+        QuorumRead read = t == null ? null : t.staleReads.get(msg.key);
+        if (read == null) {
+            return;
+        }
+        ActorRef primary = dataStores.get(routing.partitionOf(msg.key));
+        if (read.settleWith(primary)) {
+            completeStaleRead(t, msg.key);
+            return;
+        }
+        send(primary, new DSSStaleReadRequestMsg(t.id, msg.key, t.startTimestamp));
+        scheduleStaleReadTimeout(t.id, msg.key);
+    }
+
+    private void completeStaleRead(Transaction t, int key) {
+        QuorumRead read = t.staleReads.remove(key);
+        send(t.client, new TxnReadResultMsg(t.id, key, read.value()));
+    }
+
+    private void scheduleStaleReadTimeout(long transactionID, int key) {
+        getContext().system().scheduler().scheduleOnce(
+                Duration.create(STALE_READ_TIMEOUT, TimeUnit.MILLISECONDS),
+                getSelf(),
+                new StaleReadTimeout(transactionID, key), // message sent to myself
+                getContext().system().dispatcher(), getSelf()
+        );
+    }
+
     private void onTxnWriteRequest(TxnWriteRequestMsg msg) {
-        Log.log(LogLevel.DEBUG, this.id, "Received TxnWriteRequest from "
-                + msg.clientId + ", key: " + msg.key + ", value: " + msg.value);
+        Log.log(LogLevel.DEBUG, this.id, "Received TxnWriteRequest from {}, key: {}, value: {}",
+                msg.clientId, msg.key, msg.value);
 
+        Transaction t = transactions.get(msg.transactionID);
+        if (t == null || hasDecided(t.id)) {
+            return;
+        }
         // Forwarding request to relevant DSS
-        String transactionID = transactionMapping.get(getSender());
-        ActorRef destination = getCorrespondingDSS(msg.key);
+        ActorRef destination = getCorrespondingDSS(t, msg.key);
 
-        this.dataStoreMapping.get(transactionID).add(destination);
+        t.participants.add(destination);
 
-        delay(r.nextInt(MAX_DELAY));
-        destination.tell(new DSSWriteRequestMsg(transactionID, msg.key, msg.value), getSelf());
+        send(destination, new DSSWriteRequestMsg(t.id, msg.key, msg.value, t.startTimestamp));
 
     }
 
     private void onTxnEnd(TxnEndMsg msg) {
         // on txnend the client is blocked until the coordinator has a ABORT/COMMIT decision
         // we need to start the logic for initiating the 2pc
-        String transactionID = transactionMapping.get(getSender());
+        Transaction t = transactions.get(msg.transactionID);
+        if (t == null || hasDecided(t.id)) {
+            return;
+        }
+        t.markEnded();
 
         // If the client chose not to commit we must respect his choice
         if (!msg.commit) {
-            fixDecision(transactionID, DSSDecision.ABORT);
-
-            multicast(new DSSDecisionResponse(transactionID, decision.get(transactionID)));
-
-            ActorRef destination = transactionMapping.getKey(transactionID);
-            delay(r.nextInt(MAX_DELAY));
-            destination.tell(new TxnResultMsg(false), getSelf());
+            Metrics.abort(AbortReason.CLIENT);
+            fixDecision(t.id, DSSDecision.ABORT);
+
+            multicast(decisionResponse(t.id));
+
+            answer(t);
+            retireIfAcknowledged(t);
+        } else if (t.participants.isEmpty()) {
+            // no DSS took part (only stale reads): there is nothing to vote on
+            fixDecision(t.id, DSSDecision.COMMIT);
+            answer(t);
+            retireIfAcknowledged(t);
+        } else if (config.onePhaseCommit && t.participants.size() == 1) {
+            t.setOnePhase(true);
+            setTimeout(t.id, timeoutOf(voteRoundTrips, t.participants, VOTE_TIMEOUT));
+            send(t.participants.iterator().next(), new DSSCommitRequest(t.id));
         } else {
-            setTimeout(transactionID, VOTE_TIMEOUT);
-            multicast(new DSSVoteRequest(transactionID));
-            //crashyVoteRequest(transactionID);
+            setTimeout(t.id, timeoutOf(voteRoundTrips, t.participants, VOTE_TIMEOUT));
+            if (config.batchVoteRequests) {
+                batchVoteRequest(voteRequest(t.id));
+            } else {
+                multicast(voteRequest(t.id));
+            }
+            //crashyVoteRequest(t.id);
             //return;
         }
     }
 
+    // the first request of a window opens it, the others just join
+    private void batchVoteRequest(DSSVoteRequest request) {
+        if (pendingVoteRequests.isEmpty()) {
+            getContext().system().scheduler().scheduleOnce(
+                    Duration.create(VOTE_BATCH_WINDOW, TimeUnit.MILLISECONDS),
+                    getSelf(),
+                    new DSSVoteBatchFlush(), // message sent to myself
+                    getContext().system().dispatcher(), getSelf()
+            );
+        }
+        pendingVoteRequests.add(request);
+    }
+
+    private void onDSSVoteBatchFlush(DSSVoteBatchFlush msg) {
+        if (pendingVoteRequests.isEmpty()) {
+            return;
+        }
+
+        // each participant gets a single batch, with just the transactions it takes part in
+        Map<ActorRef, List<DSSVoteRequest>> batches = new HashMap<>();
+        for (DSSVoteRequest request : pendingVoteRequests) {
+            for (ActorRef participant : request.participants) {
+                batches.computeIfAbsent(participant, k -> new ArrayList<>()).add(request);
+            }
+        }
+
+        Log.log(LogLevel.DEBUG, this.id, "Sending {} vote requests in {} batches",
+                pendingVoteRequests.size(), batches.size());
+        pendingVoteRequests.clear();
+        batches.forEach((datastore, requests) -> send(datastore, new DSSVoteBatchRequest(requests), 0));
+    }
+
 
     /*-- Actor methods (for DSS) -------------------------------------------------------- */
 
     private void onDSSReadResult(DSSReadResultMsg msg) {
-        Log.log(LogLevel.DEBUG, this.id, "Received DSSReadResult for tID " + msg.transactionID
+        Log.log(LogLevel.DEBUG, this.id, () -> "Received DSSReadResult for tID " + TransactionID.toString(msg.transactionID)
                 + ": k=" + msg.key + ", v=" + msg.value);
-        // Get who asked for the value originally
-        ActorRef destination = transactionMapping.getKey(msg.transactionID);
+        Transaction t = transactions.get(msg.transactionID);
+        if (t == null) {
+            return; // a late answer for a retired transaction
+        }
+        if (t.isStaleRead()) {
+            QuorumRead read = t.staleReads.get(msg.key);
+            if (read != null) {
+                read.answer(getSender(), msg.value, msg.version);
+                if (read.isComplete()) {
+                    completeStaleRead(t, msg.key);
+                }
+            }
+            return;
+        }
         // Tell client of <key, value>
-        delay(r.nextInt(MAX_DELAY));
-        destination.tell(new TxnReadResultMsg(msg.key, msg.value), getSelf());
+        send(t.client, new TxnReadResultMsg(t.id, msg.key, msg.value));
         Log.log(LogLevel.DEBUG, this.id, "Sent TxnReadResult");
 
     }
 
+    /* -- Migration (for DSS) ------------------ */
+
+    // Transactions beginning from now on use the new table. The source still serves the ones that began
+    // before: it is told once they are all decided, as it cannot hand the keys over until then.
+    private void onRoutingUpdate(RoutingUpdate msg) {
+        if (!migrationSources.containsKey(msg.migrationID)) {
+            routing = routing.move(msg.keys, msg.target);
+            Log.log(LogLevel.BASIC, this.id, "Migration {}: {} keys moved to DSS {}, routing epoch {}",
+                    msg.migrationID, msg.keys.length, msg.target, routing.epoch);
+
+            LongHashSet undecided = new LongHashSet();
+            transactions.forEach((transactionID, t) -> {
+                if (!hasDecided(transactionID)) {
+                    undecided.add(transactionID);
+                }
+            });
+            drainingMigrations.put(msg.migrationID, undecided);
+        }
+        // the source asks again until it hears from me, from its new primary after a failover
+        migrationSources.put(msg.migrationID, getSender());
+        drained(msg.migrationID);
+    }
+
+    private void drained(String migrationID) {
+        LongHashSet undecided = drainingMigrations.get(migrationID);
+        if (undecided == null || undecided.isEmpty()) {
+            drainingMigrations.remove(migrationID);
+            send(migrationSources.get(migrationID), new RoutingDrained(migrationID));
+        }
+    }
+
+    @Override
+    protected void fixDecision(long transactionID, DSSDecision d, long commitTimestamp) {
+        if (!hasDecided(transactionID)) {
+            Transaction t = transactions.get(transactionID);
+            t.awaitAcknowledgements();
+            timeouts.cancel(transactionID);
+            t.markDecided();
+            if (t.getEndedAt() != 0) {
+                Metrics.recordSince(Metrics.COORDINATOR_VOTE, t.getEndedAt());
+            }
+        }
+        super.fixDecision(transactionID, d, commitTimestamp);
+
+        for (String migrationID : new ArrayList<>(drainingMigrations.keySet())) {
+            if (drainingMigrations.get(migrationID).remove(transactionID)) {
+                drained(migrationID);
+            }
+        }
+    }
+
+    /* -- Replication (for DSS) ------------------ */
+
+    // A backup took over a partition. The undecided transactions that involved the previous primary now
+    // involve the new one: the one-phase commits are asked again, the vote requests sent again, so that the
+    // new primary answers with what it got from the previous one; those still running will be aborted by it.
+    private void onReplicaView(ReplicaView msg) {
+        if (msg.view <= primaryViews[msg.partition]) {
+            return;
+        }
+        primaryViews[msg.partition] = msg.view;
+        ActorRef previous = dataStores.set(msg.partition, msg.primary);
+        Log.log(LogLevel.BASIC, this.id, "Partition {} has a new primary in view {}", msg.partition, msg.view);
+
+        for (Transaction t : transactions.values()) {
+            if (!t.participants.remove(previous)) {
+                continue;
+            }
+            t.participants.add(msg.primary);
+            if (hasDecided(t.id)) {
+                // the acknowledgement is now up to the new primary
+                if (t.getUnacknowledged().remove(previous)) {
+                    t.getUnacknowledged().add(msg.primary);
+                    send(msg.primary, decisionResponse(t.id));
+                }
+            } else if (t.isOnePhase()) {
+                retryCommitRequest(t);
+            } else if (timeouts.isScheduled(t.id)) {
+                t.markResent();
+                send(msg.primary, voteRequest(t.id));
+            }
+        }
+    }
+
     /* -- 2PC methods (for DSS) ------------------ */
 
     @Override
-    protected void onTimeout(Timeout msg) {
-        timeouts.remove(msg.transactionID);
-        if (!hasDecided(msg.transactionID)) {
+    protected void onTimeout(long transactionID) {
+        Transaction t = transactions.get(transactionID);
+        if (t == null) {
+            return; // retired in the meantime
+        }
+        if (t.isOnePhase()) {
+            // the DSS may have already committed: only it can tell, so ask again
+            Log.log(LogLevel.BASIC, this.id, "Timeout. Asking the DSS again for the one-phase commit.");
+            backOff(voteRoundTrips, t.participants);
+            retryCommitRequest(t);
+            return;
+        }
+        if (!hasDecided(t.id)) {
             Log.log(LogLevel.BASIC, this.id, "Timeout. Decision not taken, I'll just abort.");
-            fixDecision(msg.transactionID, DSSDecision.ABORT);
-
-            multicast(new DSSDecisionResponse(msg.transactionID, decision.get(msg.transactionID)));
-            // crashyDecisionResponse(msg.transactionID);
+            List<ActorRef> silent = new ArrayList<>(t.participants);
+            silent.removeAll(t.yesVoters);
+            backOff(voteRoundTrips, silent);
+            Metrics.abort(AbortReason.VOTE_TIMEOUT);
+            fixDecision(t.id, DSSDecision.ABORT);
+
+            multicast(decisionResponse(t.id));
+            // crashyDecisionResponse(t.id);
             // return;
 
             // Inform client of sad decision
-            ActorRef destination = transactionMapping.getKey(msg.transactionID);
-            delay(r.nextInt(MAX_DELAY));
-            destination.tell(new TxnResultMsg(false), getSelf());
+            answer(t);
+            retireIfAcknowledged(t);
+        } else {
+            // some participant did not get the decision, or its acknowledgement was lost
+            Log.log(LogLevel.BASIC, this.id, "Timeout. Sending the decision again.");
+            backOff(decisionRoundTrips, t.getUnacknowledged());
+            t.markResent();
+            t.getUnacknowledged().forEach(dss -> send(dss, decisionResponse(t.id), 0));
+            setTimeout(t.id, timeoutOf(decisionRoundTrips, t.getUnacknowledged(), DECISION_TIMEOUT));
+        }
+    }
+
+    // outcome of a one-phase commit; the DSS keeps it until I acknowledge it
+    private void onDSSDecisionResponse(DSSDecisionResponse msg) {
+        Transaction t = transactions.get(msg.transactionID);
+        if (t == null || !t.isOnePhase()) {
+            // a late answer to a request we sent again, or an outcome sent again after a crash
+            if (t == null || hasDecided(t.id)) {
+                send(getSender(), new DSSDecisionAck(msg.transactionID));
+            }
+            return;
+        }
+        t.setOnePhase(false);
+
+        Log.log(LogLevel.INFO, this.id, "One-phase commit decided {}", msg.decision);
+        if (!t.isResent()) {
+            observeRoundTrip(voteRoundTrips, getSender(), t.getEndedAt());
+        }
+        clock.observe(msg.commitTimestamp);
+        fixDecision(t.id, msg.decision, msg.commitTimestamp);
+
+        answer(t);
+        send(getSender(), new DSSDecisionAck(t.id));
+        retire(t.id);
+    }
+
+    private void onDSSDecisionAck(DSSDecisionAck msg) {
+        Transaction t = transactions.get(msg.transactionID);
+        Set<ActorRef> waiting = t == null ? null : t.getUnacknowledged();
+        if (waiting == null || !waiting.remove(getSender())) {
+            return;
+        }
+        if (!t.isResent()) {
+            observeRoundTrip(decisionRoundTrips, getSender(), t.getDecidedAt());
+        }
+        if (retireIfAcknowledged(t)) {
+            Metrics.recordSince(Metrics.COORDINATOR_DECISION, t.getDecidedAt());
+        }
+    }
+
+    private void retryCommitRequest(Transaction t) {
+        t.markResent();
+        setTimeout(t.id, timeoutOf(voteRoundTrips, t.participants, VOTE_TIMEOUT));
+        send(t.participants.iterator().next(), new DSSCommitRequest(t.id), 0);
+    }
+
+    private void onDSSVoteBatchResponse(DSSVoteBatchResponse msg) {
+        for (DSSVoteResponse response : msg.responses) {
+            onVote(response, getSender());
+            if (crashed) {
+                return; // the rest of the batch is lost with me
+            }
         }
     }
 
     private void onDSSVoteResponse(DSSVoteResponse msg) {
+        onVote(msg, getSender());
+    }
+
+    private void onVote(DSSVoteResponse msg, ActorRef voter) {
         //log("Received DSSVoteResponse with content v = "
         //        + msg.vote + " total yes? " + yesVotersMap.get(msg.transactionID).size());
 
-        if (hasDecided(msg.transactionID)) {
+        Transaction t = transactions.get(msg.transactionID);
+        if (t == null || hasDecided(t.id)) {
             // we have already decided and sent the decision to the group,
             // so do not care about other votes
             return;
         }
 
+        if (!t.isResent()) {
+            observeRoundTrip(voteRoundTrips, voter, t.getEndedAt());
+        }
         DSSVote v = msg.vote;
-        Set<ActorRef> transactionVoters = yesVotersMap.get(msg.transactionID);
 
-        if (v == DSSVote.YES) {
-            transactionVoters.add(getSender());
+        if (v == DSSVote.YES || v == DSSVote.READ_ONLY) {
+            if (v == DSSVote.YES) {
+                t.yesVoters.add(voter);
+                t.observePrepare(msg.prepareTimestamp);
+                clock.observe(msg.prepareTimestamp);
+            } else {
+                // the voter has already released the transaction and is out of phase two
+                t.participants.remove(voter);
+            }
 
-            if (allVotedYes(msg.transactionID)) {
+            if (t.participants.isEmpty()) {
+                // a read-only transaction: nobody is waiting for a decision
+                Log.log(LogLevel.INFO, this.id, "All READ_ONLY votes. Committing");
+                fixDecision(t.id, DSSDecision.COMMIT);
+            } else if (t.allVotedYes()) {
                 Log.log(LogLevel.INFO, this.id, "Received all YES votes. Committing");
-                timeouts.get(msg.transactionID).cancel();
-                fixDecision(msg.transactionID, DSSDecision.COMMIT);
-                yesVotersMap.remove(msg.transactionID);
+                fixDecision(t.id, DSSDecision.COMMIT, t.getPrepareTimestamp());
 
-                //multicast(new DSSDecisionResponse(msg.transactionID, decision.get(msg.transactionID)));
-                crashyDecisionResponse(msg.transactionID);
-                return;
+                //multicast(decisionResponse(t.id));
+                crashyDecisionResponse(t.id);
+                if (crashed) {
+                    return; // the client will be told on recovery
+                }
             } else {
                 Log.log(LogLevel.INFO, this.id, "Received some YES votes. Keep going");
                 return; // nothing to do, we need to wait some more
@@ -217,95 +551,129 @@ public class Coordinator extends AbstractNode {
         } else { // a NO vote
             // on a single NO we decide ABORT
             Log.log(LogLevel.INFO, this.id, "Received one NO vote. Aborting");
-            fixDecision(msg.transactionID, DSSDecision.ABORT);
-            multicast(new DSSDecisionResponse(msg.transactionID, decision.get(msg.transactionID)));
+            fixDecision(t.id, DSSDecision.ABORT);
+            multicast(decisionResponse(t.id));
         }
 
-        ActorRef originalSender = transactionMapping.getKey(msg.transactionID);
-        delay(r.nextInt(MAX_DELAY));
-        originalSender.tell(new TxnResultMsg(decision.get(msg.transactionID) == DSSDecision.COMMIT),
-                getSelf());
+        answer(t);
+        retireIfAcknowledged(t);
     }
 
-    private void crashyDecisionResponse(String transactionID) {
-        if (Init.CRASH_COORDINATOR_AFTER_ONE_DECISION_RESPONSE && !Init.CRASH_COORDINATOR_AFTER_ALL_DECISION_RESPONSE) {
-            multicastAndCrash(new DSSDecisionResponse(transactionID, decision.get(transactionID)));
+    private void crashyDecisionResponse(long transactionID) {
+        if (config.crashCoordinatorAfterOneDecisionResponse && !config.crashCoordinatorAfterAllDecisionResponse) {
+            multicastAndCrash(decisionResponse(transactionID));
         } else if (
-                (!Init.CRASH_COORDINATOR_AFTER_ONE_DECISION_RESPONSE && Init.CRASH_COORDINATOR_AFTER_ALL_DECISION_RESPONSE) ||
-                        (Init.CRASH_COORDINATOR_AFTER_ONE_DECISION_RESPONSE && Init.CRASH_COORDINATOR_AFTER_ALL_DECISION_RESPONSE)
+                (!config.crashCoordinatorAfterOneDecisionResponse && config.crashCoordinatorAfterAllDecisionResponse) ||
+                        (config.crashCoordinatorAfterOneDecisionResponse && config.crashCoordinatorAfterAllDecisionResponse)
         ) {
-            multicast(new DSSDecisionResponse(transactionID, decision.get(transactionID)));
+            multicast(decisionResponse(transactionID));
             crash(CRASH_TIME);
         } else {
-            multicast(new DSSDecisionResponse(transactionID, decision.get(transactionID)));
+            multicast(decisionResponse(transactionID));
         }
     }
 
-    private void crashyVoteRequest(String transactionID) {
-        if (Init.CRASH_COORDINATOR_AFTER_ONE_VOTE_REQUEST && !Init.CRASH_COORDINATOR_AFTER_ALL_VOTE_REQUEST) {
-            multicastAndCrash(new DSSVoteRequest(transactionID));
+    private void crashyVoteRequest(long transactionID) {
+        if (config.crashCoordinatorAfterOneVoteRequest && !config.crashCoordinatorAfterAllVoteRequest) {
+            multicastAndCrash(voteRequest(transactionID));
         } else if (
-                (!Init.CRASH_COORDINATOR_AFTER_ONE_VOTE_REQUEST && Init.CRASH_COORDINATOR_AFTER_ALL_VOTE_REQUEST) ||
-                        (Init.CRASH_COORDINATOR_AFTER_ONE_VOTE_REQUEST && Init.CRASH_COORDINATOR_AFTER_ALL_VOTE_REQUEST)
+                (!config.crashCoordinatorAfterOneVoteRequest && config.crashCoordinatorAfterAllVoteRequest) ||
+                        (config.crashCoordinatorAfterOneVoteRequest && config.crashCoordinatorAfterAllVoteRequest)
         ) {
-            multicast(new DSSVoteRequest(transactionID));
+            multicast(voteRequest(transactionID));
             crash(CRASH_TIME);
         } else {
-            multicast(new DSSVoteRequest(transactionID));
+            multicast(voteRequest(transactionID));
         }
     }
 
     @Override
     protected void onRecovery(Recovery msg) {
-        getContext().become(createReceive());
-
-        transactionMapping.forEach((client, transactionID) -> {
-            Log.log(LogLevel.BASIC, this.id, "Recovery. Decided? " + hasDecided(transactionID)
-                    + ". My decision? "
-                    + (decision.get(transactionID) == null ? "null" : decision.get(transactionID)));
+        resume();
+        // the batch being collected was lost in the crash, its transactions are aborted below
+        pendingVoteRequests.clear();
+
+        // every transaction not retired yet; the clients not told the outcome are told now
+        for (Transaction t : transactions.values()) {
+            Log.log(LogLevel.BASIC, this.id, "Recovery. Decided? {}. My decision? {}", hasDecided(t.id),
+                    decisionOf(t.id));
+
+            if (t.isOnePhase()) {
+                // not ours to abort, the DSS knows the outcome
+                retryCommitRequest(t);
+                continue;
+            }
 
-            if (!hasDecided(transactionID)) {
-                fixDecision(transactionID, DSSDecision.ABORT);
+            if (!hasDecided(t.id)) {
+                Metrics.abort(AbortReason.COORDINATOR_RECOVERY);
+                fixDecision(t.id, DSSDecision.ABORT);
             }
 
-            multicast(new DSSDecisionResponse(transactionID, decision.get(transactionID)));
+            multicast(decisionResponse(t.id));
             // we can make the coordinator crash on recovery, but it would be a bit harsh
             // crashyDecisionResponse(msg.transactionID);
             // return;
 
-            client.tell(new TxnResultMsg(decision.get(transactionID) == DSSDecision.COMMIT), getSelf());
-
-        });
+            answer(t);
+            if (!retireIfAcknowledged(t)) {
+                t.markResent();
+                setTimeout(t.id, timeoutOf(decisionRoundTrips, t.getUnacknowledged(), DECISION_TIMEOUT));
+            }
+        }
     }
 
 
+    // 2PC messages only go to the participants of the transaction
     @Override
     protected void multicast(DSSMessage m) {
-        for (ActorRef datastore : dataStores) {
-            datastore.tell(m, getSelf());
+        for (ActorRef datastore : transactions.get(m.transactionID).participants) {
+            send(datastore, m, 0);
         }
     }
 
     @Override
     protected void multicastAndCrash(DSSMessage m) {
         // Crashes after one message
-        for (ActorRef datastore : dataStores) {
-            datastore.tell(m, getSelf());
+        for (ActorRef datastore : transactions.get(m.transactionID).participants) {
+            send(datastore, m, 0);
             break;
         }
         crash(CRASH_TIME);
     }
 
-    /* -- Auxiliary ------------------------ */
+    private DSSVoteRequest voteRequest(long transactionID) {
+        return new DSSVoteRequest(transactionID, new ArrayList<>(transactions.get(transactionID).participants));
+    }
+
+    // tell the client the outcome of its transaction, once
+    private void answer(Transaction t) {
+        if (!t.isAnswered()) {
+            t.markAnswered();
+            send(t.client, new TxnResultMsg(t.id, decisionOf(t.id) == DSSDecision.COMMIT));
+        }
+    }
 
-    private boolean allVotedYes(String transactionID) {
-        Set<ActorRef> contacted = this.dataStoreMapping.get(transactionID);
-        Set<ActorRef> voters = yesVotersMap.get(transactionID);
-        return voters.size() >= contacted.size();
+    /* -- Retirement ------------------------ */
+
+    // true if the transaction is decided and every participant has the decision
+    private boolean retireIfAcknowledged(Transaction t) {
+        if (!t.isAcknowledged()) {
+            return false;
+        }
+        retire(t.id);
+        return true;
     }
 
-    private ActorRef getCorrespondingDSS(int key) {
-        return dataStores.get((key - (key % 10)) / 10);
+    @Override
+    protected void retire(long transactionID) {
+        transactions.remove(transactionID);
+        super.retire(transactionID);
+    }
+
+    /* -- Auxiliary ------------------------ */
+
+    private ActorRef getCorrespondingDSS(Transaction t, int key) {
+        return dataStores.get(t.routing.partitionOf(key));
     }
 
-}
\ No newline at end of file
+}
@@ -1,66 +1,209 @@
 package it.unitn.ds1.project;
 
 import akka.actor.ActorRef;
+import akka.actor.ExtendedActorSystem;
 import akka.actor.Props;
 import it.unitn.ds1.common.Log;
 import it.unitn.ds1.common.LogLevel;
+import it.unitn.ds1.common.LongHashMap;
+import it.unitn.ds1.common.LongHashSet;
+import it.unitn.ds1.common.RttEstimator;
+import it.unitn.ds1.project.concurrency.ConcurrencyControl;
+import it.unitn.ds1.project.concurrency.MultiVersionConcurrencyControl;
+import it.unitn.ds1.project.concurrency.OptimisticConcurrencyControl;
+import it.unitn.ds1.project.concurrency.TwoPhaseLocking;
+import it.unitn.ds1.project.message.CrashMsg;
 import it.unitn.ds1.project.message.DSSWelcomeMsg;
+import it.unitn.ds1.project.message.NetworkTick;
+import it.unitn.ds1.project.message.TimerTick;
 import it.unitn.ds1.project.message.dss.DSSMessage;
 import it.unitn.ds1.project.message.dss.Recovery;
 import it.unitn.ds1.project.message.dss.RequestSummaryMsg;
-import it.unitn.ds1.project.message.dss.Timeout;
+import it.unitn.ds1.project.message.dss.SummaryMsg;
+import it.unitn.ds1.project.message.dss.WALFlush;
+import it.unitn.ds1.project.message.dss.commit.DSSCommitRequest;
 import it.unitn.ds1.project.message.dss.decision.DSSDecision;
+import it.unitn.ds1.project.message.dss.decision.DSSDecisionAck;
 import it.unitn.ds1.project.message.dss.decision.DSSDecisionRequest;
 import it.unitn.ds1.project.message.dss.decision.DSSDecisionResponse;
+import it.unitn.ds1.project.message.dss.migration.MigrationAdopted;
+import it.unitn.ds1.project.message.dss.migration.MigrationCopied;
+import it.unitn.ds1.project.message.dss.migration.MigrationData;
+import it.unitn.ds1.project.message.dss.migration.MigrationDone;
+import it.unitn.ds1.project.message.dss.migration.MigrationForward;
+import it.unitn.ds1.project.message.dss.migration.MigrationRetry;
+import it.unitn.ds1.project.message.dss.migration.MigrationStartMsg;
+import it.unitn.ds1.project.message.dss.migration.MigrationWaitTimeout;
+import it.unitn.ds1.project.message.dss.migration.RoutingDrained;
+import it.unitn.ds1.project.message.dss.migration.RoutingUpdate;
 import it.unitn.ds1.project.message.dss.read.DSSReadRequestMsg;
 import it.unitn.ds1.project.message.dss.read.DSSReadResultMsg;
+import it.unitn.ds1.project.message.dss.read.DSSStaleReadRequestMsg;
+import it.unitn.ds1.project.message.dss.replication.ReplicaAck;
+import it.unitn.ds1.project.message.dss.replication.ReplicaAppend;
+import it.unitn.ds1.project.message.dss.replication.ReplicaCandidate;
+import it.unitn.ds1.project.message.dss.replication.ReplicaHeartbeat;
+import it.unitn.ds1.project.message.dss.replication.ReplicaPromise;
+import it.unitn.ds1.project.message.dss.replication.ReplicaSync;
+import it.unitn.ds1.project.message.dss.replication.ReplicaSyncRequest;
+import it.unitn.ds1.project.message.dss.replication.ReplicaTick;
+import it.unitn.ds1.project.message.dss.replication.ReplicaView;
+import it.unitn.ds1.project.message.dss.replication.ReplicationMessage;
 import it.unitn.ds1.project.message.dss.vote.DSSVote;
+import it.unitn.ds1.project.message.dss.vote.DSSVoteBatchRequest;
+import it.unitn.ds1.project.message.dss.vote.DSSVoteBatchResponse;
 import it.unitn.ds1.project.message.dss.vote.DSSVoteRequest;
 import it.unitn.ds1.project.message.dss.vote.DSSVoteResponse;
 import it.unitn.ds1.project.message.dss.write.DSSWriteRequestMsg;
+import it.unitn.ds1.project.metrics.AbortReason;
+import it.unitn.ds1.project.metrics.Metrics;
 import it.unitn.ds1.project.model.DataItem;
+import it.unitn.ds1.project.model.MigratedItems;
 import it.unitn.ds1.project.model.PrivateWorkspace;
-
+import it.unitn.ds1.project.model.TransactionID;
+import it.unitn.ds1.project.partition.Migration;
+import it.unitn.ds1.project.persistence.LogRecord;
+import it.unitn.ds1.project.persistence.WriteAheadLog;
+import it.unitn.ds1.project.replication.BackupTracker;
+import scala.concurrent.duration.Duration;
+
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /*-- The data store -----------------------------------------------------------*/
 public class DSS extends AbstractNode {
 
-    private final Map<Integer, DataItem> items = new HashMap<>();
+    // the items, and the rules to access them
+    private final ConcurrencyControl concurrencyControl;
     private final List<ActorRef> dataStores = new ArrayList<>();
-
-    private final Map<String, PrivateWorkspace> privateWorkspaces = new HashMap<>();
-    private final Map<String, List<DataItem>> lockedItems = new HashMap<>();
-    private final Map<String, ActorRef> coordinators = new HashMap<>();
-    private final Map<String, DSSVote> votes = new HashMap<>();
+    private final List<ActorRef> coordinatorGroup = new ArrayList<>();
+    // the replicas of every partition, the first one being the primary of view 0, and the view of each primary
+    private final List<List<ActorRef>> replicaGroups = new ArrayList<>();
+    private int[] primaryViews;
+
+    private final LongHashMap<PrivateWorkspace> privateWorkspaces = new LongHashMap<>();
+    private final LongHashMap<ActorRef> coordinators = new LongHashMap<>();
+    private final LongHashMap<List<ActorRef>> participants = new LongHashMap<>();
+    private final LongHashMap<DSSVote> votes = new LongHashMap<>();
+    private final LongHashMap<Long> prepareTimestamps = new LongHashMap<>();
+    // System.nanoTime() of my vote, until the decision comes; dropped if the vote is sent again or I
+    // ask around, as the decision may then answer either
+    private final LongHashMap<Long> votedAt = new LongHashMap<>();
+    // by coordinator, from my vote to its decision
+    private final Map<ActorRef, RttEstimator> decisionRoundTrips = new HashMap<>();
+
+    // work of the transactions waiting for a lock, to be run in order once they get it
+    private final LongHashMap<Deque<Runnable>> blocked = new LongHashMap<>();
+
+    private final WriteAheadLog writeAheadLog;
+    // replies that can only leave once the records they depend on are durable (on my disk, and on a quorum
+    // of the backups in sync), and a quorum of the backups has acknowledged a round sent after them, in order
+    private final Deque<AwaitingReply> awaitingDurability = new ArrayDeque<>();
+    private boolean flushScheduled = false;
+    private long logSeq = 0;        // records appended so far
+    private long flushedSeq = 0;
+
+    // Primary-backup replication of my partition. Role, view, primary and the view I promised are kept
+    // across a crash, as if they were saved with the log.
+    private enum Role {PRIMARY, BACKUP, RECOVERING}
+
+    private final int partition;
+    // backups that must have a record before a reply depending on it leaves: the write quorum but me
+    private final int backupQuorum;
+    private Role role;
+    private int view = 0;
+    private ActorRef primary;
+    private long viewStart = 0;     // when I took over: older transactions may have worked at the previous primary
+    // as primary: the backups, and the records appended since the last flush, still to be sent to them
+    private BackupTracker backups;
+    private final List<LogRecord> unshipped = new ArrayList<>();
+    private boolean holdingReplies = false;     // too few backups in sync for a quorum
+    // as backup: the last record applied (NOTHING until I get the whole state), and the last heartbeat
+    private long appliedSeq = BackupTracker.NOTHING;
+    private long lastHeartbeat = 0;
+    private List<ActorRef> lastInSync = List.of();
+    private long syncRequestedAt = 0;
+    // the newest view I promised to take part in: the primaries of older views get nothing more from me
+    private int promised = 0;
+    // with the primary silent: the view I would take over in (NO_VIEW if I am not running), which fences the
+    // older ones as well until I stand down, since when, and the replicas that promised it to me, myself included
+    private int electing = NO_VIEW;
+    private long electionStartedAt = 0;
+    private final Map<ActorRef, ReplicaPromise> promises = new HashMap<>();
+    // back from a crash as primary: the replicas that told me their view
+    private final Set<ActorRef> recoveryAnswers = new HashSet<>();
+
+    // the keys I am handing over to another DSS, null if none
+    private Migration outgoing = null;
+    private int migrationCount = 0;
+    // copies of the keys other DSSes are handing over to me, by migration
+    private final Map<String, MigratedItems> incoming = new HashMap<>();
+    // transactions whose next operation waits for an incoming key
+    private final LongHashSet awaitingMigration = new LongHashSet();
+    // accesses to each key, to choose what to hand over
+    private final Map<Integer, Integer> accessCounts = new HashMap<>();
 
     final static int CRASH_TIME = 20000;
 
+    final static int INITIAL_VALUE = 100;
+    final static int INITIAL_VERSION = 1;
 
-    //private final Map<String, Boolean> alreadyTimedOut = new HashMap<>();
-
-    //private final BufferedWriter writeAheadLog;
+    final static int WAL_SEGMENT_SIZE = 1 << 20;     // bytes of each memory-mapped log segment
+    final static int GROUP_COMMIT_SIZE = 64;    // records forcing an early fsync
+    final static int GROUP_COMMIT_DELAY = 5;    // max wait of a record for its fsync, ms
+    final static int CHECKPOINT_INTERVAL = 1000;     // records between two checkpoints
+    final static int MVCC_VERSIONS = 8;     // committed versions kept for each key
+    final static int MIGRATION_RETRY = 500;     // time before an unacknowledged migration step is sent again, ms
+    final static int MIGRATION_WAIT = 5000;     // max wait of a transaction for an incoming key, ms
+    final static int REPLICA_TICK = 100;        // period of the heartbeats of a primary, ms
+    final static int REPLICA_TIMEOUT = 500;     // max wait for a backup before dropping it, or for a sync, ms
+    final static int FAILOVER_TIMEOUT = 1000;   // silence of the primary before a backup runs for it, ms
+    final static int NO_VIEW = -1;
 
-    public DSS(int id, int lowerBound) {
-        super(id);
 
-        /*try {
-            writeAheadLog = new BufferedWriter(new FileWriter(this.id + "-log"));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }*/
+    //private final Map<String, Boolean> alreadyTimedOut = new HashMap<>();
 
-        for (int i = lowerBound; i < lowerBound + 10; i++) {
-            //   this.items.put(i, new DataItem(r.nextInt(), 1));
-            this.items.put(i, new DataItem(100, 1));
+    public DSS(int id, int partition, int[] keys, Config config) {
+        super(id, config);
+        this.partition = partition;
+        this.backupQuorum = config.writeQuorum - 1;
+
+        this.writeAheadLog = new WriteAheadLog(Paths.get(config.walDirectory, String.valueOf(this.id)),
+                WAL_SEGMENT_SIZE);
+        switch (config.concurrencyControl) {
+            case MVCC:
+                this.concurrencyControl = new MultiVersionConcurrencyControl(this.id, keys,
+                        MVCC_VERSIONS, INITIAL_VALUE, INITIAL_VERSION);
+                break;
+            case TWO_PHASE_LOCKING:
+                this.concurrencyControl = new TwoPhaseLocking(this.id, keys,
+                        INITIAL_VALUE, INITIAL_VERSION, config.deadlockPrevention);
+                break;
+            default:
+                this.concurrencyControl = new OptimisticConcurrencyControl(this.id, keys,
+                        INITIAL_VALUE, INITIAL_VERSION);
+                break;
         }
     }
 
-    static public Props props(int id, int lowerBound) {
-        return Props.create(DSS.class, () -> new DSS(id, lowerBound));
+    static public Props props(int id, int partition, int[] keys, Config config) {
+        return Props.create(DSS.class, () -> new DSS(id, partition, keys, config));
+    }
+
+    @Override
+    public void postStop() {
+        writeAheadLog.close();
     }
 
     @Override
@@ -70,19 +213,48 @@ public class DSS extends AbstractNode {
                 .match(DSSWelcomeMsg.class, this::onDSSWelcome)
 
                 // COORDINATOR -> DSS
-                .match(DSSReadRequestMsg.class, this::onDSSReadRequest)
-                .match(DSSWriteRequestMsg.class, this::onDSSWriteRequest)
+                .match(DSSReadRequestMsg.class, msg -> asPrimary(msg, this::onDSSReadRequest))
+                .match(DSSWriteRequestMsg.class, msg -> asPrimary(msg, this::onDSSWriteRequest))
+                .match(DSSStaleReadRequestMsg.class, this::onDSSStaleReadRequest)
 
-                .match(DSSVoteRequest.class, this::onDSSVoteRequest)
+                .match(DSSVoteRequest.class, msg -> asPrimary(msg, this::onDSSVoteRequest))
+                .match(DSSVoteBatchRequest.class, msg -> asPrimary(msg, this::onDSSVoteBatchRequest))
+                .match(DSSCommitRequest.class, msg -> asPrimary(msg, this::onDSSCommitRequest))
 
                 .match(DSSDecisionRequest.class, this::onDSSDecisionRequest)
-                .match(DSSDecisionResponse.class, this::onDecisionResponse)
+                .match(DSSDecisionResponse.class, msg -> asPrimary(msg, this::onDSSDecisionResponse))
+                .match(DSSDecisionAck.class, msg -> asPrimary(msg, this::onDSSDecisionAck))
 
-                .match(Timeout.class, this::onTimeout)
+                .match(TimerTick.class, this::onTimerTick)
                 .match(Recovery.class, this::onRecovery)
+                .match(WALFlush.class, this::onWALFlush)
+                .match(NetworkTick.class, this::onNetworkTick)
+                .match(CrashMsg.class, this::onCrash)
 
                 // DSS -> DSS
-                .match(DSSVoteResponse.class, this::onDSSVoteResponse)
+                .match(DSSVoteResponse.class, msg -> asPrimary(msg, this::onDSSVoteResponse))
+
+                // REPLICATION
+                .match(ReplicaTick.class, this::onReplicaTick)
+                .match(ReplicaHeartbeat.class, this::onReplicaHeartbeat)
+                .match(ReplicaAppend.class, this::onReplicaAppend)
+                .match(ReplicaAck.class, this::onReplicaAck)
+                .match(ReplicaSyncRequest.class, this::onReplicaSyncRequest)
+                .match(ReplicaSync.class, this::onReplicaSync)
+                .match(ReplicaCandidate.class, this::onReplicaCandidate)
+                .match(ReplicaPromise.class, this::onReplicaPromise)
+                .match(ReplicaView.class, this::onReplicaView)
+
+                // MIGRATION
+                .match(MigrationStartMsg.class, msg -> asPrimary(msg, this::onMigrationStart))
+                .match(MigrationData.class, msg -> asPrimary(msg, this::onMigrationData))
+                .match(MigrationCopied.class, msg -> asPrimary(msg, this::onMigrationCopied))
+                .match(MigrationForward.class, msg -> asPrimary(msg, this::onMigrationForward))
+                .match(MigrationDone.class, msg -> asPrimary(msg, this::onMigrationDone))
+                .match(MigrationAdopted.class, msg -> asPrimary(msg, this::onMigrationAdopted))
+                .match(MigrationRetry.class, this::onMigrationRetry)
+                .match(MigrationWaitTimeout.class, this::onMigrationWaitTimeout)
+                .match(RoutingDrained.class, msg -> asPrimary(msg, this::onRoutingDrained))
 
                 .match(RequestSummaryMsg.class, this::onRequestSummary)
 
@@ -93,143 +265,440 @@ public class DSS extends AbstractNode {
 
     private void onDSSWelcome(DSSWelcomeMsg msg) {
         this.dataStores.addAll(msg.dss);
+        this.coordinatorGroup.addAll(msg.coordinators);
+        this.replicaGroups.addAll(msg.replicas);
+        this.primaryViews = new int[msg.replicas.size()];
+
+        this.primary = msg.replicas.get(partition).get(0);
+        this.role = primary == getSelf() ? Role.PRIMARY : Role.BACKUP;
+        this.backups = new BackupTracker(msg.replicas.get(partition), getSelf());
+        scheduleToSelf(new ReplicaTick(), REPLICA_TICK);
+    }
+
+    // requests only the primary serves: a backup passes them on to the primary it knows, and tells the sender
+    // who that is; a primary back from a crash ignores them until it knows whether it still is the primary
+    private <T> void asPrimary(T msg, Consumer<T> handler) {
+        if (role == Role.PRIMARY) {
+            handler.accept(msg);
+        } else if (role == Role.BACKUP && primary != getSelf()) {
+            primary.forward(msg, getContext());
+            send(getSender(), new ReplicaView(view, partition, primary));
+        }
     }
 
     /* -- R/W messages -------------------------- */
 
     private void onDSSReadRequest(DSSReadRequestMsg msg) {
-        Log.log(LogLevel.DEBUG, this.id, "Received DSSReadRequest for tID " + msg.transactionID + ", key: " + msg.key);
-        PrivateWorkspace currentPrivateWorkspace = getWorkspace(msg.transactionID);
+        Log.log(LogLevel.DEBUG, this.id, () -> "Received DSSReadRequest for tID " + TransactionID.toString(msg.transactionID) + ", key: " + msg.key);
+        ActorRef sender = getSender();
+        whenUnblocked(msg.transactionID, () -> read(msg, sender));
+    }
+
+    private void read(DSSReadRequestMsg msg, ActorRef sender) {
+        checkView(msg.transactionID, msg.startTimestamp);
+        if (hasDecided(msg.transactionID)) {
+            // already aborted here: answer anyway, the client is waiting, but touch no state
+            // (or the key is not mine: the value read by an aborted transaction is never used)
+            PrivateWorkspace detached = new PrivateWorkspace();
+            detached.setStartTimestamp(msg.startTimestamp);
+            DataItem item = concurrencyControl.holds(msg.key) ? concurrencyControl.copy(msg.key, detached)
+                    : new DataItem(0, 0);
+            send(sender, new DSSReadResultMsg(msg.transactionID, msg.key, item.getValue(), item.getVersion()));
+            return;
+        }
+
+        PrivateWorkspace currentPrivateWorkspace = getWorkspace(msg.transactionID, sender, msg.startTimestamp);
 
         if (!currentPrivateWorkspace.containsKey(msg.key)) {
-            DataItem copy = new DataItem(this.items.get(msg.key));
-            currentPrivateWorkspace.put(msg.key, copy);
+            if (!checkOwnership(msg.transactionID, msg.key, () -> read(msg, sender))
+                    || !access(msg.transactionID, currentPrivateWorkspace, msg.key, false, () -> read(msg, sender))) {
+                return;
+            }
+            currentPrivateWorkspace.put(msg.key, concurrencyControl.copy(msg.key, currentPrivateWorkspace));
         }
 
         DataItem copiedItem = currentPrivateWorkspace.get(msg.key);
-        DSSReadResultMsg responseMsg = new DSSReadResultMsg(msg.transactionID, msg.key, copiedItem.getValue());
+        DSSReadResultMsg responseMsg = new DSSReadResultMsg(msg.transactionID, msg.key,
+                copiedItem.getValue(), copiedItem.getVersion());
 
-        ActorRef sender = getSender();
-        delay(r.nextInt(MAX_DELAY));
-        sender.tell(responseMsg, this.getSelf());
+        send(sender, responseMsg);
         Log.log(LogLevel.DEBUG, this.id, "Sent DSSReadResponse");
     }
 
     private void onDSSWriteRequest(DSSWriteRequestMsg msg) {
-        Log.log(LogLevel.DEBUG, this.id, "Received DSSWriteRequest for tID " + msg.transactionID + ", key: " + msg.key + ", value: " + msg.value);
+        Log.log(LogLevel.DEBUG, this.id, () -> "Received DSSWriteRequest for tID " + TransactionID.toString(msg.transactionID) + ", key: " + msg.key + ", value: " + msg.value);
+        ActorRef sender = getSender();
+        whenUnblocked(msg.transactionID, () -> write(msg, sender));
+    }
+
+    private void write(DSSWriteRequestMsg msg, ActorRef sender) {
+        checkView(msg.transactionID, msg.startTimestamp);
+        if (hasDecided(msg.transactionID)) {
+            return; // already aborted here
+        }
 
-        PrivateWorkspace currentPrivateWorkspace = getWorkspace(msg.transactionID);
+        PrivateWorkspace currentPrivateWorkspace = getWorkspace(msg.transactionID, sender, msg.startTimestamp);
 
+        if (!checkOwnership(msg.transactionID, msg.key, () -> write(msg, sender))
+                || !access(msg.transactionID, currentPrivateWorkspace, msg.key, true, () -> write(msg, sender))) {
+            return;
+        }
         if (!currentPrivateWorkspace.containsKey(msg.key)) {
-            DataItem copy = new DataItem(this.items.get(msg.key));
-            currentPrivateWorkspace.put(msg.key, copy);
+            currentPrivateWorkspace.put(msg.key, concurrencyControl.copy(msg.key, currentPrivateWorkspace));
         }
 
-        currentPrivateWorkspace.get(msg.key).setValue(msg.value, null);
-        currentPrivateWorkspace.get(msg.key).incrementVersion(null);
+        currentPrivateWorkspace.get(msg.key).setValue(msg.value);
+        currentPrivateWorkspace.get(msg.key).incrementVersion();
 
         // No message is sent for writes
         //this.getSender().tell(new DSSWriteResultMsg(msg.transactionID), getSelf());
     }
 
-    private PrivateWorkspace getWorkspace(String transactionID) {
+    // served from the committed items, outside of any transaction, by the primary and by the backups in sync;
+    // anybody else ignores the request, and the coordinator asks the primary if the quorum does not answer
+    private void onDSSStaleReadRequest(DSSStaleReadRequestMsg msg) {
+        boolean synced = role == Role.PRIMARY || (role == Role.BACKUP && appliedSeq != BackupTracker.NOTHING);
+        if (!synced || !concurrencyControl.holds(msg.key)) {
+            return;
+        }
+        PrivateWorkspace detached = new PrivateWorkspace();
+        detached.setStartTimestamp(msg.startTimestamp);
+        DataItem item = concurrencyControl.copy(msg.key, detached);
+        send(getSender(), new DSSReadResultMsg(msg.transactionID, msg.key, item.getValue(), item.getVersion()));
+    }
+
+    private PrivateWorkspace getWorkspace(long transactionID, ActorRef coordinator, long startTimestamp) {
         // Add actorRef on coordinators if not present
-        this.coordinators.putIfAbsent(transactionID, getSender());
+        this.coordinators.putIfAbsent(transactionID, coordinator);
         //this.alreadyTimedOut.putIfAbsent(transactionID, false);
 
         PrivateWorkspace currentPrivateWorkspace = this.privateWorkspaces.get(transactionID);
 
         if (currentPrivateWorkspace == null) {
             currentPrivateWorkspace = new PrivateWorkspace();
+            currentPrivateWorkspace.setStartTimestamp(startTimestamp);
             this.privateWorkspaces.put(transactionID, currentPrivateWorkspace);
+            // my prepare timestamps must follow every snapshot I have served
+            clock.observe(startTimestamp);
         }
 
         return currentPrivateWorkspace;
     }
 
+    /* -- Lock waits ---------------------------- */
+
+    // false if the operation cannot go on now: it has been parked until the transaction gets its lock,
+    // or the transaction has been aborted and the operation run again to answer accordingly
+    private boolean access(long transactionID, PrivateWorkspace workspace, int key, boolean write, Runnable retry) {
+        ConcurrencyControl.Access access = concurrencyControl.access(transactionID, workspace, key, write);
+
+        if (access == ConcurrencyControl.Access.WAIT) {
+            blocked.computeIfAbsent(transactionID, t -> new ArrayDeque<>()).addFirst(retry);
+        }
+        // the victims release their locks, which may be the ones just waited for
+        concurrencyControl.woundedTransactions().forEach(wounded -> abort(wounded, AbortReason.WOUNDED));
+
+        if (access == ConcurrencyControl.Access.ABORT) {
+            abort(transactionID, AbortReason.CONFLICT);
+            retry.run();
+        }
+        return access == ConcurrencyControl.Access.GRANTED;
+    }
+
+    // false if the key is not mine: the operation waits if the key is migrating to me, otherwise the key has
+    // left and the transaction is aborted (only a transaction its coordinator has already decided can get here)
+    private boolean checkOwnership(long transactionID, int key, Runnable retry) {
+        boolean left = outgoing != null && outgoing.isSealed() && outgoing.moves(key);
+        if (concurrencyControl.holds(key) && !left) {
+            accessCounts.merge(key, 1, Integer::sum);
+            return true;
+        }
+
+        if (!left && isIncoming(key)) {
+            blocked.computeIfAbsent(transactionID, t -> new ArrayDeque<>()).addFirst(() -> {
+                awaitingMigration.remove(transactionID);
+                retry.run();
+            });
+            if (awaitingMigration.add(transactionID)) {
+                scheduleToSelf(new MigrationWaitTimeout(transactionID), MIGRATION_WAIT);
+            }
+            return false;
+        }
+
+        Log.log(LogLevel.INFO, this.id, () -> "Key " + key + " is not held here, aborting tID " + TransactionID.toString(transactionID));
+        abort(transactionID, AbortReason.KEY_MOVED);
+        if (hasDecided(transactionID)) {
+            retry.run();
+        }
+        return false;
+    }
+
+    // a transaction that began before I took over, and that I do not know, may have worked at the previous
+    // primary: what it did there is lost, so it is aborted
+    private void checkView(long transactionID, long startTimestamp) {
+        if (startTimestamp < viewStart && !privateWorkspaces.containsKey(transactionID)
+                && !hasVoted(transactionID)) {
+            Log.log(LogLevel.INFO, this.id, () -> "tID " + TransactionID.toString(transactionID) + " began before view " + view + ", aborting");
+            abort(transactionID, AbortReason.VIEW_CHANGE);
+        }
+    }
+
+    // messages of a waiting transaction queue up behind the operation that is waiting
+    private void whenUnblocked(long transactionID, Runnable work) {
+        Deque<Runnable> pending = blocked.get(transactionID);
+        if (pending != null) {
+            pending.addLast(work);
+        } else {
+            work.run();
+        }
+    }
+
+    private void unblock(long transactionID) {
+        Deque<Runnable> pending = blocked.remove(transactionID);
+        while (pending != null && !pending.isEmpty()) {
+            pending.pollFirst().run();
+            if (blocked.containsKey(transactionID)) {
+                // waiting again: the rest stays behind
+                blocked.get(transactionID).addAll(pending);
+                return;
+            }
+        }
+    }
+
+    // unilateral abort of a transaction that has not voted yet (a lock conflict, a key gone, ...)
+    private void abort(long transactionID, AbortReason reason) {
+        if (hasVoted(transactionID) || hasDecided(transactionID)) {
+            return;
+        }
+        Log.log(LogLevel.INFO, this.id, () -> "Aborting tID " + TransactionID.toString(transactionID) + ": " + reason);
+        Metrics.abort(reason);
+        recordVote(transactionID, DSSVote.NO);
+        onDecisionResponse(new DSSDecisionResponse(transactionID, DSSDecision.ABORT));
+        unblock(transactionID);
+    }
+
     /* -- Commit messages ---------------------- */
 
     public void onDSSVoteRequest(DSSVoteRequest msg) {
-        if (privateWorkspaces.get(msg.transactionID) == null) {
+        if (privateWorkspaces.get(msg.transactionID) == null && !hasVoted(msg.transactionID)) {
             assert (coordinators.get(msg.transactionID) == null);
-            assert (votes.get(msg.transactionID) == null);
-            assert (lockedItems.get(msg.transactionID) == null);
             // Doesn't bother me, I will ignore
             return;
         }
 
-        Log.log(LogLevel.DEBUG, this.id, "Received DSSVoteRequest for tID " + msg.transactionID);
-        if (!this.hasVoted(msg.transactionID)) {
-            this.checkConsistency(msg);
+        Log.log(LogLevel.DEBUG, this.id, () -> "Received DSSVoteRequest for tID " + TransactionID.toString(msg.transactionID));
+        ActorRef coordinator = getSender();
+        long arrivedAt = System.nanoTime();
+        whenUnblocked(msg.transactionID, () -> voteAndReply(msg, coordinator, arrivedAt));
+    }
+
+    private void voteAndReply(DSSVoteRequest msg, ActorRef coordinator, long arrivedAt) {
+        DSSVote vote = vote(msg);
+        sendVotes(coordinator, voteResponse(msg.transactionID, vote),
+                vote == DSSVote.READ_ONLY ? List.<Long>of() : List.of(msg.transactionID), arrivedAt);
+    }
+
+    // validate every transaction of the batch I take part in, and answer with a single message
+    private void onDSSVoteBatchRequest(DSSVoteBatchRequest msg) {
+        List<DSSVoteResponse> responses = new ArrayList<>();
+        List<Long> transactionIDs = new ArrayList<>();
+        long arrivedAt = System.nanoTime();
+
+        for (DSSVoteRequest request : msg.requests) {
+            if (privateWorkspaces.get(request.transactionID) == null && !hasVoted(request.transactionID)) {
+                continue; // not a participant
+            }
+            if (blocked.containsKey(request.transactionID)) {
+                // still waiting for a lock: it will answer on its own
+                ActorRef coordinator = getSender();
+                whenUnblocked(request.transactionID, () -> voteAndReply(request, coordinator, arrivedAt));
+                continue;
+            }
+
+            DSSVote vote = vote(request);
+            responses.add(voteResponse(request.transactionID, vote));
+            if (vote != DSSVote.READ_ONLY) {
+                transactionIDs.add(request.transactionID);
+            }
+        }
+
+        Log.log(LogLevel.DEBUG, this.id, "Received DSSVoteBatchRequest, voting for {}/{} transactions",
+                responses.size(), msg.requests.size());
+        if (!responses.isEmpty()) {
+            sendVotes(getSender(), new DSSVoteBatchResponse(responses), transactionIDs, arrivedAt);
+        }
+    }
+
+    private DSSVote vote(DSSVoteRequest request) {
+        if (this.hasVoted(request.transactionID)) {
+            return votes.get(request.transactionID);
+        }
+
+        if (concurrencyControl.isReadOnly(privateWorkspaces.get(request.transactionID))) {
+            // nothing to apply and nothing to undo: forget the transaction right away,
+            // no lock is kept and nothing needs to be logged
+            Log.log(LogLevel.INFO, this.id, "Sending vote READ_ONLY");
+            this.privateWorkspaces.remove(request.transactionID);
+            this.coordinators.remove(request.transactionID);
+            concurrencyControl.release(request.transactionID).forEach(this::unblock);
+            tryFinishMigration();
+            return DSSVote.READ_ONLY;
         }
 
-        if (Init.CRASH_DSS_BEFORE_VOTE_RESPONSE) {
+        this.participants.put(request.transactionID, request.participants);
+        this.checkConsistency(request);
+        return votes.get(request.transactionID);
+    }
+
+    private DSSVoteResponse voteResponse(long transactionID, DSSVote vote) {
+        return new DSSVoteResponse(transactionID, vote, prepareTimestamps.getOrDefault(transactionID, 0L));
+    }
+
+    private void sendVotes(ActorRef coordinator, Object response, List<Long> transactionIDs, long arrivedAt) {
+        // crashes are not injected in the middle of a migration, whose state is not logged
+        if (config.crashDssBeforeVoteResponse && !isMigrating()) {
             crash(CRASH_TIME);
             return;
         }
 
-        delay(r.nextInt(MAX_DELAY));
-        this.getSender().tell(new DSSVoteResponse(msg.transactionID, votes.get(msg.transactionID)), getSelf());
+        // the votes can only leave once they are on disk, mine and a quorum of the backups'
+        whenDurable(() -> {
+            Metrics.recordSince(Metrics.DSS_PREPARE, arrivedAt);
+            send(coordinator, response);
+        });
 
-        if (id == 1009) {
+        if (id == config.crashingDss && !isMigrating()) {
+            flushLog();
             crash(CRASH_TIME);
             return;
         }
         //if (!this.alreadyTimedOut.get(msg.transactionID)) {
         //    this.alreadyTimedOut.put(msg.transactionID, true);
-        setTimeout(msg.transactionID, DECISION_TIMEOUT);
+        int timeout = timeoutOf(decisionRoundTrips, coordinator, DECISION_TIMEOUT);
+        long now = System.nanoTime();
+        transactionIDs.forEach(transactionID -> {
+            if (votedAt.put(transactionID, now) != null) {
+                votedAt.remove(transactionID);
+            }
+            setTimeout(transactionID, timeout);
+        });
         //}
 
-        if (Init.CRASH_DSS_BEFORE_DECISION_RESPONSE) {
+        if (config.crashDssBeforeDecisionResponse && !isMigrating()) {
+            flushLog();
             crash(CRASH_TIME);
         }
     }
 
+    // One-phase commit: I am the only participant, so my vote is the decision.
+    // Vote and decision are logged together, and the outcome leaves once they are durable.
+    private void onDSSCommitRequest(DSSCommitRequest msg) {
+        ActorRef coordinator = getSender();
+        whenUnblocked(msg.transactionID, () -> commitOnePhase(msg, coordinator));
+    }
+
+    private void commitOnePhase(DSSCommitRequest msg, ActorRef coordinator) {
+        if (!hasDecided(msg.transactionID) && privateWorkspaces.get(msg.transactionID) == null) {
+            // the transaction was lost in a crash before being decided, so it cannot have committed
+            Log.log(LogLevel.BASIC, this.id,
+                    () -> "Received DSSCommitRequest for unknown tID " + TransactionID.toString(msg.transactionID));
+            fixDecision(msg.transactionID, DSSDecision.ABORT);
+        }
+
+        if (!hasDecided(msg.transactionID)) {
+            Log.log(LogLevel.DEBUG, this.id, () -> "Received DSSCommitRequest for tID " + TransactionID.toString(msg.transactionID));
+            this.participants.put(msg.transactionID, List.of(getSelf()));
+
+            if (prepare(msg.transactionID)) {
+                onDecisionResponse(new DSSDecisionResponse(msg.transactionID, DSSDecision.COMMIT, clock.now()));
+            } else {
+                onDecisionResponse(new DSSDecisionResponse(msg.transactionID, DSSDecision.ABORT));
+            }
+            Log.log(LogLevel.INFO, this.id, "One-phase commit: {}", decision.get(msg.transactionID));
+        }
+
+        // also the answer to a request sent again by the coordinator
+        DSSDecisionResponse response = decisionResponse(msg.transactionID);
+        whenDurable(() -> send(coordinator, response));
+    }
+
     private void onDecisionResponse(DSSDecisionResponse msg) {
         if (msg.decision == null) {
             throw new RuntimeException(id + ": received empty DSSDecisionResponse from " + msg.transactionID);
         }
 
-        if (timeouts.get(msg.transactionID) != null) {
-            timeouts.get(msg.transactionID).cancel();
+        timeouts.cancel(msg.transactionID);
+        Long voted = votedAt.remove(msg.transactionID);
+        if (voted != null) {
+            observeRoundTrip(decisionRoundTrips, coordinators.get(msg.transactionID), voted);
         }
 
         PrivateWorkspace privateWorkspace = this.privateWorkspaces.get(msg.transactionID);
 
         if (privateWorkspace != null) {
-            synchronized (System.out) {
-                Log.partialLog(true, LogLevel.DEBUG, id, "Touched in tID " + msg.transactionID + ": [");
-                privateWorkspace.forEach((k, v) -> {
-                    Log.partialLog(false, LogLevel.DEBUG, id, "" + k + ", ");//+  ": " + v.getValue() + "], ");
-                });
-                Log.partialLog(false, LogLevel.DEBUG, id, "]\n");
-            }
+            Log.log(LogLevel.DEBUG, id, () -> "Touched in tID " + TransactionID.toString(msg.transactionID)
+                    + ": " + privateWorkspace.keySet());
 
-            switch (msg.decision) {
-                case COMMIT:
-                    privateWorkspace.forEach((key, value) -> {
-                        this.items.get(key).setValue(value.getValue(), getSelf());
-                        this.items.get(key).setVersion(value.getVersion(), getSelf());
-                    });
-                case ABORT:
-                    List<DataItem> dataItems = this.lockedItems.get(msg.transactionID);
-                    if (dataItems != null) {
-                        dataItems.forEach(DataItem::releaseLock);
-                    }
-                    this.lockedItems.remove(msg.transactionID);
-                    break;
-            }
+            // no need to wait for the fsync: a decision lost in a crash is simply asked again
+            logRecord(LogRecord.decision(msg.transactionID, msg.commitTimestamp, msg.decision));
 
+            clock.observe(msg.commitTimestamp);
+            applyDecision(msg.transactionID, msg.decision, msg.commitTimestamp, privateWorkspace);
             this.privateWorkspaces.remove(msg.transactionID);
         } else {
             // Not my business, let's continue
         }
 
-        this.coordinators.remove(msg.transactionID);
+        this.participants.remove(msg.transactionID);
+        this.prepareTimestamps.remove(msg.transactionID);
         //this.alreadyTimedOut.remove(msg.transactionID);
-        fixDecision(msg.transactionID, msg.decision);
+        fixDecision(msg.transactionID, msg.decision, msg.commitTimestamp);
+        tryFinishMigration();
+    }
+
+    // A decision coming from the coordinator: once it is durable here the coordinator is told, so that it
+    // can stop sending it; and since the coordinator has it, I do not need to keep it any more.
+    private void onDSSDecisionResponse(DSSDecisionResponse msg) {
+        onDecisionResponse(msg);
+        if (coordinatorGroup.contains(getSender())) {
+            forget(msg.transactionID);
+            ActorRef coordinator = getSender();
+            whenDurable(() -> send(coordinator, new DSSDecisionAck(msg.transactionID)));
+        }
+    }
+
+    // the coordinator has the outcome of a transaction I decided on my own
+    private void onDSSDecisionAck(DSSDecisionAck msg) {
+        forget(msg.transactionID);
     }
 
+    // The decisions I took, or learned from the other participants, are kept until the coordinator is known
+    // to have them: it is the one everybody else asks. Logged, so that a replay or a backup forgets them too.
+    private void forget(long transactionID) {
+        if (decision.containsKey(transactionID)) {
+            logRecord(LogRecord.forget(transactionID));
+            retire(transactionID);
+        }
+    }
+
+    @Override
+    protected void retire(long transactionID) {
+        votes.remove(transactionID);
+        coordinators.remove(transactionID);
+        participants.remove(transactionID);
+        prepareTimestamps.remove(transactionID);
+        votedAt.remove(transactionID);
+        super.retire(transactionID);
+    }
+
+    private void applyDecision(long transactionID, DSSDecision d, long commitTimestamp,
+                               PrivateWorkspace privateWorkspace) {
+        if (d == DSSDecision.COMMIT) {
+            concurrencyControl.commit(privateWorkspace, commitTimestamp);
+            forwardCommit(privateWorkspace);
+        }
+        concurrencyControl.release(transactionID).forEach(this::unblock);
+    }
 
     private void onDSSVoteResponse(DSSVoteResponse msg) {
         if (msg.vote.equals(DSSVote.NO))
@@ -237,32 +706,51 @@ public class DSS extends AbstractNode {
     }
 
     public void onRequestSummary(RequestSummaryMsg msg) {
-        int sum = 0;
-        for (DataItem d : items.values()) {
-            sum += d.getValue();
+        if (role != Role.PRIMARY) {
+            return; // the primary answers for the partition
+        }
+        long sum = concurrencyControl.sum();
+
+        Log.log(LogLevel.BASIC, this.id, "Sum: {}", sum);
+        if (!getSender().equals(getContext().getSystem().deadLetters())) {
+            getSender().tell(new SummaryMsg(partition, sum), getSelf());
         }
+    }
 
-        Log.log(LogLevel.BASIC, this.id, "Sum: " + sum);
+    // a crash from the scenario being run: the records not flushed yet are lost
+    private void onCrash(CrashMsg msg) {
+        if (isMigrating()) {
+            Log.log(LogLevel.BASIC, this.id, "Migrating, not crashing");
+            return;
+        }
+        crash(msg.duration);
     }
 
     @Override
-    protected void onTimeout(Timeout msg) {
-        timeouts.remove(msg.transactionID);
+    protected void onTimeout(long transactionID) {
+        if (role != Role.PRIMARY) {
+            return; // transactions are the primary's business
+        }
+        ActorRef coordinator = coordinators.get(transactionID);
+        if (votedAt.remove(transactionID) != null && coordinator != null) {
+            backOff(decisionRoundTrips, List.of(coordinator));
+        }
         // we assume that vote request arrives sooner or later so no forced abort
 
 
-        if (votes.get(msg.transactionID) == null) {
+        if (votes.get(transactionID) == null) {
             // Unilateral abort
-            this.getSelf().tell(new DSSDecisionResponse(msg.transactionID, DSSDecision.ABORT), getSelf());
-            votes.put(msg.transactionID, DSSVote.NO);
+            this.getSelf().tell(new DSSDecisionResponse(transactionID, DSSDecision.ABORT), getSelf());
+            recordVote(transactionID, DSSVote.NO);
+            Metrics.abort(AbortReason.VOTE_TIMEOUT);
             Log.log(LogLevel.BASIC, this.id, "Timeout. Haven't voted. Unilaterally aborting");
             return;
         }
 
-        if (!hasDecided(msg.transactionID)) {
-            if (votes.get(msg.transactionID) == DSSVote.YES) {
+        if (!hasDecided(transactionID)) {
+            if (votes.get(transactionID) == DSSVote.YES) {
                 Log.log(LogLevel.BASIC, this.id, "Timeout. Asking around for the decision (vote = yes).");
-                multicast(new DSSDecisionRequest(msg.transactionID));
+                multicast(new DSSDecisionRequest(transactionID));
 
                 // If nobody responds to the timeout (e.g. if the coordinator crashed when everyone was in ready
                 // state and someone received a voteRequest, then the transaction will be aborted
@@ -274,38 +762,104 @@ public class DSS extends AbstractNode {
 
     @Override
     protected void onRecovery(Recovery msg) {
-        getContext().become(createReceive());
+        resume();
+        replayLog();
+        scheduleToSelf(new ReplicaTick(), REPLICA_TICK);
+
+        if (role == Role.BACKUP) {
+            // what I missed meanwhile comes with the whole state
+            appliedSeq = BackupTracker.NOTHING;
+            syncRequestedAt = 0;
+            requestSync();
+            return;
+        }
 
-        for (String transactionID : privateWorkspaces.keySet()) {
+        for (long transactionID : privateWorkspaces.keys()) {
             if (votes.get(transactionID) == null) {
                 Log.log(LogLevel.BASIC, this.id, "Recovery. Haven't even voted, I will abort.");
-                this.getSelf().tell(new DSSDecisionResponse(transactionID, DSSDecision.ABORT), getSelf());
-                votes.put(transactionID, DSSVote.NO);
+                Metrics.abort(AbortReason.DSS_RECOVERY);
+                recordVote(transactionID, DSSVote.NO);
+                onDecisionResponse(new DSSDecisionResponse(transactionID, DSSDecision.ABORT));
             }
+        }
 
-            if (!hasDecided(transactionID)) {
-                Log.log(LogLevel.BASIC, this.id, "Recovery. Asking the coordinator for tID + " + transactionID);
-                delay(r.nextInt(MAX_DELAY));
-                coordinators.get(transactionID).tell(new DSSDecisionRequest(transactionID), getSelf());
-                setTimeout(transactionID, DECISION_TIMEOUT);
-            } else {
-                // Do nothing, I have already decided
+        // a backup may have taken over meanwhile: ask every replica before serving again
+        role = Role.RECOVERING;
+        recoveryAnswers.clear();
+        syncRequestedAt = System.currentTimeMillis();
+        backups.backups().forEach(replica -> send(replica, new ReplicaSyncRequest(view)));
+    }
+
+    // the in-doubt transactions wait for a decision I may have missed
+    private void askInDoubt() {
+        votes.forEach((transactionID, vote) -> {
+            if (vote == DSSVote.YES && !hasDecided(transactionID)) {
+                Log.log(LogLevel.BASIC, this.id,
+                        () -> "Asking the coordinator for tID " + TransactionID.toString(transactionID));
+                votedAt.remove(transactionID);
+                send(coordinators.get(transactionID), new DSSDecisionRequest(transactionID));
+                setTimeout(transactionID, timeoutOf(decisionRoundTrips, coordinators.get(transactionID), DECISION_TIMEOUT));
+            }
+        });
+        // and the coordinators may have missed the outcomes I sent them
+        decision.forEach((transactionID, d) -> {
+            if (coordinators.get(transactionID) != null) {
+                send(coordinators.get(transactionID), decisionResponse(transactionID));
+            }
+        });
+    }
+
+    @Override
+    protected void crash(int crashTime) {
+        super.crash(crashTime);
+
+        // whatever did not reach the disk is lost, together with the replies waiting for it
+        writeAheadLog.discardPending();
+        awaitingDurability.clear();
+        flushScheduled = false;
+        // and so is what I knew of the backups: they will ask for the whole state again
+        unshipped.clear();
+        backups.clear();
+        holdingReplies = false;
+        lastInSync = List.of();
+        electing = NO_VIEW;
+        promises.clear();
+
+        // and so is all the state the log is able to rebuild; workspaces of transactions
+        // that have not voted yet are kept, so that recovery can still abort them
+        votes.forEach((transactionID, vote) -> privateWorkspaces.remove(transactionID));
+        for (long transactionID : coordinators.keys()) {
+            if (!privateWorkspaces.containsKey(transactionID)) {
+                coordinators.remove(transactionID);
             }
         }
+        participants.clear();
+        votes.clear();
+        prepareTimestamps.clear();
+        votedAt.clear();
+        decision.clear();
+        commitTimestamps.clear();
+        retired.clear();
+        blocked.clear();
+        awaitingMigration.clear();
+        concurrencyControl.reset();
     }
 
+    // the other participants of the transaction, and its coordinator
     @Override
     protected void multicast(DSSMessage m) {
-        for (ActorRef p : dataStores) {
-            p.tell(m, getSelf());
+        for (ActorRef p : participants.getOrDefault(m.transactionID, List.of())) {
+            if (p != getSelf()) {
+                send(p, m, 0);
+            }
         }
-        coordinators.get(m.transactionID).tell(m, getSelf());
+        send(coordinators.get(m.transactionID), m, 0);
     }
 
     @Override
     protected void multicastAndCrash(DSSMessage m) {
-        for (ActorRef p : dataStores) {
-            p.tell(m, getSelf());
+        for (ActorRef p : participants.getOrDefault(m.transactionID, List.of())) {
+            send(p, m, 0);
             break;
         }
         crash(CRASH_TIME);
@@ -313,45 +867,785 @@ public class DSS extends AbstractNode {
     }
 
     private void checkConsistency(DSSMessage msg) {
-        PrivateWorkspace currentPrivateWorkspace =
-                this.privateWorkspaces.getOrDefault(msg.transactionID, new PrivateWorkspace());
-        boolean commit = true;
-        List<DataItem> locked = new ArrayList<>();
+        if (!prepare(msg.transactionID)) {
+            this.getSelf().tell(new DSSDecisionResponse(msg.transactionID, DSSDecision.ABORT), getSelf());
+            Log.log(LogLevel.INFO, this.id, "Sending vote NO");
+        } else {
+            Log.log(LogLevel.INFO, this.id, "Sending vote YES");
+        }
+    }
 
-        for (Map.Entry<Integer, DataItem> modifiedEntry : currentPrivateWorkspace.entrySet()) {
-            DataItem originalDataItem = this.items.get(modifiedEntry.getKey());
+    // validate and lock, then log the vote
+    private boolean prepare(long transactionID) {
+        long prepareTimestamp = clock.now();
+        boolean commit = concurrencyControl.prepare(transactionID,
+                this.privateWorkspaces.getOrDefault(transactionID, new PrivateWorkspace()), prepareTimestamp);
 
-            if (originalDataItem.acquireLock(getSelf())) {
-                locked.add(originalDataItem);
-            } else {
-                Log.log(LogLevel.BASIC, this.id, "Failed to acquire lock for item " + modifiedEntry.getKey());
-                commit = false;
+        if (commit) {
+            prepareTimestamps.put(transactionID, prepareTimestamp);
+        } else {
+            Metrics.abort(AbortReason.VALIDATION);
+        }
+        recordVote(transactionID, commit ? DSSVote.YES : DSSVote.NO);
+        return commit;
+    }
+
+    /* -- Migration ---------------------------- */
+
+    // Live migration of a shard, driven by the source:
+    //  1. a copy of the keys goes to the target, and every commit on them made here is forwarded after it;
+    //  2. once the target has the copy, the coordinators switch to a routing table with the keys at the target,
+    //     which transactions beginning after the switch use; the target holds them back until step 3;
+    //  3. once every coordinator has decided its older transactions, and these have left the keys here,
+    //     I drop them, and the target is told to take them over, with their items, until it says they are safe
+    //     on its replicas.
+    // No transaction is aborted: the old ones finish here, the new ones wait for the keys at the target.
+    // Every step reaches my backups before the next one, so a backup taking over goes on from there; the
+    // target, which may lose its copy to a failover, gets the items again in step 3.
+    private void onMigrationStart(MigrationStartMsg msg) {
+        if (outgoing != null || dataStores.get(msg.target) == getSelf()) {
+            Log.log(LogLevel.BASIC, this.id, "Cannot start a migration to DSS {} now", msg.target);
+            return;
+        }
+
+        int[] keys = splitKeys();
+        if (keys.length == 0) {
+            return;
+        }
+        outgoing = new Migration(this.id + "-" + (++migrationCount), keys, msg.target, coordinatorGroup);
+        Log.log(LogLevel.BASIC, this.id, "Migration {}: moving {} keys to DSS {}", outgoing.id, keys.length,
+                msg.target);
+        resyncBackups();
+
+        sendCopy();
+        scheduleToSelf(new MigrationRetry(outgoing.id), MIGRATION_RETRY);
+    }
+
+    // about half of my load: my keys from the most accessed, every other one
+    private int[] splitKeys() {
+        List<Integer> keys = new ArrayList<>();
+        Arrays.stream(concurrencyControl.keys()).forEach(keys::add);
+        keys.sort(Comparator.comparing((Integer key) -> accessCounts.getOrDefault(key, 0)).reversed());
+
+        int[] moved = new int[(keys.size() + 1) / 2];
+        for (int i = 0; i < moved.length; i++) {
+            moved[i] = keys.get(2 * i);
+        }
+        return moved;
+    }
+
+    private void sendCopy() {
+        send(dataStores.get(outgoing.target), new MigrationData(outgoing.id, concurrencyControl.export(outgoing.keys)));
+    }
+
+    private void sendRoutingUpdate(ActorRef coordinator) {
+        send(coordinator, new RoutingUpdate(outgoing.id, outgoing.keys, outgoing.target));
+    }
+
+    private void onMigrationCopied(MigrationCopied msg) {
+        if (outgoing == null || !outgoing.id.equals(msg.migrationID) || outgoing.getPhase() != Migration.Phase.COPYING) {
+            return; // a duplicate
+        }
+        Log.log(LogLevel.BASIC, this.id, "Migration {}: copied, switching the coordinators", outgoing.id);
+        outgoing.switching();
+        resyncBackups();
+        outgoing.getUndrained().forEach(this::sendRoutingUpdate);
+    }
+
+    private void onRoutingDrained(RoutingDrained msg) {
+        if (outgoing == null || !outgoing.id.equals(msg.migrationID)) {
+            return;
+        }
+        outgoing.drained(getSender());
+        tryFinishMigration();
+    }
+
+    // commits made here while the target holds a copy
+    private void forwardCommit(PrivateWorkspace privateWorkspace) {
+        if (outgoing == null) {
+            return;
+        }
+        int[] written = privateWorkspace.entrySet().stream()
+                .filter(e -> e.getValue().isTouched() && outgoing.moves(e.getKey()))
+                .mapToInt(Map.Entry::getKey).toArray();
+        if (written.length > 0) {
+            send(dataStores.get(outgoing.target), new MigrationForward(outgoing.id, concurrencyControl.export(written)));
+        }
+    }
+
+    // the keys can leave once no transaction can come for them and none is still using them
+    private void tryFinishMigration() {
+        if (outgoing == null || outgoing.getPhase() != Migration.Phase.SWITCHING || !outgoing.isSealed()) {
+            return;
+        }
+        for (int key : outgoing.keys) {
+            if (!concurrencyControl.isIdle(key)
+                    || privateWorkspaces.values().stream().anyMatch(workspace -> workspace.containsKey(key))) {
+                return;
+            }
+        }
+
+        MigratedItems items = concurrencyControl.export(outgoing.keys);
+        concurrencyControl.drop(outgoing.keys);
+        outgoing.done(items);
+        Log.log(LogLevel.BASIC, this.id, "Migration {}: {} keys left for DSS {}", outgoing.id, outgoing.keys.length,
+                outgoing.target);
+        // what I hold must survive a crash, and reach the backups, before the target takes the keys over
+        checkpoint();
+        resyncBackups();
+        whenDurable(this::sendDone);
+    }
+
+    private void sendDone() {
+        if (outgoing != null && outgoing.getPhase() == Migration.Phase.DONE) {
+            send(dataStores.get(outgoing.target), new MigrationDone(outgoing.id, outgoing.getItems()));
+        }
+    }
+
+    private void onMigrationAdopted(MigrationAdopted msg) {
+        if (outgoing == null || !outgoing.id.equals(msg.migrationID) || outgoing.getPhase() != Migration.Phase.DONE) {
+            return; // a duplicate
+        }
+        Log.log(LogLevel.BASIC, this.id, "Migration {}: {} keys handed over to DSS {}", outgoing.id,
+                outgoing.keys.length, outgoing.target);
+        outgoing = null;
+        resyncBackups();
+    }
+
+    // the primary of my partition goes on with the migration
+    private void onMigrationRetry(MigrationRetry msg) {
+        if (role != Role.PRIMARY || outgoing == null || !outgoing.id.equals(msg.migrationID)) {
+            return;
+        }
+        switch (outgoing.getPhase()) {
+            case COPYING:
+                sendCopy();
+                break;
+            case SWITCHING:
+                outgoing.getUndrained().forEach(this::sendRoutingUpdate);
                 break;
+            case DONE:
+                whenDurable(this::sendDone);
+                break;
+        }
+        scheduleToSelf(new MigrationRetry(outgoing.id), MIGRATION_RETRY);
+    }
+
+    // target: the copy is kept aside, and kept up to date, until the source is done with the keys
+    private void onMigrationData(MigrationData msg) {
+        MigratedItems items = new MigratedItems();
+        items.putAll(msg.items);
+        incoming.put(msg.migrationID, items);
+        send(getSender(), new MigrationCopied(msg.migrationID));
+    }
+
+    private void onMigrationForward(MigrationForward msg) {
+        MigratedItems items = incoming.get(msg.migrationID);
+        if (items != null) {
+            items.putAll(msg.items);
+        }
+    }
+
+    // the source tells me until I answer: the keys I already hold I took over before
+    private void onMigrationDone(MigrationDone msg) {
+        incoming.remove(msg.migrationID);
+        MigratedItems items = new MigratedItems();
+        items.putAll(msg.items);
+        Arrays.stream(items.keys()).filter(concurrencyControl::holds).forEach(items::remove);
+
+        if (items.size() > 0) {
+            concurrencyControl.adopt(items);
+            // my commits must follow the versions I took over
+            clock.observe(items.maxTimestamp());
+            Log.log(LogLevel.BASIC, this.id, "Migration {}: took over {} keys", msg.migrationID, items.size());
+            checkpoint();
+            resyncBackups();
+
+            for (long transactionID : awaitingMigration.toArray()) {
+                unblock(transactionID);
             }
+        }
+        ActorRef source = getSender();
+        whenDurable(() -> send(source, new MigrationAdopted(msg.migrationID)));
+    }
 
-            if (!originalDataItem.getVersion().equals(modifiedEntry.getValue().getVersion() - 1) &&
-                    !(originalDataItem.getVersion().equals(modifiedEntry.getValue().getVersion()) &&
-                            originalDataItem.getValue().equals(modifiedEntry.getValue().getValue()))) {
-                Log.log(LogLevel.BASIC, this.id, "Mismatching versions or data for item " + modifiedEntry.getKey());
-                commit = false;
+    private void onMigrationWaitTimeout(MigrationWaitTimeout msg) {
+        if (awaitingMigration.remove(msg.transactionID)) {
+            Log.log(LogLevel.BASIC, this.id, () -> "Waited too long for a migrating key, aborting tID "
+                    + TransactionID.toString(msg.transactionID));
+            abort(msg.transactionID, AbortReason.MIGRATION_WAIT);
+        }
+    }
+
+    private boolean isIncoming(int key) {
+        return incoming.values().stream().anyMatch(items -> items.containsKey(key));
+    }
+
+    private boolean isMigrating() {
+        return outgoing != null || !incoming.isEmpty();
+    }
+
+    private void scheduleToSelf(Object msg, int delay) {
+        getContext().system().scheduler().scheduleOnce(
+                Duration.create(delay, TimeUnit.MILLISECONDS),
+                getSelf(),
+                msg, // message sent to myself
+                getContext().system().dispatcher(), getSelf()
+        );
+    }
+
+    /* -- Replication -------------------------- */
+
+    // Every partition has a primary, which serves it, and backups, which get every record of its log
+    // and take over if it stops sending heartbeats.
+    //  - a reply leaves the primary only once WRITE_QUORUM replicas have the records it depends on: with fewer
+    //    backups in sync than that, the replies wait; a reply also waits until a quorum of the backups has
+    //    acknowledged a message sent after it, so a primary that has been replaced cannot answer anymore;
+    //  - a backup that misses records, or a new backup, gets the whole state, and is in sync from then on;
+    //  - after FAILOVER_TIMEOUT of silence (twice as much for the second backup in sync, and so on) a backup in
+    //    sync runs for primary in a newer view, whose number no other backup would pick. The others promise to
+    //    acknowledge nothing of an older view from then on, and tell how far they got: with promises from enough
+    //    of them to be sure that one has every record a quorum acknowledged, and none further than itself, it
+    //    takes over; if one got further, that one runs instead. The old primary, which gets no acknowledgement
+    //    from whoever promised, cannot answer anymore by then;
+    //  - a primary back from a crash asks every other replica before serving again: if one of them took over,
+    //    it becomes one of its backups.
+    private void onReplicaTick(ReplicaTick msg) {
+        long now = System.currentTimeMillis();
+        switch (role) {
+            case PRIMARY:
+                List<ActorRef> dropped = backups.dropLagging(now, REPLICA_TIMEOUT);
+                if (!dropped.isEmpty()) {
+                    Log.log(LogLevel.BASIC, this.id, "Dropped {} backups out of sync", dropped.size());
+                    releaseReplies();
+                }
+                int inSync = backups.inSync().size();
+                if ((inSync < backupQuorum) != holdingReplies) {
+                    holdingReplies = !holdingReplies;
+                    Log.log(LogLevel.BASIC, this.id, holdingReplies
+                            ? "{} backups in sync, {} needed: holding the replies"
+                            : "{} backups in sync, {} needed: releasing the replies", inSync, backupQuorum);
+                }
+                heartbeat();
+                break;
+            case BACKUP:
+                int rank = lastInSync.indexOf(getSelf());
+                boolean eligible = appliedSeq != BackupTracker.NOTHING && rank >= 0;
+                if (electing != NO_VIEW) {
+                    if (now - electionStartedAt > FAILOVER_TIMEOUT) {
+                        Log.log(LogLevel.BASIC, this.id, "Too few promises to take over in view {}", electing);
+                        standDown(now);
+                    }
+                } else if (eligible && now - lastHeartbeat > (long) FAILOVER_TIMEOUT * (rank + 1)) {
+                    runForPrimary(promised, now);
+                } else if (!eligible && promised == view) {
+                    requestSync();
+                }
                 break;
+            case RECOVERING:
+                if (recoveryAnswers.containsAll(backups.backups())) {
+                    Log.log(LogLevel.BASIC, this.id, "Still the primary of partition {} in view {}", partition, view);
+                    role = Role.PRIMARY;
+                    askInDoubt();
+                    heartbeat();
+                } else if (now - syncRequestedAt > REPLICA_TIMEOUT) {
+                    syncRequestedAt = now;
+                    backups.backups().stream().filter(replica -> !recoveryAnswers.contains(replica))
+                            .forEach(replica -> send(replica, new ReplicaSyncRequest(view)));
+                }
+                break;
+        }
+        scheduleToSelf(new ReplicaTick(), REPLICA_TICK);
+    }
+
+    // in a view numbered after the given one, and that only I can pick
+    private void runForPrimary(int after, long now) {
+        List<ActorRef> group = replicaGroups.get(partition);
+        electing = (after / group.size() + 1) * group.size() + group.indexOf(getSelf());
+        electionStartedAt = now;
+        promises.clear();
+        Log.log(LogLevel.BASIC, this.id, "Primary of partition {} silent, running for view {}", partition, electing);
+
+        ReplicaCandidate candidacy = new ReplicaCandidate(electing, view, appliedSeq);
+        group.stream().filter(replica -> replica != getSelf()).forEach(replica -> send(replica, candidacy));
+        onPromise(getSelf(), new ReplicaPromise(electing, view, appliedSeq));
+    }
+
+    // and wait for the primary as long again before running
+    private void standDown(long now) {
+        electing = NO_VIEW;
+        promises.clear();
+        lastHeartbeat = now;
+    }
+
+    private void onReplicaCandidate(ReplicaCandidate msg) {
+        if (isStale(msg) || role != Role.BACKUP || msg.view < promised || msg.view < electing) {
+            return; // the primary takes no part, and a promise for a newer view stands
+        }
+        long now = System.currentTimeMillis();
+        if (isFurther(view, appliedSeq, msg.lastView, msg.seq)
+                && appliedSeq != BackupTracker.NOTHING && lastInSync.contains(getSelf())) {
+            // the candidate would stand down on my promise anyway
+            runForPrimary(msg.view, now);
+            return;
+        }
+        if (electing != NO_VIEW) {
+            standDown(now);
+        }
+        promised = msg.view;
+        send(getSender(), new ReplicaPromise(msg.view, view, appliedSeq));
+    }
+
+    private void onReplicaPromise(ReplicaPromise msg) {
+        if (role == Role.BACKUP && msg.view == electing) {
+            onPromise(getSender(), msg);
+        }
+    }
+
+    private void onPromise(ActorRef replica, ReplicaPromise promise) {
+        if (isFurther(promise.lastView, promise.seq, view, appliedSeq)) {
+            Log.log(LogLevel.BASIC, this.id, "A backup got further, not taking over in view {}", electing);
+            standDown(System.currentTimeMillis());
+            return;
+        }
+        promises.put(replica, promise);
+        if (promises.size() >= BackupTracker.electorate(replicaGroups.get(partition).size() - 1, backupQuorum)) {
+            takeOver();
+        }
+    }
+
+    // whether record seq of the log of view comes after record otherSeq of the log of otherView
+    private static boolean isFurther(int view, long seq, int otherView, long otherSeq) {
+        return view > otherView || (view == otherView && seq > otherSeq);
+    }
+
+    private void heartbeat() {
+        ReplicaHeartbeat heartbeat = new ReplicaHeartbeat(view, backups.nextRound(System.currentTimeMillis()),
+                backups.inSync());
+        backups.backups().forEach(backup -> send(backup, heartbeat));
+    }
+
+    private void takeOver() {
+        view = electing;
+        promised = view;
+        electing = NO_VIEW;
+        promises.clear();
+        role = Role.PRIMARY;
+        primary = getSelf();
+        viewStart = clock.now();
+        backups.clear();
+        Log.log(LogLevel.BASIC, this.id, "Promised by enough backups, taking over partition {} in view {}", partition, view);
+
+        dataStores.set(partition, getSelf());
+        primaryViews[partition] = view;
+        ReplicaView announcement = new ReplicaView(view, partition, getSelf());
+        coordinatorGroup.forEach(coordinator -> send(coordinator, announcement));
+        replicaGroups.forEach(group -> group.stream().filter(replica -> replica != getSelf())
+                .forEach(replica -> send(replica, announcement)));
+
+        checkpoint();
+        askInDoubt();
+        heartbeat();
+        if (outgoing != null) {
+            scheduleToSelf(new MigrationRetry(outgoing.id), MIGRATION_RETRY);
+        }
+    }
+
+    private void requestSync() {
+        long now = System.currentTimeMillis();
+        if (primary == getSelf() || now - syncRequestedAt < REPLICA_TIMEOUT) {
+            return;
+        }
+        syncRequestedAt = now;
+        send(primary, new ReplicaSyncRequest(view));
+    }
+
+    // a message of an older view: its sender is told about the current one
+    private boolean isStale(ReplicationMessage msg) {
+        if (msg.view < view) {
+            send(getSender(), new ReplicaView(view, partition, primary));
+            return true;
+        }
+        return false;
+    }
+
+    // a message of the primary of a view I promised to leave: it gets nothing from me anymore, and is no
+    // sign of life either
+    private boolean isFenced(ReplicationMessage msg) {
+        return msg.view < promised || msg.view < electing;
+    }
+
+    // whoever is the primary of a newer view, I am one of its backups, and lack its state
+    private void observeView(int newView, ActorRef newPrimary) {
+        if (newView <= view) {
+            return;
+        }
+        if (role != Role.BACKUP) {
+            Log.log(LogLevel.BASIC, this.id, "Replaced as primary of partition {} in view {}", partition, newView);
+            awaitingDurability.clear();
+            unshipped.clear();
+            backups.clear();
+            holdingReplies = false;
+        }
+        promised = Math.max(promised, newView);
+        if (electing != NO_VIEW && electing <= newView) {
+            electing = NO_VIEW;
+            promises.clear();
+        }
+        view = newView;
+        primary = newPrimary;
+        role = Role.BACKUP;
+        dataStores.set(partition, newPrimary);
+        primaryViews[partition] = newView;
+
+        appliedSeq = BackupTracker.NOTHING;
+        lastInSync = List.of();
+        syncRequestedAt = 0;
+        requestSync();
+    }
+
+    private void onReplicaHeartbeat(ReplicaHeartbeat msg) {
+        if (isStale(msg)) {
+            return;
+        }
+        observeView(msg.view, getSender());
+        if (role != Role.BACKUP || isFenced(msg)) {
+            return;
+        }
+        lastHeartbeat = System.currentTimeMillis();
+        lastInSync = msg.inSync;
+        if (!msg.inSync.contains(getSelf())) {
+            appliedSeq = BackupTracker.NOTHING; // dropped: the records I have may not be the primary's anymore
+            requestSync();
+        } else if (appliedSeq != BackupTracker.NOTHING) {
+            send(getSender(), new ReplicaAck(view, appliedSeq, msg.round));
+        }
+    }
+
+    private void onReplicaAppend(ReplicaAppend msg) {
+        if (isStale(msg)) {
+            return;
+        }
+        observeView(msg.view, getSender());
+        if (role != Role.BACKUP || isFenced(msg)) {
+            return;
+        }
+        lastHeartbeat = System.currentTimeMillis();
+        if (appliedSeq == BackupTracker.NOTHING || msg.firstSeq > appliedSeq + 1) {
+            requestSync(); // records are missing
+            return;
+        }
+
+        List<LogRecord> records = LogRecord.decode(msg.records);
+        for (int i = 0; i < records.size(); i++) {
+            if (msg.firstSeq + i <= appliedSeq) {
+                continue; // already part of the state I got
             }
+            writeAheadLog.append(records.get(i));
+            applyLogRecord(records.get(i));
+            appliedSeq = msg.firstSeq + i;
         }
+        flushLog();
+        send(getSender(), new ReplicaAck(view, appliedSeq, msg.round));
+    }
 
-        this.lockedItems.put(msg.transactionID, locked);
+    private void onReplicaAck(ReplicaAck msg) {
+        if (role != Role.PRIMARY || msg.view != view) {
+            return;
+        }
+        backups.ack(getSender(), msg.seq, msg.round, System.currentTimeMillis());
+        releaseReplies();
+    }
 
-        if (!commit) {
-            this.getSelf().tell(new DSSDecisionResponse(msg.transactionID, DSSDecision.ABORT), getSelf());
-            votes.put(msg.transactionID, DSSVote.NO);
-            Log.log(LogLevel.INFO, this.id, "Sending vote NO");
+    // the primary sends the whole state; anybody else tells what it knows of the current view
+    private void onReplicaSyncRequest(ReplicaSyncRequest msg) {
+        if (role != Role.PRIMARY || msg.view > view) {
+            if (role == Role.RECOVERING && msg.view <= view) {
+                recoveryAnswers.add(getSender()); // it did not take over
+            }
+            send(getSender(), new ReplicaView(view, partition, primary));
+            return;
+        }
+
+        Log.log(LogLevel.DEBUG, this.id, "Sending the whole state to a backup");
+        backups.add(getSender(), System.currentTimeMillis());
+        send(getSender(), new ReplicaSync(view, backups.round(), logSeq,
+                concurrencyControl.export(concurrencyControl.keys()), LogRecord.encode(stateRecords()),
+                outgoing == null ? null : new Migration(outgoing)));
+    }
+
+    // what the primary sent replaces all I had
+    private void onReplicaSync(ReplicaSync msg) {
+        if (isStale(msg)) {
+            return;
+        }
+        observeView(msg.view, getSender());
+        if (role != Role.BACKUP || isFenced(msg)) {
+            return;
+        }
+
+        timeouts.clear();
+        privateWorkspaces.clear();
+        coordinators.clear();
+        participants.clear();
+        votes.clear();
+        prepareTimestamps.clear();
+        votedAt.clear();
+        decision.clear();
+        commitTimestamps.clear();
+        retired.clear();
+        blocked.clear();
+        awaitingMigration.clear();
+        incoming.clear();
+        outgoing = msg.outgoing;
+
+        concurrencyControl.reset();
+        concurrencyControl.drop(concurrencyControl.keys());
+        concurrencyControl.adopt(msg.items);
+        clock.observe(msg.items.maxTimestamp());
+        LogRecord.decode(msg.state).forEach(this::applyLogRecord);
+        checkpoint();
+
+        appliedSeq = msg.seq;
+        lastHeartbeat = System.currentTimeMillis();
+        Log.log(LogLevel.BASIC, this.id, "In sync with the primary of partition {} in view {}", partition, view);
+        send(getSender(), new ReplicaAck(view, appliedSeq, msg.round));
+    }
+
+    private void onReplicaView(ReplicaView msg) {
+        if (msg.partition != partition) {
+            if (msg.view > primaryViews[msg.partition]) {
+                primaryViews[msg.partition] = msg.view;
+                dataStores.set(msg.partition, msg.primary);
+            }
+            return;
+        }
+
+        if (isStale(msg)) {
+            return;
+        }
+        if (msg.primary != getSelf()) {
+            observeView(msg.view, msg.primary);
+        }
+        if (role == Role.RECOVERING) {
+            recoveryAnswers.add(getSender());
+        }
+    }
+
+    // after keys migrated in or out, the backups need the whole state; it is numbered after every record sent
+    // so far, so that no backup without it looks as far as one with it to a candidate
+    private void resyncBackups() {
+        flushLog();
+        logSeq++;
+        flushedSeq = logSeq;
+        backups.clear();
+        releaseReplies();
+        heartbeat();
+    }
+
+    /* -- Write-ahead log ---------------------- */
+
+    private void recordVote(long transactionID, DSSVote vote) {
+        votes.put(transactionID, vote);
+
+        logRecord(LogRecord.vote(transactionID, prepareTimestamps.getOrDefault(transactionID, 0L),
+                vote, coordinatorPath(transactionID),
+                participantPaths(transactionID), vote == DSSVote.YES ? privateWorkspaces.get(transactionID) : null));
+    }
+
+    // appended to my log, and shipped to the backups at the next flush
+    private void logRecord(LogRecord record) {
+        writeAheadLog.append(record);
+        unshipped.add(record);
+        logSeq++;
+        scheduleFlush();
+    }
+
+    private String coordinatorPath(long transactionID) {
+        ActorRef coordinator = coordinators.get(transactionID);
+        return coordinator == null ? null : coordinator.path().toSerializationFormat();
+    }
+
+    private List<String> participantPaths(long transactionID) {
+        List<String> paths = new ArrayList<>();
+        participants.getOrDefault(transactionID, List.of())
+                .forEach(participant -> paths.add(participant.path().toSerializationFormat()));
+        return paths;
+    }
+
+    // group commit: fsync when the batch is full, or when the oldest pending record has waited long enough;
+    // a reply waiting for a round without any record to wait for waits as long, for the rounds of more replies
+    private void scheduleFlush() {
+        if (writeAheadLog.pendingRecords() >= GROUP_COMMIT_SIZE) {
+            flushLog();
+        } else if (!flushScheduled && (writeAheadLog.pendingRecords() > 0 || awaitsRound())) {
+            flushScheduled = true;
+            getContext().system().scheduler().scheduleOnce(
+                    Duration.create(GROUP_COMMIT_DELAY, TimeUnit.MILLISECONDS),
+                    getSelf(),
+                    new WALFlush(), // message sent to myself
+                    getContext().system().dispatcher(), getSelf()
+            );
+        }
+    }
+
+    private void whenDurable(Runnable reply) {
+        long round = backups.round() + 1;
+        if (logSeq <= durableSeq() && round <= backups.confirmed(backupQuorum)) {
+            reply.run();
         } else {
-            votes.put(msg.transactionID, DSSVote.YES);
-            Log.log(LogLevel.INFO, this.id, "Sending vote YES");
+            awaitingDurability.add(new AwaitingReply(logSeq, round, reply));
+            scheduleFlush();
+        }
+    }
+
+    private long durableSeq() {
+        return Math.min(flushedSeq, backups.durable(backupQuorum));
+    }
+
+    // the replies are in the order of their records and of their rounds
+    private void releaseReplies() {
+        long durable = durableSeq();
+        long confirmed = backups.confirmed(backupQuorum);
+        while (!awaitingDurability.isEmpty() && awaitingDurability.peekFirst().seq <= durable
+                && awaitingDurability.peekFirst().round <= confirmed) {
+            awaitingDurability.pollFirst().reply.run();
+        }
+    }
+
+    // a reply waiting for a round that has not been sent yet
+    private boolean awaitsRound() {
+        return !awaitingDurability.isEmpty() && awaitingDurability.peekLast().round > backups.round();
+    }
+
+    private void onWALFlush(WALFlush msg) {
+        flushScheduled = false;
+        flushLog();
+    }
+
+    private void flushLog() {
+        flushRecords();
+        if (writeAheadLog.recordsSinceCheckpoint() >= CHECKPOINT_INTERVAL) {
+            writeCheckpoint();
         }
     }
 
-    private boolean hasVoted(String tID) {
+    private void flushRecords() {
+        int flushed = writeAheadLog.flush();
+        if (flushed > 0) {
+            Log.log(LogLevel.DEBUG, this.id, "Group commit of {} log records", flushed);
+        }
+
+        flushedSeq = logSeq;
+        shipLog();
+        releaseReplies();
+    }
+
+    // the records of a group commit go to every backup in sync in a single message, which also makes the round
+    // the replies wait for; without records a heartbeat does
+    private void shipLog() {
+        List<ActorRef> inSync = backups.inSync();
+        if (role == Role.PRIMARY && !unshipped.isEmpty() && !inSync.isEmpty()) {
+            ReplicaAppend append = new ReplicaAppend(view, backups.nextRound(System.currentTimeMillis()),
+                    logSeq - unshipped.size() + 1, LogRecord.encode(unshipped));
+            inSync.forEach(backup -> send(backup, append));
+        } else if (role == Role.PRIMARY && awaitsRound()) {
+            heartbeat();
+        }
+        unshipped.clear();
+    }
+
+    // the records appended so far are flushed first: the checkpoint replaces the segments holding them
+    private void checkpoint() {
+        flushRecords();
+        writeCheckpoint();
+    }
+
+    private void writeCheckpoint() {
+        List<LogRecord> state = stateRecords();
+        writeAheadLog.checkpoint(concurrencyControl, state);
+        Log.log(LogLevel.DEBUG, this.id, "Checkpoint of {} records", state.size());
+    }
+
+    // The state is what a replay of the whole log would rebuild: every vote and decision not forgotten yet, and
+    // the workspace of the in-doubt transactions, whose items are re-locked when the records are applied.
+    private List<LogRecord> stateRecords() {
+        List<LogRecord> state = new ArrayList<>();
+        votes.forEach((transactionID, vote) -> {
+            boolean inDoubt = vote == DSSVote.YES && !hasDecided(transactionID);
+            state.add(LogRecord.vote(transactionID, prepareTimestamps.getOrDefault(transactionID, 0L),
+                    vote, coordinatorPath(transactionID),
+                    inDoubt ? participantPaths(transactionID) : null,
+                    inDoubt ? privateWorkspaces.get(transactionID) : null));
+        });
+        decision.forEach((transactionID, d) -> state.add(LogRecord.decision(transactionID,
+                commitTimestamps.getOrDefault(transactionID, 0L), d)));
+        return state;
+    }
+
+    // rebuild items, votes and decisions (and re-lock the items of in-doubt transactions)
+    // from the latest checkpoint and the log tail that follows it
+    private void replayLog() {
+        List<LogRecord> records = writeAheadLog.replay(concurrencyControl);
+        records.forEach(this::applyLogRecord);
+        Log.log(LogLevel.BASIC, this.id, "Recovery. Replayed {} log records", records.size());
+    }
+
+    // a record of my log, or of the primary's
+    private void applyLogRecord(LogRecord record) {
+        clock.observe(record.timestamp);
+        switch (record.type) {
+            case VOTE:
+                votes.put(record.transactionID, record.vote);
+                if (!record.coordinatorPath.isEmpty()) {
+                    coordinators.put(record.transactionID, resolve(record.coordinatorPath));
+                }
+                if (record.vote == DSSVote.YES) {
+                    privateWorkspaces.put(record.transactionID, record.workspace);
+                    List<ActorRef> recordParticipants = new ArrayList<>();
+                    record.participantPaths.forEach(path -> recordParticipants.add(resolve(path)));
+                    participants.put(record.transactionID, recordParticipants);
+
+                    prepareTimestamps.put(record.transactionID, record.timestamp);
+                    concurrencyControl.relock(record.transactionID, record.workspace, record.timestamp);
+                }
+                break;
+            case DECISION:
+                decision.put(record.transactionID, record.decision);
+                if (record.decision == DSSDecision.COMMIT) {
+                    commitTimestamps.put(record.transactionID, record.timestamp);
+                }
+                PrivateWorkspace privateWorkspace = privateWorkspaces.remove(record.transactionID);
+                if (privateWorkspace != null) {
+                    applyDecision(record.transactionID, record.decision, record.timestamp, privateWorkspace);
+                }
+                participants.remove(record.transactionID);
+                prepareTimestamps.remove(record.transactionID);
+                break;
+            case FORGET:
+                retire(record.transactionID);
+                break;
+        }
+    }
+
+    private ActorRef resolve(String path) {
+        return ((ExtendedActorSystem) getContext().system()).provider().resolveActorRef(path);
+    }
+
+    private boolean hasVoted(long tID) {
         return this.votes.get(tID) != null;
 
     }
+
+    private static class AwaitingReply {
+        final long seq;
+        final long round;
+        final Runnable reply;
+
+        AwaitingReply(long seq, long round, Runnable reply) {
+            this.seq = seq;
+            this.round = round;
+            this.reply = reply;
+        }
+    }
 }
\ No newline at end of file
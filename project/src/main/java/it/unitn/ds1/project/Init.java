@@ -1,23 +1,28 @@
 package it.unitn.ds1.project;
 
-import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import it.unitn.ds1.common.Log;
 import it.unitn.ds1.common.LogLevel;
-import it.unitn.ds1.project.message.ClientWelcomeMsg;
-import it.unitn.ds1.project.message.CoordinatorWelcomeMsg;
-import it.unitn.ds1.project.message.DSSWelcomeMsg;
-import it.unitn.ds1.project.message.dss.RequestSummaryMsg;
+import it.unitn.ds1.project.concurrency.ConcurrencyControl;
+import it.unitn.ds1.project.concurrency.TwoPhaseLocking;
+import it.unitn.ds1.project.metrics.Metrics;
+import it.unitn.ds1.project.partition.Partitioner;
+import it.unitn.ds1.project.workload.KeyChooser;
+import it.unitn.ds1.project.workload.Workload;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Scanner;
 
+// Interactive run of the system. The settings below are the defaults of every run: a scenario file (see Scenario
+// and ScenarioRunner) may change them for its own, in the Config it builds on top of them.
 public class Init {
     final static int N_CLIENTS = 1;
     final static int N_COORDINATORS = 5;
     final static int N_DATASTORE = 10;
-    final static int MAX_KEYSTORE = N_DATASTORE * 10 - 1;
+    final static int KEYS_PER_DSS = 10;     // on average with CONSISTENT_HASH
+
+    final static LogLevel LOG_LEVEL = LogLevel.DEBUG;
+    final static Log.Format LOG_FORMAT = Log.Format.TEXT;
+    final static String LOG_FILE = null;        // stdout if null
 
     final static boolean CRASH_COORDINATOR_AFTER_ONE_VOTE_REQUEST = false;
     final static boolean CRASH_COORDINATOR_AFTER_ALL_VOTE_REQUEST = false;
@@ -27,55 +32,97 @@ public class Init {
 
     final static boolean CRASH_DSS_BEFORE_VOTE_RESPONSE = false;
     final static boolean CRASH_DSS_BEFORE_DECISION_RESPONSE = false;
+    // ID of a DSS crashing after each vote response it sends, -1 for none
+    final static int CRASHING_DSS = 1009;
+
+    // coordinators send vote requests in batches (one message per DSS per VOTE_BATCH_WINDOW)
+    final static boolean BATCH_VOTE_REQUESTS = false;
+
+    // transactions touching a single DSS skip the vote round and commit in one phase
+    final static boolean ONE_PHASE_COMMIT = false;
+
+    // the vote and decision timeouts follow the round trips measured with each peer, rather than
+    // being fixed at AbstractNode.VOTE_TIMEOUT and DECISION_TIMEOUT
+    final static boolean ADAPTIVE_TIMEOUTS = false;
+
+    // how DSSes isolate transactions:
+    //  - OCC: validation of every item at vote time
+    //  - MVCC: a chain of committed versions per key, reads served from the snapshot taken when the
+    //    transaction began; read-only transactions never abort, only write-write conflicts are checked
+    //  - TWO_PHASE_LOCKING: strict 2PL with FIFO wait queues, deadlocks avoided with DEADLOCK_PREVENTION
+    final static ConcurrencyControl.Type CONCURRENCY_CONTROL = ConcurrencyControl.Type.OCC;
+    final static TwoPhaseLocking.DeadlockPrevention DEADLOCK_PREVENTION = TwoPhaseLocking.DeadlockPrevention.WAIT_DIE;
+
+    // how keys are spread over the DSSes:
+    //  - RANGE: DSS i holds the KEYS_PER_DSS keys starting at i * KEYS_PER_DSS
+    //  - CONSISTENT_HASH: a hash ring where DSS i owns VIRTUAL_NODES[i] points; a DSS with more virtual nodes
+    //    gets more keys, so a hot DSS is relieved by lowering its entry (VIRTUAL_NODES_PER_DSS if missing)
+    final static Partitioner.Type PARTITIONER = Partitioner.Type.RANGE;
+    final static int VIRTUAL_NODES_PER_DSS = 64;
+    final static int[] VIRTUAL_NODES = {};
+
+    // SPLIT_AFTER ms after the start (never if 0), DSS SPLIT_SOURCE hands about half of its load over to
+    // DSS SPLIT_TARGET, while transactions keep running
+    final static int SPLIT_AFTER = 0;
+    final static int SPLIT_SOURCE = 0;
+    final static int SPLIT_TARGET = 1;
+
+    // every partition is also kept by N_BACKUPS backup DSSes, which take over if its primary stops answering
+    // and serve the reads of the transactions that accept stale values; backup k of DSS i has ID i + 100 * k
+    // (i + 1000 * k with more than 100 DSSes, and so on)
+    final static int N_BACKUPS = 0;
+    // quorums over the N_BACKUPS + 1 replicas of a partition, with READ_QUORUM + WRITE_QUORUM > N_BACKUPS + 1:
+    //  - a reply of the primary leaves once WRITE_QUORUM replicas (itself included) have its records,
+    //    so a slow backup does not hold it back, and waits while fewer backups are in sync; the backup taking
+    //    over must hear from enough of the others to be sure it has all of them
+    //  - a stale read asks READ_QUORUM replicas, and the value with the highest version wins
+    final static int WRITE_QUORUM = 0;     // 0: all the N_BACKUPS + 1 replicas
+    final static int READ_QUORUM = 1;
+
+    // the load of the clients (see Workload):
+    //  - CLOSED: each client keeps CLIENT_IN_FLIGHT TXNs open, beginning the next one when one ends
+    //  - OPEN: each client begins ARRIVAL_RATE TXNs per second on average (Poisson), however slow the others are
+    final static Workload.Mode WORKLOAD_MODE = Workload.Mode.CLOSED;
+    final static int CLIENT_IN_FLIGHT = 1;
+    final static double ARRIVAL_RATE = 5;
+    // which keys the TXNs touch:
+    //  - UNIFORM: any key
+    //  - ZIPFIAN: key k with probability proportional to 1 / (k + 1)^ZIPF_THETA, key 0 the hottest
+    //  - HOTSPOT: HOT_OP_FRACTION of the operations on the first HOT_KEY_FRACTION of the keys
+    //  - LATEST: Zipfian around the key the client wrote last
+    final static KeyChooser.Type KEY_DISTRIBUTION = KeyChooser.Type.UNIFORM;
+    final static double ZIPF_THETA = 0.99;
+    final static double HOT_KEY_FRACTION = 0.2;
+    final static double HOT_OP_FRACTION = 0.8;
+    // every operation of a TXN reads two keys, then moves some amount between them with WRITE_PROBABILITY
+    final static double WRITE_PROBABILITY = 0.5;
+    final static int MIN_TXN_LENGTH = 5;
+    final static int MAX_TXN_LENGTH = 10;
+
+    // every METRICS_REPORT ms (never if 0), the latencies and counters of the last interval are printed,
+    // and appended to the CSV file METRICS_CSV if not null; the totals are printed with every summary
+    final static int METRICS_REPORT = 10000;
+    final static String METRICS_CSV = null;
+
+    // the write-ahead log of DSS i lives in WAL_DIRECTORY/i, relative to the working directory; each run starts
+    // from an empty log, so only the segments and checkpoint of a previous run are deleted there
+    final static String WAL_DIRECTORY = "build/wal";
 
 
     public static void main(String[] args) {
         // Logging
-        Log.initializeLog(LogLevel.DEBUG);
+        Config config = Config.defaults();
+        Log.initializeLog(config.logLevel, config.logFormat, config.logFile);
 
         // Create the actor system
         final ActorSystem system = ActorSystem.create("project");
-
-        List<ActorRef> clientGroup = new ArrayList<>();
-        for (int i = 0; i < N_CLIENTS; i++) {
-            Log.log(LogLevel.DEBUG, -1, "Generating Client actor with ID " + i);
-            clientGroup.add(system.actorOf(Client.props(i)));
-        }
-
-        List<ActorRef> coordinatorGroup = new ArrayList<>();
-        for (int i = 100; i - 100 < N_COORDINATORS; i++) {
-            Log.log(LogLevel.DEBUG, -1, "Generating Coordinator actor with ID " + i);
-            coordinatorGroup.add(system.actorOf(Coordinator.props(i)));
-        }
-
-        List<ActorRef> dataStoreGroup = new ArrayList<>();
-        for (int i = 1000; i - 1000 < N_DATASTORE; i++) {
-            int lowerBound = (i - 1000) * 10;
-            Log.log(LogLevel.DEBUG, -1, "Generating Datastore actor with ID " + i + " and lower bound " + lowerBound);
-            dataStoreGroup.add(system.actorOf(DSS.props(i, lowerBound)));
-        }
-
-        // Tell all coordinators the group of datastores
-        for (int j = 0; j < N_COORDINATORS; j++) {
-            CoordinatorWelcomeMsg msg = new CoordinatorWelcomeMsg(dataStoreGroup);
-            coordinatorGroup.get(j).tell(msg, ActorRef.noSender());
-        }
-
-        // Also tell all datastores the group of datastores
-        for (int j = 0; j < N_DATASTORE; j++) {
-            DSSWelcomeMsg msg = new DSSWelcomeMsg(dataStoreGroup);
-            dataStoreGroup.get(j).tell(msg, ActorRef.noSender());
-        }
-
-        // Tell all clients the group of coordinators and the max keystore
-        for (int j = 0; j < N_CLIENTS; j++) {
-            ClientWelcomeMsg msg = new ClientWelcomeMsg(MAX_KEYSTORE, coordinatorGroup);
-            clientGroup.get(j).tell(msg, ActorRef.noSender());
-        }
+        Cluster cluster = Cluster.start(system, config);
+        cluster.welcomeClients(0);
 
         Scanner scanner = new Scanner(System.in);
 
         while (true) {
+            Log.flush();
             System.out.flush();
             String response;
 
@@ -85,10 +132,8 @@ public class Init {
                 response = scanner.nextLine();
 
                 if ("y".equals(response) || "Y".equals(response)) {
-                    for (int j = 0; j < N_DATASTORE; j++) {
-                        RequestSummaryMsg msg = new RequestSummaryMsg();
-                        dataStoreGroup.get(j).tell(msg, ActorRef.noSender());
-                    }
+                    cluster.requestSummary();
+                    Metrics.summary().forEach(line -> Log.log(LogLevel.BASIC, -1, line));
                     break;
                 } else if ("s".equals(response) || "S".equals(response)) {
                     system.terminate();
@@ -99,14 +144,12 @@ public class Init {
             }
 
             do {
+                Log.flush();
                 System.out.println("Press [c] to continue with the next step.");
                 response = scanner.nextLine();
             } while (!response.equals("c") && !response.equals("C"));
 
-            for (int j = 0; j < N_CLIENTS; j++) {
-                ClientWelcomeMsg msg = new ClientWelcomeMsg(MAX_KEYSTORE, coordinatorGroup);
-                clientGroup.get(j).tell(msg, ActorRef.noSender());
-            }
+            cluster.welcomeClients(0);
         }
 
     }
@@ -0,0 +1,230 @@
+package it.unitn.ds1.project;
+
+import it.unitn.ds1.common.Log;
+import it.unitn.ds1.common.LogLevel;
+import it.unitn.ds1.project.concurrency.ConcurrencyControl;
+import it.unitn.ds1.project.concurrency.TwoPhaseLocking;
+import it.unitn.ds1.project.partition.Partitioner;
+import it.unitn.ds1.project.workload.KeyChooser;
+import it.unitn.ds1.project.workload.Workload;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+// An experiment for the ScenarioRunner, read from a properties file (see scenarios/example.properties):
+// the Config of the run, how long the load lasts, and when which nodes crash. Whatever the file does not
+// mention keeps the default of Init; a setting it does not know is an error, not a typo to ignore.
+public class Scenario {
+
+    // a coordinator or a DSS crashing `at` ms after the load starts, for `duration` ms
+    public static class Crash {
+        public final int node;
+        public final int at;
+        public final int duration;
+
+        public Crash(int node, int at, int duration) {
+            this.node = node;
+            this.at = at;
+            this.duration = duration;
+        }
+
+        @Override
+        public String toString() {
+            return node + " at " + at + " ms for " + duration + " ms";
+        }
+    }
+
+    private final Properties properties;
+    private final Set<String> known = new HashSet<>();
+
+    public final String name;
+    // the load stops after `duration` ms, or once `transactions` TXNs have ended, whichever comes first (0: never)
+    public final int duration;
+    public final int transactions;
+    // max wait, once the load has stopped, for the TXNs to end and the sums to add up
+    public final int drain;
+    public final List<Crash> crashes = new ArrayList<>();
+    public final Config config;
+
+    private Scenario(String name, Properties properties) {
+        this.properties = properties;
+        this.name = getString("name", name);
+        this.duration = getInt("duration", 0);
+        this.transactions = getInt("transactions", 0);
+        this.drain = getInt("drain", 60000);
+        if (duration <= 0 && transactions <= 0) {
+            throw new IllegalArgumentException("A scenario needs a duration or a number of transactions");
+        }
+
+        // crashes = <node>:<at>:<duration>, ...
+        for (String crash : getList("crashes")) {
+            String[] fields = crash.split(":");
+            if (fields.length != 3) {
+                throw new IllegalArgumentException("Bad crash, expected <node>:<at ms>:<duration ms>: " + crash);
+            }
+            crashes.add(new Crash(parseInt("crashes", fields[0]), parseInt("crashes", fields[1]),
+                    parseInt("crashes", fields[2])));
+        }
+        this.config = configure();
+    }
+
+    public static Scenario load(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader in = Files.newBufferedReader(path)) {
+            properties.load(in);
+        }
+        return new Scenario(path.getFileName().toString().replaceFirst("\\.properties$", ""), properties);
+    }
+
+    // The settings of the run: those of Init, but the ones the file changes.
+    private Config configure() {
+        Config.Builder b = new Config.Builder();
+        b.logLevel = getEnum("logLevel", LogLevel.class, b.logLevel);
+        b.logFormat = getEnum("logFormat", Log.Format.class, b.logFormat);
+        b.logFile = getString("logFile", b.logFile);
+
+        b.clients = getInt("clients", b.clients);
+        b.coordinators = getInt("coordinators", b.coordinators);
+        b.dataStores = getInt("datastores", b.dataStores);
+        b.keysPerDss = getInt("keysPerDss", b.keysPerDss);
+
+        b.crashCoordinatorAfterOneVoteRequest = getBoolean("crash.coordinatorAfterOneVoteRequest",
+                b.crashCoordinatorAfterOneVoteRequest);
+        b.crashCoordinatorAfterAllVoteRequest = getBoolean("crash.coordinatorAfterAllVoteRequest",
+                b.crashCoordinatorAfterAllVoteRequest);
+        b.crashCoordinatorAfterOneDecisionResponse = getBoolean("crash.coordinatorAfterOneDecisionResponse",
+                b.crashCoordinatorAfterOneDecisionResponse);
+        b.crashCoordinatorAfterAllDecisionResponse = getBoolean("crash.coordinatorAfterAllDecisionResponse",
+                b.crashCoordinatorAfterAllDecisionResponse);
+        b.crashDssBeforeVoteResponse = getBoolean("crash.dssBeforeVoteResponse", b.crashDssBeforeVoteResponse);
+        b.crashDssBeforeDecisionResponse = getBoolean("crash.dssBeforeDecisionResponse",
+                b.crashDssBeforeDecisionResponse);
+        b.crashingDss = getInt("crash.dssAfterEveryVote", b.crashingDss);
+
+        b.batchVoteRequests = getBoolean("batchVoteRequests", b.batchVoteRequests);
+        b.onePhaseCommit = getBoolean("onePhaseCommit", b.onePhaseCommit);
+        b.adaptiveTimeouts = getBoolean("adaptiveTimeouts", b.adaptiveTimeouts);
+        b.concurrencyControl = getEnum("concurrencyControl", ConcurrencyControl.Type.class, b.concurrencyControl);
+        b.deadlockPrevention = getEnum("deadlockPrevention", TwoPhaseLocking.DeadlockPrevention.class,
+                b.deadlockPrevention);
+
+        b.partitioner = getEnum("partitioner", Partitioner.Type.class, b.partitioner);
+        b.virtualNodesPerDss = getInt("virtualNodesPerDss", b.virtualNodesPerDss);
+        if (properties.containsKey("virtualNodes")) {
+            b.virtualNodes = getList("virtualNodes").stream().mapToInt(v -> parseInt("virtualNodes", v)).toArray();
+        }
+
+        b.splitAfter = getInt("split.after", b.splitAfter);
+        b.splitSource = getInt("split.source", b.splitSource);
+        b.splitTarget = getInt("split.target", b.splitTarget);
+
+        b.backups = getInt("backups", b.backups);
+        b.writeQuorum = getInt("writeQuorum", b.writeQuorum);
+        b.readQuorum = getInt("readQuorum", b.readQuorum);
+
+        b.workloadMode = getEnum("workload.mode", Workload.Mode.class, b.workloadMode);
+        b.clientInFlight = getInt("workload.inFlight", b.clientInFlight);
+        b.arrivalRate = getDouble("workload.arrivalRate", b.arrivalRate);
+        b.keyDistribution = getEnum("workload.keys", KeyChooser.Type.class, b.keyDistribution);
+        b.zipfTheta = getDouble("workload.zipfTheta", b.zipfTheta);
+        b.hotKeyFraction = getDouble("workload.hotKeyFraction", b.hotKeyFraction);
+        b.hotOpFraction = getDouble("workload.hotOpFraction", b.hotOpFraction);
+        b.writeProbability = getDouble("workload.writeProbability", b.writeProbability);
+        b.minTxnLength = getInt("workload.minTxnLength", b.minTxnLength);
+        b.maxTxnLength = getInt("workload.maxTxnLength", b.maxTxnLength);
+
+        b.metricsReport = getInt("metrics.report", b.metricsReport);
+        b.metricsCsv = getString("metrics.csv", b.metricsCsv);
+
+        b.walDirectory = getString("walDirectory", b.walDirectory);
+
+        Set<String> unknown = new TreeSet<>(properties.stringPropertyNames());
+        unknown.removeAll(known);
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("Unknown settings in scenario " + name + ": " + unknown);
+        }
+        return b.build();
+    }
+
+    private String getString(String key, String defaultValue) {
+        known.add(key);
+        String value = properties.getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    private int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : parseInt(key, value);
+    }
+
+    private double getDouble(String key, double defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value == null ? defaultValue : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad number for " + key + ": " + value);
+        }
+    }
+
+    private boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false")) {
+            throw new IllegalArgumentException("Bad boolean for " + key + ": " + value);
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    private <E extends Enum<E>> E getEnum(String key, Class<E> type, E defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value == null ? defaultValue : Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Bad value for " + key + ": " + value
+                    + ", expected one of " + Arrays.toString(type.getEnumConstants()));
+        }
+    }
+
+    // comma-separated
+    private List<String> getList(String key) {
+        String value = getString(key, "");
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.isBlank()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    private static int parseInt(String key, String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad integer for " + key + ": " + value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Scenario{" +
+                "name=" + name +
+                (duration > 0 ? ", duration=" + duration + " ms" : "") +
+                (transactions > 0 ? ", transactions=" + transactions : "") +
+                ", " + config +
+                ", crashes=" + crashes +
+                '}';
+    }
+}
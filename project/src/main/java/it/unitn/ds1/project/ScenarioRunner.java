@@ -0,0 +1,101 @@
+package it.unitn.ds1.project;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import it.unitn.ds1.common.Log;
+import it.unitn.ds1.common.LogLevel;
+import it.unitn.ds1.project.message.CrashMsg;
+import it.unitn.ds1.project.metrics.Metrics;
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Runs a Scenario without anybody at the keyboard: the clients generate load until its duration or number of
+// transactions is reached, crashing nodes on its schedule; then they stop, and once the open transactions
+// are over the sum of the items must be the initial one. Prints throughput and latencies, and exits with 0
+// only if the sums add up, so that a script can run one experiment after the other:
+//   gradle scenario -Pscenario=scenarios/example.properties
+public class ScenarioRunner {
+    final static int POLL_INTERVAL = 100;       // between two checks of the end of the load, ms
+    final static int SUM_RETRY = 1000;          // between two reads of the sums, ms
+    final static int SUM_TIMEOUT = 500;         // wait of a read for the answers of the primaries, ms
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Usage: ScenarioRunner <scenario file>");
+            System.exit(2);
+        }
+        Scenario scenario = Scenario.load(Paths.get(args[0]));
+        Config config = scenario.config;
+        Log.initializeLog(config.logLevel, config.logFormat, config.logFile);
+        Log.log(LogLevel.BASIC, -1, scenario.toString());
+
+        final ActorSystem system = ActorSystem.create("project");
+        Cluster cluster = Cluster.start(system, config);
+
+        for (Scenario.Crash crash : scenario.crashes) {
+            ActorRef node = cluster.node(crash.node);
+            if (node == null) {
+                throw new IllegalArgumentException("No coordinator or DSS with ID " + crash.node + " to crash");
+            }
+            system.scheduler().scheduleOnce(
+                    Duration.create(crash.at, TimeUnit.MILLISECONDS),
+                    node, new CrashMsg(crash.duration),
+                    system.dispatcher(), ActorRef.noSender()
+            );
+        }
+
+        // one endless wave per client, until stopped
+        long start = System.currentTimeMillis();
+        cluster.welcomeClients(Integer.MAX_VALUE);
+        while (!isOver(scenario, System.currentTimeMillis() - start)) {
+            Thread.sleep(POLL_INTERVAL);
+        }
+        cluster.stopClients();
+        double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+        long commits = Metrics.total(Metrics.COMMITS);
+        long aborts = Metrics.total(Metrics.ABORTS);
+        Metrics.summary().forEach(line -> Log.log(LogLevel.BASIC, -1, line));
+
+        boolean consistent = checkSums(cluster, config, scenario.drain);
+
+        Log.log(LogLevel.BASIC, -1, () -> String.format(Locale.ROOT,
+                "Scenario %s: %.1f s, %d commits (%.2f/s), %d aborts (abort rate %.3f), sums %s",
+                scenario.name, seconds, commits, commits / seconds, aborts,
+                commits + aborts == 0 ? 0 : (double) aborts / (commits + aborts),
+                consistent ? "consistent" : "NOT CONSISTENT"));
+
+        system.terminate();
+        Await.result(system.whenTerminated(), Duration.Inf());
+        Log.flush();
+        System.exit(consistent ? 0 : 1);
+    }
+
+    private static boolean isOver(Scenario scenario, long elapsed) {
+        return (scenario.duration > 0 && elapsed >= scenario.duration)
+                || (scenario.transactions > 0
+                && Metrics.total(Metrics.COMMITS) + Metrics.total(Metrics.ABORTS) >= scenario.transactions);
+    }
+
+    // The sums are read until every partition answers and they add up to the initial total, or until the
+    // drain time is over: transactions still being decided, and primaries still crashed, settle in the meantime.
+    private static boolean checkSums(Cluster cluster, Config config, int drain) throws InterruptedException {
+        long expected = (long) (config.maxKeystore + 1) * DSS.INITIAL_VALUE;
+        long deadline = System.currentTimeMillis() + drain;
+        long total;
+        Map<Integer, Long> sums;
+        do {
+            Thread.sleep(SUM_RETRY);
+            sums = cluster.readSums(SUM_TIMEOUT);
+            total = sums.values().stream().mapToLong(Long::longValue).sum();
+        } while ((sums.size() < cluster.partitions() || total != expected) && System.currentTimeMillis() < deadline);
+
+        Log.log(LogLevel.BASIC, -1, "Total sum {} of {}, from {}/{} partitions", total, expected, sums.size(),
+                cluster.partitions());
+        return sums.size() == cluster.partitions() && total == expected;
+    }
+}
@@ -0,0 +1,65 @@
+package it.unitn.ds1.project.concurrency;
+
+import it.unitn.ds1.project.model.DataItem;
+import it.unitn.ds1.project.model.MigratedItems;
+import it.unitn.ds1.project.model.PrivateWorkspace;
+import it.unitn.ds1.project.persistence.Checkpointable;
+
+import java.util.List;
+
+// The concurrency-control layer of a DSS: it owns the committed items and decides when a transaction
+// may access them, whether it may commit, and which waiting transactions can go on after a release.
+// The DSS drives it through the lifetime of each transaction: access/copy while it executes,
+// prepare when it votes, commit when the decision is COMMIT, release at the end in any case.
+public interface ConcurrencyControl extends Checkpointable {
+
+    enum Type {OCC, MVCC, TWO_PHASE_LOCKING}
+
+    enum Access {GRANTED, WAIT, ABORT}
+
+    // A transaction is about to read or write an item. WAIT parks the transaction until release()
+    // hands it back; ABORT means it must give up (e.g. wait-die).
+    Access access(long transactionID, PrivateWorkspace workspace, int key, boolean write);
+
+    // transactions that the last access decided to sacrifice (wound-wait); emptied by the call
+    List<Long> woundedTransactions();
+
+    // the item the transaction sees, to be placed in its workspace
+    DataItem copy(int key, PrivateWorkspace workspace);
+
+    boolean isReadOnly(PrivateWorkspace workspace);
+
+    // validate and lock, so that the transaction can no longer fail; false means vote NO
+    boolean prepare(long transactionID, PrivateWorkspace workspace, long prepareTimestamp);
+
+    // take back the locks of a prepared transaction after a crash
+    void relock(long transactionID, PrivateWorkspace workspace, long prepareTimestamp);
+
+    void commit(PrivateWorkspace workspace, long commitTimestamp);
+
+    // drop every lock and request of the transaction; returns the transactions that can go on
+    List<Long> release(long transactionID);
+
+    // back to the initial items, with no lock and no transaction
+    void reset();
+
+    /* -- Migration of keys to another DSS ------ */
+
+    int[] keys();
+
+    boolean holds(int key);
+
+    // no transaction holds, waits for or has prepared the key: it can leave
+    boolean isIdle(int key);
+
+    // committed state of the keys, for the DSS taking them over
+    MigratedItems export(int[] keys);
+
+    // start holding the keys, with the given committed state
+    void adopt(MigratedItems items);
+
+    // stop holding idle keys
+    void drop(int[] keys);
+
+    long sum();
+}
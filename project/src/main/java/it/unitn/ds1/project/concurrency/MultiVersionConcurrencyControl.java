@@ -0,0 +1,197 @@
+package it.unitn.ds1.project.concurrency;
+
+import it.unitn.ds1.common.Log;
+import it.unitn.ds1.common.LogLevel;
+import it.unitn.ds1.common.LongHashMap;
+import it.unitn.ds1.project.model.DataItem;
+import it.unitn.ds1.project.model.MigratedItems;
+import it.unitn.ds1.project.model.MultiVersionStore;
+import it.unitn.ds1.project.model.PrivateWorkspace;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Snapshot isolation: reads are served from the snapshot taken when the transaction began, so read-only
+// transactions never abort; at vote time only the written items are locked, and validated against the
+// versions committed after the snapshot (first committer wins).
+public class MultiVersionConcurrencyControl implements ConcurrencyControl {
+    private final int id;
+    private final MultiVersionStore items;
+    private final int initialValue;
+    private final int initialVersion;
+
+    private final LongHashMap<List<Integer>> lockedItems = new LongHashMap<>();
+    // readers waiting for the decision of the transaction that prepared a key
+    private final Map<Integer, List<Long>> waitingReaders = new HashMap<>();
+
+    public MultiVersionConcurrencyControl(int id, int[] keys, int depth,
+                                          int initialValue, int initialVersion) {
+        this.id = id;
+        this.items = new MultiVersionStore(keys, depth, initialValue, initialVersion);
+        this.initialValue = initialValue;
+        this.initialVersion = initialVersion;
+    }
+
+    // A key prepared at or before the snapshot may still get a version inside it: until the decision
+    // arrives the reader cannot know which version is the right one. Later prepares commit after the snapshot.
+    @Override
+    public Access access(long transactionID, PrivateWorkspace workspace, int key, boolean write) {
+        long preparedAt = items.preparedAt(key);
+        if (write || preparedAt == MultiVersionStore.NOT_PREPARED || preparedAt > workspace.getStartTimestamp()) {
+            return Access.GRANTED;
+        }
+
+        Log.log(LogLevel.DEBUG, this.id, "Read of key {} waits for a prepared transaction", key);
+        waitingReaders.computeIfAbsent(key, k -> new ArrayList<>()).add(transactionID);
+        return Access.WAIT;
+    }
+
+    @Override
+    public List<Long> woundedTransactions() {
+        return List.of();
+    }
+
+    @Override
+    public DataItem copy(int key, PrivateWorkspace workspace) {
+        DataItem item = items.read(key, workspace.getStartTimestamp());
+        if (item == null) {
+            Log.log(LogLevel.BASIC, this.id, "Snapshot too old for item {}", key);
+            workspace.markStale();
+            item = items.latest(key);
+        }
+        return item;
+    }
+
+    @Override
+    public boolean isReadOnly(PrivateWorkspace workspace) {
+        return !workspace.isStale() && workspace.values().stream().noneMatch(DataItem::isTouched);
+    }
+
+    @Override
+    public boolean prepare(long transactionID, PrivateWorkspace workspace, long prepareTimestamp) {
+        boolean commit = !workspace.isStale();
+        List<Integer> locked = new ArrayList<>();
+
+        for (Map.Entry<Integer, DataItem> modifiedEntry : workspace.entrySet()) {
+            int key = modifiedEntry.getKey();
+            if (!commit) {
+                break;
+            }
+            if (!modifiedEntry.getValue().isTouched()) {
+                continue;
+            }
+
+            if (items.prepare(key, prepareTimestamp)) {
+                locked.add(key);
+            } else {
+                Log.log(LogLevel.BASIC, this.id, "Failed to acquire lock for item {}", key);
+                commit = false;
+                break;
+            }
+
+            if (items.latestTimestamp(key) > workspace.getStartTimestamp()) {
+                Log.log(LogLevel.BASIC, this.id, "Write-write conflict on item {}", key);
+                commit = false;
+            }
+        }
+
+        this.lockedItems.put(transactionID, locked);
+        return commit;
+    }
+
+    @Override
+    public void relock(long transactionID, PrivateWorkspace workspace, long prepareTimestamp) {
+        List<Integer> locked = new ArrayList<>();
+        workspace.forEach((key, item) -> {
+            if (item.isTouched()) {
+                items.prepare(key, prepareTimestamp);
+                locked.add(key);
+            }
+        });
+        lockedItems.put(transactionID, locked);
+    }
+
+    @Override
+    public void commit(PrivateWorkspace workspace, long commitTimestamp) {
+        workspace.forEach((key, value) -> {
+            if (value.isTouched()) {
+                items.install(key, value.getValue(), value.getVersion(), commitTimestamp);
+            }
+        });
+    }
+
+    @Override
+    public List<Long> release(long transactionID) {
+        List<Long> ready = new ArrayList<>();
+        List<Integer> keys = this.lockedItems.remove(transactionID);
+        if (keys != null) {
+            for (int key : keys) {
+                items.release(key);
+                ready.addAll(waitingReaders.getOrDefault(key, List.of()));
+                waitingReaders.remove(key);
+            }
+        }
+        return ready;
+    }
+
+    @Override
+    public void reset() {
+        lockedItems.clear();
+        waitingReaders.clear();
+        items.reset(initialValue, initialVersion);
+    }
+
+    @Override
+    public int[] keys() {
+        return items.keys();
+    }
+
+    @Override
+    public boolean holds(int key) {
+        return items.containsKey(key);
+    }
+
+    @Override
+    public boolean isIdle(int key) {
+        return items.preparedAt(key) == MultiVersionStore.NOT_PREPARED && !waitingReaders.containsKey(key);
+    }
+
+    @Override
+    public MigratedItems export(int[] keys) {
+        MigratedItems exported = new MigratedItems();
+        for (int key : keys) {
+            items.export(key, exported);
+        }
+        return exported;
+    }
+
+    @Override
+    public void adopt(MigratedItems migrated) {
+        items.adopt(migrated);
+    }
+
+    @Override
+    public void drop(int[] keys) {
+        items.drop(keys);
+    }
+
+    @Override
+    public long sum() {
+        return items.sum();
+    }
+
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        items.writeTo(out);
+    }
+
+    @Override
+    public void readFrom(DataInputStream in) throws IOException {
+        items.readFrom(in);
+    }
+}
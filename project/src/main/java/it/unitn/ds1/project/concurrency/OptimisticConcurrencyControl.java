@@ -0,0 +1,172 @@
+package it.unitn.ds1.project.concurrency;
+
+import it.unitn.ds1.common.Log;
+import it.unitn.ds1.common.LogLevel;
+import it.unitn.ds1.common.LongHashMap;
+import it.unitn.ds1.project.model.DataItem;
+import it.unitn.ds1.project.model.MigratedItems;
+import it.unitn.ds1.project.model.ItemStore;
+import it.unitn.ds1.project.model.PrivateWorkspace;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Transactions run on copies without any lock; at vote time every item of the workspace is locked
+// and checked against the committed version, and a lock already taken or a changed item means NO.
+public class OptimisticConcurrencyControl implements ConcurrencyControl {
+    private final int id;
+    private final ItemStore items;
+    private final int initialValue;
+    private final int initialVersion;
+
+    private final LongHashMap<List<Integer>> lockedItems = new LongHashMap<>();
+
+    public OptimisticConcurrencyControl(int id, int[] keys, int initialValue, int initialVersion) {
+        this.id = id;
+        this.items = new ItemStore(keys, initialValue, initialVersion);
+        this.initialValue = initialValue;
+        this.initialVersion = initialVersion;
+    }
+
+    @Override
+    public Access access(long transactionID, PrivateWorkspace workspace, int key, boolean write) {
+        return Access.GRANTED;
+    }
+
+    @Override
+    public List<Long> woundedTransactions() {
+        return List.of();
+    }
+
+    @Override
+    public DataItem copy(int key, PrivateWorkspace workspace) {
+        return items.copy(key);
+    }
+
+    // no writes, and every read is still the current, unlocked version of its item
+    @Override
+    public boolean isReadOnly(PrivateWorkspace workspace) {
+        for (Map.Entry<Integer, DataItem> entry : workspace.entrySet()) {
+            int key = entry.getKey();
+            if (entry.getValue().isTouched() || this.items.isLocked(key)
+                    || this.items.getVersion(key) != entry.getValue().getVersion()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // lock the items of the workspace and check that nobody changed them in the meantime
+    @Override
+    public boolean prepare(long transactionID, PrivateWorkspace workspace, long prepareTimestamp) {
+        boolean commit = true;
+        List<Integer> locked = new ArrayList<>();
+
+        for (Map.Entry<Integer, DataItem> modifiedEntry : workspace.entrySet()) {
+            int key = modifiedEntry.getKey();
+
+            if (this.items.acquireLock(key, this.id)) {
+                locked.add(key);
+            } else {
+                Log.log(LogLevel.BASIC, this.id, "Failed to acquire lock for item {}", modifiedEntry.getKey());
+                commit = false;
+                break;
+            }
+
+            int originalVersion = this.items.getVersion(key);
+            if (originalVersion != modifiedEntry.getValue().getVersion() - 1 &&
+                    !(originalVersion == modifiedEntry.getValue().getVersion() &&
+                            this.items.getValue(key) == modifiedEntry.getValue().getValue())) {
+                Log.log(LogLevel.BASIC, this.id, "Mismatching versions or data for item {}", modifiedEntry.getKey());
+                commit = false;
+                break;
+            }
+        }
+
+        this.lockedItems.put(transactionID, locked);
+        return commit;
+    }
+
+    @Override
+    public void relock(long transactionID, PrivateWorkspace workspace, long prepareTimestamp) {
+        List<Integer> locked = new ArrayList<>(workspace.keySet());
+        locked.forEach(key -> items.acquireLock(key, this.id));
+        lockedItems.put(transactionID, locked);
+    }
+
+    @Override
+    public void commit(PrivateWorkspace workspace, long commitTimestamp) {
+        workspace.forEach((key, value) -> {
+            this.items.setValue(key, value.getValue(), this.id);
+            this.items.setVersion(key, value.getVersion(), this.id);
+        });
+    }
+
+    @Override
+    public List<Long> release(long transactionID) {
+        List<Integer> keys = this.lockedItems.remove(transactionID);
+        if (keys != null) {
+            keys.forEach(this.items::releaseLock);
+        }
+        return List.of(); // nobody ever waits
+    }
+
+    @Override
+    public void reset() {
+        lockedItems.clear();
+        items.reset(initialValue, initialVersion);
+    }
+
+    @Override
+    public int[] keys() {
+        return items.keys();
+    }
+
+    @Override
+    public boolean holds(int key) {
+        return items.containsKey(key);
+    }
+
+    @Override
+    public boolean isIdle(int key) {
+        return !items.isLocked(key);
+    }
+
+    @Override
+    public MigratedItems export(int[] keys) {
+        MigratedItems exported = new MigratedItems();
+        for (int key : keys) {
+            items.export(key, exported);
+        }
+        return exported;
+    }
+
+    @Override
+    public void adopt(MigratedItems migrated) {
+        items.adopt(migrated);
+    }
+
+    @Override
+    public void drop(int[] keys) {
+        items.drop(keys);
+    }
+
+    @Override
+    public long sum() {
+        return items.sum();
+    }
+
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        items.writeTo(out);
+    }
+
+    @Override
+    public void readFrom(DataInputStream in) throws IOException {
+        items.readFrom(in);
+    }
+}
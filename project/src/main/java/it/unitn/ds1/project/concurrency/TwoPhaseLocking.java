@@ -0,0 +1,279 @@
+package it.unitn.ds1.project.concurrency;
+
+import it.unitn.ds1.common.Log;
+import it.unitn.ds1.common.LogLevel;
+import it.unitn.ds1.common.LongHashMap;
+import it.unitn.ds1.common.LongHashSet;
+import it.unitn.ds1.project.model.DataItem;
+import it.unitn.ds1.project.model.MigratedItems;
+import it.unitn.ds1.project.model.ItemStore;
+import it.unitn.ds1.project.model.PrivateWorkspace;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Strict two-phase locking: a transaction takes a shared lock on every item it reads and an exclusive
+// lock on every item it writes, and keeps them until the decision. Conflicting requests queue up in FIFO
+// order on the item; deadlocks are avoided by comparing the age of the transactions (start timestamps):
+//  - WAIT_DIE: an older requester waits, a younger one dies;
+//  - WOUND_WAIT: an older requester wounds (aborts) the younger ones in its way, a younger one waits.
+// A prepared transaction can no longer be wounded: it only waits for its decision, so waiting for it is safe.
+public class TwoPhaseLocking implements ConcurrencyControl {
+
+    public enum DeadlockPrevention {WAIT_DIE, WOUND_WAIT}
+
+    private final int id;
+    private final ItemStore items;
+    private final int initialValue;
+    private final int initialVersion;
+    private final DeadlockPrevention deadlockPrevention;
+
+    private final Map<Integer, Lock> locks = new HashMap<>();
+    // keys each transaction holds or waits for, and its age
+    private final LongHashMap<Set<Integer>> keysOf = new LongHashMap<>();
+    private final LongHashMap<Long> startTimestamps = new LongHashMap<>();
+    private final LongHashSet prepared = new LongHashSet();
+    private final List<Long> wounded = new ArrayList<>();
+
+    public TwoPhaseLocking(int id, int[] keys, int initialValue, int initialVersion,
+                           DeadlockPrevention deadlockPrevention) {
+        this.id = id;
+        this.items = new ItemStore(keys, initialValue, initialVersion);
+        this.initialValue = initialValue;
+        this.initialVersion = initialVersion;
+        this.deadlockPrevention = deadlockPrevention;
+    }
+
+    @Override
+    public Access access(long transactionID, PrivateWorkspace workspace, int key, boolean write) {
+        startTimestamps.putIfAbsent(transactionID, workspace.getStartTimestamp());
+        Lock lock = locks.computeIfAbsent(key, k -> new Lock());
+
+        Boolean held = lock.holders.get(transactionID);
+        if (held != null && (held || !write)) {
+            return Access.GRANTED; // already strong enough
+        }
+        if (lock.isWaiting(transactionID)) {
+            return Access.WAIT; // asked again before the grant
+        }
+
+        keysOf.computeIfAbsent(transactionID, t -> new HashSet<>()).add(key);
+        if (lock.canGrant(transactionID, write, held == null)) {
+            lock.holders.put(transactionID, write);
+            return Access.GRANTED;
+        }
+
+        // everybody I would wait for: the holders, and whoever is queued before me
+        List<Long> blockers = new ArrayList<>(lock.holders.keySet());
+        lock.queue.forEach(request -> blockers.add(request.transactionID));
+        blockers.remove(transactionID);
+
+        if (deadlockPrevention == DeadlockPrevention.WAIT_DIE) {
+            for (long blocker : blockers) {
+                if (!isOlder(transactionID, blocker)) {
+                    Log.log(LogLevel.BASIC, this.id, "Wait-die: younger transaction dies on item {}", key);
+                    return Access.ABORT;
+                }
+            }
+        } else {
+            for (long blocker : blockers) {
+                if (isOlder(transactionID, blocker) && !prepared.contains(blocker) && !wounded.contains(blocker)) {
+                    Log.log(LogLevel.BASIC, this.id, "Wound-wait: wounding a younger transaction on item {}", key);
+                    wounded.add(blocker);
+                }
+            }
+        }
+
+        // an upgrade goes before the other requests, or it would wait for requests waiting for it
+        if (held != null) {
+            lock.queue.addFirst(new Request(transactionID, true));
+        } else {
+            lock.queue.addLast(new Request(transactionID, write));
+        }
+        return Access.WAIT;
+    }
+
+    @Override
+    public List<Long> woundedTransactions() {
+        List<Long> victims = new ArrayList<>(wounded);
+        wounded.clear();
+        return victims;
+    }
+
+    @Override
+    public DataItem copy(int key, PrivateWorkspace workspace) {
+        return items.copy(key);
+    }
+
+    // the read locks kept the reads current, they can be released right away
+    @Override
+    public boolean isReadOnly(PrivateWorkspace workspace) {
+        return workspace.values().stream().noneMatch(DataItem::isTouched);
+    }
+
+    // nothing to validate: the locks are already held
+    @Override
+    public boolean prepare(long transactionID, PrivateWorkspace workspace, long prepareTimestamp) {
+        prepared.add(transactionID);
+        return true;
+    }
+
+    @Override
+    public void relock(long transactionID, PrivateWorkspace workspace, long prepareTimestamp) {
+        prepared.add(transactionID);
+        workspace.forEach((key, item) -> {
+            locks.computeIfAbsent(key, k -> new Lock()).holders.put(transactionID, item.isTouched());
+            keysOf.computeIfAbsent(transactionID, t -> new HashSet<>()).add(key);
+        });
+    }
+
+    // the exclusive locks are not the ones of the store, which stays unlocked
+    @Override
+    public void commit(PrivateWorkspace workspace, long commitTimestamp) {
+        workspace.forEach((key, value) -> {
+            if (value.isTouched()) {
+                this.items.setValue(key, value.getValue(), ItemStore.NO_OWNER);
+                this.items.setVersion(key, value.getVersion(), ItemStore.NO_OWNER);
+            }
+        });
+    }
+
+    @Override
+    public List<Long> release(long transactionID) {
+        List<Long> granted = new ArrayList<>();
+        Set<Integer> keys = keysOf.remove(transactionID);
+        startTimestamps.remove(transactionID);
+        prepared.remove(transactionID);
+        wounded.remove(Long.valueOf(transactionID));
+        if (keys == null) {
+            return granted;
+        }
+
+        for (int key : keys) {
+            Lock lock = locks.get(key);
+            lock.holders.remove(transactionID);
+            lock.queue.removeIf(request -> request.transactionID == transactionID);
+
+            // wake up the queue in order, as long as the head is compatible
+            while (!lock.queue.isEmpty() && lock.canGrant(lock.queue.peekFirst().transactionID,
+                    lock.queue.peekFirst().exclusive, false)) {
+                Request request = lock.queue.pollFirst();
+                lock.holders.put(request.transactionID, request.exclusive);
+                granted.add(request.transactionID);
+            }
+            if (lock.holders.isEmpty() && lock.queue.isEmpty()) {
+                locks.remove(key);
+            }
+        }
+        return granted;
+    }
+
+    @Override
+    public void reset() {
+        locks.clear();
+        keysOf.clear();
+        startTimestamps.clear();
+        prepared.clear();
+        wounded.clear();
+        items.reset(initialValue, initialVersion);
+    }
+
+    @Override
+    public int[] keys() {
+        return items.keys();
+    }
+
+    @Override
+    public boolean holds(int key) {
+        return items.containsKey(key);
+    }
+
+    @Override
+    public boolean isIdle(int key) {
+        return !locks.containsKey(key);
+    }
+
+    @Override
+    public MigratedItems export(int[] keys) {
+        MigratedItems exported = new MigratedItems();
+        for (int key : keys) {
+            items.export(key, exported);
+        }
+        return exported;
+    }
+
+    @Override
+    public void adopt(MigratedItems migrated) {
+        items.adopt(migrated);
+    }
+
+    @Override
+    public void drop(int[] keys) {
+        items.drop(keys);
+    }
+
+    @Override
+    public long sum() {
+        return items.sum();
+    }
+
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        items.writeTo(out);
+    }
+
+    @Override
+    public void readFrom(DataInputStream in) throws IOException {
+        items.readFrom(in);
+    }
+
+    // ties between equal timestamps are broken by the transaction ID, so that the order is total
+    private boolean isOlder(long transactionID, long other) {
+        long mine = startTimestamps.getOrDefault(transactionID, Long.MAX_VALUE);
+        long theirs = startTimestamps.getOrDefault(other, Long.MAX_VALUE);
+        return mine < theirs || (mine == theirs && transactionID < other);
+    }
+
+    private static class Lock {
+        // holder -> exclusive?
+        final Map<Long, Boolean> holders = new LinkedHashMap<>();
+        final Deque<Request> queue = new ArrayDeque<>();
+
+        // a newcomer must also respect the queue, a request at its head only the holders
+        boolean canGrant(long transactionID, boolean exclusive, boolean newcomer) {
+            if (newcomer && !queue.isEmpty()) {
+                return false;
+            }
+            for (Map.Entry<Long, Boolean> holder : holders.entrySet()) {
+                if (holder.getKey() != transactionID && (exclusive || holder.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean isWaiting(long transactionID) {
+            return queue.stream().anyMatch(request -> request.transactionID == transactionID);
+        }
+    }
+
+    private static class Request {
+        final long transactionID;
+        final boolean exclusive;
+
+        Request(long transactionID, boolean exclusive) {
+            this.transactionID = transactionID;
+            this.exclusive = exclusive;
+        }
+    }
+}
@@ -1,17 +1,22 @@
 package it.unitn.ds1.project.message;
 
 import akka.actor.ActorRef;
+import it.unitn.ds1.project.workload.Workload;
 
 import java.io.Serializable;
 import java.util.List;
 
-// send this message to the client at startup to inform it about the coordinators and the keys
+// send this message to the client at startup to inform it about the coordinators, the keys and the load to generate
 public class ClientWelcomeMsg implements Serializable {
     public final Integer maxKey;
     public final List<ActorRef> coordinators;
+    public final Workload workload;
+    public final int maxTxn;    // TXNs of the wave, 0 for a random number up to MAX_SEQUENTIAL_TXN
 
-    public ClientWelcomeMsg(int maxKey, List<ActorRef> coordinators) {
+    public ClientWelcomeMsg(int maxKey, List<ActorRef> coordinators, Workload workload, int maxTxn) {
         this.maxKey = maxKey;
         this.coordinators = List.copyOf(coordinators);
+        this.workload = workload;
+        this.maxTxn = maxTxn;
     }
 }
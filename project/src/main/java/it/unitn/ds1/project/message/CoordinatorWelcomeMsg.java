@@ -1,14 +1,20 @@
 package it.unitn.ds1.project.message;
 
 import akka.actor.ActorRef;
+import it.unitn.ds1.project.partition.Partitioner;
 
 import java.util.List;
 
 public class CoordinatorWelcomeMsg {
     public final List<ActorRef> dss;
+    // the replicas of every partition: the first one is its primary, the others its backups
+    public final List<List<ActorRef>> replicas;
+    public final Partitioner partitioner;
 
-    public CoordinatorWelcomeMsg(List<ActorRef> dss) {
+    public CoordinatorWelcomeMsg(List<ActorRef> dss, List<List<ActorRef>> replicas, Partitioner partitioner) {
         this.dss = List.copyOf(dss);
+        this.replicas = List.copyOf(replicas);
+        this.partitioner = partitioner;
     }
 
 }
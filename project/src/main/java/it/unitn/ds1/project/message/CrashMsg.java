@@ -0,0 +1,12 @@
+package it.unitn.ds1.project.message;
+
+import java.io.Serializable;
+
+// send this message to a coordinator or a DSS to make it crash, and recover after the given time
+public class CrashMsg implements Serializable {
+    public final int duration;  // ms
+
+    public CrashMsg(int duration) {
+        this.duration = duration;
+    }
+}
@@ -6,9 +6,14 @@ import java.util.List;
 
 public class DSSWelcomeMsg {
     public final List<ActorRef> dss;
+    public final List<ActorRef> coordinators;
+    // the replicas of every partition: the first one is its primary, the others its backups
+    public final List<List<ActorRef>> replicas;
 
-    public DSSWelcomeMsg(List<ActorRef> dss) {
+    public DSSWelcomeMsg(List<ActorRef> dss, List<ActorRef> coordinators, List<List<ActorRef>> replicas) {
         this.dss = List.copyOf(dss);
+        this.coordinators = List.copyOf(coordinators);
+        this.replicas = List.copyOf(replicas);
     }
 
 }
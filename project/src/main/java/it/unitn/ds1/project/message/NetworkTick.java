@@ -0,0 +1,7 @@
+package it.unitn.ds1.project.message;
+
+import java.io.Serializable;
+
+// sent by a node to itself when some delayed message is due for delivery
+public class NetworkTick implements Serializable {
+}
@@ -0,0 +1,7 @@
+package it.unitn.ds1.project.message;
+
+import java.io.Serializable;
+
+// sent by a node to itself while some transaction timeout is pending, to advance its timing wheel
+public class TimerTick implements Serializable {
+}
@@ -1,16 +1,13 @@
 package it.unitn.ds1.project.message.dss;
 
 import java.io.Serializable;
-import java.lang.reflect.MalformedParametersException;
 
 public abstract class DSSMessage implements Serializable {
 
-    public final String transactionID;
+    // packed as described in TransactionID
+    public final long transactionID;
 
-    protected DSSMessage(String transactionID) {
-        if (transactionID == null) {
-            throw new MalformedParametersException("Cannot have transactionID as null!");
-        }
+    protected DSSMessage(long transactionID) {
         this.transactionID = transactionID;
     }
 }
@@ -0,0 +1,14 @@
+package it.unitn.ds1.project.message.dss;
+
+import java.io.Serializable;
+
+// the answer of a primary to RequestSummaryMsg: the sum of the items of its partition
+public class SummaryMsg implements Serializable {
+    public final int partition;
+    public final long sum;
+
+    public SummaryMsg(int partition, long sum) {
+        this.partition = partition;
+        this.sum = sum;
+    }
+}
@@ -0,0 +1,7 @@
+package it.unitn.ds1.project.message.dss;
+
+import java.io.Serializable;
+
+// sent by a DSS to itself when the current group commit window closes
+public class WALFlush implements Serializable {
+}
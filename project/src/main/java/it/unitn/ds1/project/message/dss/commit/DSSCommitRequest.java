@@ -0,0 +1,12 @@
+package it.unitn.ds1.project.message.dss.commit;
+
+import it.unitn.ds1.project.message.dss.DSSMessage;
+
+// one-phase commit: sent to the only participant of a transaction, which validates, decides
+// and answers with a DSSDecisionResponse
+public class DSSCommitRequest extends DSSMessage {
+
+    public DSSCommitRequest(long transactionID) {
+        super(transactionID);
+    }
+}
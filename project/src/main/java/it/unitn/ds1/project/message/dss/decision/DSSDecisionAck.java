@@ -0,0 +1,12 @@
+package it.unitn.ds1.project.message.dss.decision;
+
+import it.unitn.ds1.project.message.dss.DSSMessage;
+
+// the decision has reached the sender, which will never ask for it again: a participant tells the coordinator,
+// the coordinator tells the DSS that committed in one phase
+public class DSSDecisionAck extends DSSMessage {
+
+    public DSSDecisionAck(long transactionID) {
+        super(transactionID);
+    }
+}
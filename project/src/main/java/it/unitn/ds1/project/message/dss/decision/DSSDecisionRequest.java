@@ -4,7 +4,7 @@ import it.unitn.ds1.project.message.dss.DSSMessage;
 
 public class DSSDecisionRequest extends DSSMessage {
 
-    public DSSDecisionRequest(String transactionID) {
+    public DSSDecisionRequest(long transactionID) {
         super(transactionID);
     }
 }
@@ -4,9 +4,16 @@ import it.unitn.ds1.project.message.dss.DSSMessage;
 
 public class DSSDecisionResponse extends DSSMessage {
     public final DSSDecision decision;
+    // timestamp of the new versions written by a COMMIT (MVCC)
+    public final long commitTimestamp;
 
-    public DSSDecisionResponse(String transactionID, DSSDecision d) {
+    public DSSDecisionResponse(long transactionID, DSSDecision d) {
+        this(transactionID, d, 0);
+    }
+
+    public DSSDecisionResponse(long transactionID, DSSDecision d, long commitTimestamp) {
         super(transactionID);
         this.decision = d;
+        this.commitTimestamp = commitTimestamp;
     }
 }
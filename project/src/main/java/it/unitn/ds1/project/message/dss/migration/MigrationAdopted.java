@@ -0,0 +1,9 @@
+package it.unitn.ds1.project.message.dss.migration;
+
+// target -> source: the keys are mine, and on enough of my replicas to survive a failover
+public class MigrationAdopted extends MigrationMessage {
+
+    public MigrationAdopted(String migrationID) {
+        super(migrationID);
+    }
+}
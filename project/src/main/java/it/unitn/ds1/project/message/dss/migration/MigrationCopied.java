@@ -0,0 +1,9 @@
+package it.unitn.ds1.project.message.dss.migration;
+
+// target -> source: the copy arrived, the coordinators can be switched
+public class MigrationCopied extends MigrationMessage {
+
+    public MigrationCopied(String migrationID) {
+        super(migrationID);
+    }
+}
@@ -0,0 +1,14 @@
+package it.unitn.ds1.project.message.dss.migration;
+
+import it.unitn.ds1.project.model.MigratedItems;
+
+// source -> target: a consistent copy of the keys, taken while the source keeps serving them
+public class MigrationData extends MigrationMessage {
+
+    public final MigratedItems items;
+
+    public MigrationData(String migrationID, MigratedItems items) {
+        super(migrationID);
+        this.items = items;
+    }
+}
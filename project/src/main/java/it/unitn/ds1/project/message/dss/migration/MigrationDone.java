@@ -0,0 +1,15 @@
+package it.unitn.ds1.project.message.dss.migration;
+
+import it.unitn.ds1.project.model.MigratedItems;
+
+// source -> target: nobody can touch the keys at the source any more, the target owns them from now on,
+// with these items (the copy it got may have been lost with its primary)
+public class MigrationDone extends MigrationMessage {
+
+    public final MigratedItems items;
+
+    public MigrationDone(String migrationID, MigratedItems items) {
+        super(migrationID);
+        this.items = items;
+    }
+}
@@ -0,0 +1,14 @@
+package it.unitn.ds1.project.message.dss.migration;
+
+import it.unitn.ds1.project.model.MigratedItems;
+
+// source -> target: keys committed at the source after the copy was taken
+public class MigrationForward extends MigrationMessage {
+
+    public final MigratedItems items;
+
+    public MigrationForward(String migrationID, MigratedItems items) {
+        super(migrationID);
+        this.items = items;
+    }
+}
@@ -0,0 +1,13 @@
+package it.unitn.ds1.project.message.dss.migration;
+
+import java.io.Serializable;
+
+// a step of the migration of some keys from a DSS (the source) to another one (the target)
+public abstract class MigrationMessage implements Serializable {
+
+    public final String migrationID;
+
+    protected MigrationMessage(String migrationID) {
+        this.migrationID = migrationID;
+    }
+}
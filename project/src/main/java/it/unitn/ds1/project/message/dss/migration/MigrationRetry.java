@@ -0,0 +1,9 @@
+package it.unitn.ds1.project.message.dss.migration;
+
+// sent by the source to itself to send again the steps that have not been acknowledged
+public class MigrationRetry extends MigrationMessage {
+
+    public MigrationRetry(String migrationID) {
+        super(migrationID);
+    }
+}
@@ -0,0 +1,13 @@
+package it.unitn.ds1.project.message.dss.migration;
+
+import java.io.Serializable;
+
+// tells a DSS to split its keys, handing about half of its load over to the target DSS
+public class MigrationStartMsg implements Serializable {
+
+    public final int target;    // index of the target DSS
+
+    public MigrationStartMsg(int target) {
+        this.target = target;
+    }
+}
@@ -0,0 +1,11 @@
+package it.unitn.ds1.project.message.dss.migration;
+
+import it.unitn.ds1.project.message.dss.DSSMessage;
+
+// a transaction has waited too long at the target for keys that are still migrating
+public class MigrationWaitTimeout extends DSSMessage {
+
+    public MigrationWaitTimeout(long transactionID) {
+        super(transactionID);
+    }
+}
@@ -0,0 +1,9 @@
+package it.unitn.ds1.project.message.dss.migration;
+
+// coordinator -> source: every transaction of the coordinator that could still route to the source has been decided
+public class RoutingDrained extends MigrationMessage {
+
+    public RoutingDrained(String migrationID) {
+        super(migrationID);
+    }
+}
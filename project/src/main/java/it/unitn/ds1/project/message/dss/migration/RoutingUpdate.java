@@ -0,0 +1,14 @@
+package it.unitn.ds1.project.message.dss.migration;
+
+// source -> coordinators: transactions beginning from now on find the keys at the target
+public class RoutingUpdate extends MigrationMessage {
+
+    public final int[] keys;
+    public final int target;    // index of the target DSS
+
+    public RoutingUpdate(String migrationID, int[] keys, int target) {
+        super(migrationID);
+        this.keys = keys.clone();
+        this.target = target;
+    }
+}
@@ -4,9 +4,12 @@ import it.unitn.ds1.project.message.dss.DSSMessage;
 
 public class DSSReadRequestMsg extends DSSMessage {
     public final Integer key;
+    // start of the transaction: its snapshot in MVCC, its age in 2PL
+    public final long startTimestamp;
 
-    public DSSReadRequestMsg(String transactionID, Integer key) {
+    public DSSReadRequestMsg(long transactionID, Integer key, long startTimestamp) {
         super(transactionID);
         this.key = key;
+        this.startTimestamp = startTimestamp;
     }
 }
@@ -5,10 +5,13 @@ import it.unitn.ds1.project.message.dss.DSSMessage;
 public class DSSReadResultMsg extends DSSMessage {
     public final Integer key;
     public final Integer value;
+    // of the value read: among the answers to a quorum read, the highest one wins
+    public final Integer version;
 
-    public DSSReadResultMsg(String transactionID, Integer key, Integer value) {
+    public DSSReadResultMsg(long transactionID, Integer key, Integer value, Integer version) {
         super(transactionID);
         this.key = key;
         this.value = value;
+        this.version = version;
     }
 }
@@ -0,0 +1,16 @@
+package it.unitn.ds1.project.message.dss.read;
+
+import it.unitn.ds1.project.message.dss.DSSMessage;
+
+// read of the last committed value a replica knows, possibly stale: served by backups too,
+// outside of any workspace, and answered with a DSSReadResultMsg
+public class DSSStaleReadRequestMsg extends DSSMessage {
+    public final Integer key;
+    public final long startTimestamp;
+
+    public DSSStaleReadRequestMsg(long transactionID, Integer key, long startTimestamp) {
+        super(transactionID);
+        this.key = key;
+        this.startTimestamp = startTimestamp;
+    }
+}
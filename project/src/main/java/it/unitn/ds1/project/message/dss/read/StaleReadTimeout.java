@@ -0,0 +1,13 @@
+package it.unitn.ds1.project.message.dss.read;
+
+import it.unitn.ds1.project.message.dss.DSSMessage;
+
+// a stale read got no answer (its replica is down, or does not hold the key): ask the primary
+public class StaleReadTimeout extends DSSMessage {
+    public final Integer key;
+
+    public StaleReadTimeout(long transactionID, Integer key) {
+        super(transactionID);
+        this.key = key;
+    }
+}
@@ -0,0 +1,14 @@
+package it.unitn.ds1.project.message.dss.replication;
+
+// backup -> primary: every record up to seq has been applied, and round is the last message I got
+public class ReplicaAck extends ReplicationMessage {
+
+    public final long seq;
+    public final long round;
+
+    public ReplicaAck(int view, long seq, long round) {
+        super(view);
+        this.seq = seq;
+        this.round = round;
+    }
+}
@@ -0,0 +1,16 @@
+package it.unitn.ds1.project.message.dss.replication;
+
+// primary -> backups: the log records of a group commit, numbered from firstSeq, in their log format
+public class ReplicaAppend extends ReplicationMessage {
+
+    public final long round;
+    public final long firstSeq;
+    public final byte[] records;
+
+    public ReplicaAppend(int view, long round, long firstSeq, byte[] records) {
+        super(view);
+        this.round = round;
+        this.firstSeq = firstSeq;
+        this.records = records;
+    }
+}
@@ -0,0 +1,15 @@
+package it.unitn.ds1.project.message.dss.replication;
+
+// backup -> the other replicas: the primary is silent, and I would take over in view; the last record I have
+// is seq, of the log of lastView
+public class ReplicaCandidate extends ReplicationMessage {
+
+    public final int lastView;
+    public final long seq;
+
+    public ReplicaCandidate(int view, int lastView, long seq) {
+        super(view);
+        this.lastView = lastView;
+        this.seq = seq;
+    }
+}
@@ -0,0 +1,18 @@
+package it.unitn.ds1.project.message.dss.replication;
+
+import akka.actor.ActorRef;
+
+import java.util.List;
+
+// primary -> backups: I am alive, and these backups are in sync with me, in the order they would take over
+public class ReplicaHeartbeat extends ReplicationMessage {
+
+    public final long round;
+    public final List<ActorRef> inSync;
+
+    public ReplicaHeartbeat(int view, long round, List<ActorRef> inSync) {
+        super(view);
+        this.round = round;
+        this.inSync = List.copyOf(inSync);
+    }
+}
@@ -0,0 +1,15 @@
+package it.unitn.ds1.project.message.dss.replication;
+
+// backup -> candidate: I take no part in any view older than view anymore; the last record I have is seq,
+// of the log of lastView
+public class ReplicaPromise extends ReplicationMessage {
+
+    public final int lastView;
+    public final long seq;
+
+    public ReplicaPromise(int view, int lastView, long seq) {
+        super(view);
+        this.lastView = lastView;
+        this.seq = seq;
+    }
+}
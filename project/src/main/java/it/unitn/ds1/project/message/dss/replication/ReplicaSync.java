@@ -0,0 +1,24 @@
+package it.unitn.ds1.project.message.dss.replication;
+
+import it.unitn.ds1.project.model.MigratedItems;
+import it.unitn.ds1.project.partition.Migration;
+
+// primary -> backup: the committed items, the votes and decisions (in their log format) after record seq,
+// and the keys being handed over to another DSS, if any
+public class ReplicaSync extends ReplicationMessage {
+
+    public final long round;
+    public final long seq;
+    public final MigratedItems items;
+    public final byte[] state;
+    public final Migration outgoing;
+
+    public ReplicaSync(int view, long round, long seq, MigratedItems items, byte[] state, Migration outgoing) {
+        super(view);
+        this.round = round;
+        this.seq = seq;
+        this.items = items;
+        this.state = state;
+        this.outgoing = outgoing;
+    }
+}
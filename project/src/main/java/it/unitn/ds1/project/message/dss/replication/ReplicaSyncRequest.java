@@ -0,0 +1,9 @@
+package it.unitn.ds1.project.message.dss.replication;
+
+// a replica that missed part of the log asks the primary for its whole state
+public class ReplicaSyncRequest extends ReplicationMessage {
+
+    public ReplicaSyncRequest(int view) {
+        super(view);
+    }
+}
@@ -0,0 +1,7 @@
+package it.unitn.ds1.project.message.dss.replication;
+
+import java.io.Serializable;
+
+// sent by a replica to itself: time for the primary to send a heartbeat, for a backup to check the primary
+public class ReplicaTick implements Serializable {
+}
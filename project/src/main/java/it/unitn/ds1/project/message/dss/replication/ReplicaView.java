@@ -0,0 +1,17 @@
+package it.unitn.ds1.project.message.dss.replication;
+
+import akka.actor.ActorRef;
+
+// the primary of a partition in a view, as known by the sender: announced by a backup that takes over,
+// and sent back to whoever still talks to a replica that is not the primary
+public class ReplicaView extends ReplicationMessage {
+
+    public final int partition;
+    public final ActorRef primary;
+
+    public ReplicaView(int view, int partition, ActorRef primary) {
+        super(view);
+        this.partition = partition;
+        this.primary = primary;
+    }
+}
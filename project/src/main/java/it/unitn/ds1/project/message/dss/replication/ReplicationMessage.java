@@ -0,0 +1,13 @@
+package it.unitn.ds1.project.message.dss.replication;
+
+import java.io.Serializable;
+
+// exchanged by the replicas of a partition; the view numbers the primaries the partition has had
+public abstract class ReplicationMessage implements Serializable {
+
+    public final int view;
+
+    protected ReplicationMessage(int view) {
+        this.view = view;
+    }
+}
@@ -1,3 +1,4 @@
 package it.unitn.ds1.project.message.dss.vote;
 
-public enum DSSVote {NO, YES}
+// READ_ONLY: the participant only served reads, it has already released the transaction and leaves phase two
+public enum DSSVote {NO, YES, READ_ONLY}
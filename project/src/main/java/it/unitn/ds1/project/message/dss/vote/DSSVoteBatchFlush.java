@@ -0,0 +1,7 @@
+package it.unitn.ds1.project.message.dss.vote;
+
+import java.io.Serializable;
+
+// sent by a coordinator to itself when the current vote batching window closes
+public class DSSVoteBatchFlush implements Serializable {
+}
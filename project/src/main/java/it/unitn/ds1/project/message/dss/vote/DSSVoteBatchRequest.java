@@ -0,0 +1,13 @@
+package it.unitn.ds1.project.message.dss.vote;
+
+import java.io.Serializable;
+import java.util.List;
+
+// the vote requests of all the transactions a coordinator saw ending within one batching window
+public class DSSVoteBatchRequest implements Serializable {
+    public final List<DSSVoteRequest> requests;
+
+    public DSSVoteBatchRequest(List<DSSVoteRequest> requests) {
+        this.requests = List.copyOf(requests);
+    }
+}
@@ -0,0 +1,13 @@
+package it.unitn.ds1.project.message.dss.vote;
+
+import java.io.Serializable;
+import java.util.List;
+
+// the votes of a DSS for the transactions of a DSSVoteBatchRequest it takes part in
+public class DSSVoteBatchResponse implements Serializable {
+    public final List<DSSVoteResponse> responses;
+
+    public DSSVoteBatchResponse(List<DSSVoteResponse> responses) {
+        this.responses = List.copyOf(responses);
+    }
+}
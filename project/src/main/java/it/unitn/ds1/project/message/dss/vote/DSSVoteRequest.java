@@ -1,10 +1,16 @@
 package it.unitn.ds1.project.message.dss.vote;
 
+import akka.actor.ActorRef;
 import it.unitn.ds1.project.message.dss.DSSMessage;
 
+import java.util.List;
+
 public class DSSVoteRequest extends DSSMessage {
+    // the DSSes taking part in the transaction, asked for the decision by the termination protocol
+    public final List<ActorRef> participants;
 
-    public DSSVoteRequest(String transactionID) {
+    public DSSVoteRequest(long transactionID, List<ActorRef> participants) {
         super(transactionID);
+        this.participants = List.copyOf(participants);
     }
 }
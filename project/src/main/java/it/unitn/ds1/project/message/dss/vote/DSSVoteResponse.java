@@ -4,9 +4,16 @@ import it.unitn.ds1.project.message.dss.DSSMessage;
 
 public class DSSVoteResponse extends DSSMessage {
     public final DSSVote vote;
+    // a YES voter holds its locks since this time: the commit timestamp cannot be smaller (MVCC)
+    public final long prepareTimestamp;
 
-    public DSSVoteResponse(String transactionID, DSSVote v) {
+    public DSSVoteResponse(long transactionID, DSSVote v) {
+        this(transactionID, v, 0);
+    }
+
+    public DSSVoteResponse(long transactionID, DSSVote v, long prepareTimestamp) {
         super(transactionID);
         vote = v;
+        this.prepareTimestamp = prepareTimestamp;
     }
 }
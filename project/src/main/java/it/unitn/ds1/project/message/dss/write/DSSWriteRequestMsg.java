@@ -8,11 +8,14 @@ public class DSSWriteRequestMsg extends DSSMessage {
 
     public final Integer key;
     public final Integer value;
+    // start of the transaction: its snapshot in MVCC, its age in 2PL
+    public final long startTimestamp;
 
-    public DSSWriteRequestMsg(String transactionID, Integer key, Integer value) {
+    public DSSWriteRequestMsg(long transactionID, Integer key, Integer value, long startTimestamp) {
         super(transactionID);
         this.key = key;
         this.value = value;
+        this.startTimestamp = startTimestamp;
     }
 
 }
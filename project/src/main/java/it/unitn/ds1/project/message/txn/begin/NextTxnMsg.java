@@ -0,0 +1,7 @@
+package it.unitn.ds1.project.message.txn.begin;
+
+import java.io.Serializable;
+
+// sent by the client to itself when the pause before its next TXN is over
+public class NextTxnMsg implements Serializable {
+}
@@ -2,6 +2,13 @@ package it.unitn.ds1.project.message.txn.begin;
 
 import java.io.Serializable;
 
-// reply from the coordinator receiving TxnBeginMsg
+// reply from the coordinator receiving TxnBeginMsg, with the ID it assigned to the TXN
 public class TxnAcceptMsg implements Serializable {
+    public final long transactionID;
+    public final int attempt; // the one of the TxnBeginMsg
+
+    public TxnAcceptMsg(long transactionID, int attempt) {
+        this.transactionID = transactionID;
+        this.attempt = attempt;
+    }
 }
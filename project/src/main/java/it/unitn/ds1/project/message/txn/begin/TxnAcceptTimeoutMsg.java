@@ -4,4 +4,9 @@ import java.io.Serializable;
 
 // the client may timeout waiting for TXN begin confirmation (TxnAcceptMsg)
 public class TxnAcceptTimeoutMsg implements Serializable {
+    public final int attempt;
+
+    public TxnAcceptTimeoutMsg(int attempt) {
+        this.attempt = attempt;
+    }
 }
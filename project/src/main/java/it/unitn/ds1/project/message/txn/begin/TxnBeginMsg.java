@@ -5,8 +5,14 @@ import java.io.Serializable;
 // message the client sends to a coordinator to begin the TXN
 public class TxnBeginMsg implements Serializable {
     public final Integer clientId;
+    // numbers the begins of the client, which has several TXNs in flight: the accept tells which one it answers
+    public final int attempt;
+    // a read-only TXN, happy with values that may be a little old: any replica can serve its reads
+    public final boolean staleReads;
 
-    public TxnBeginMsg(int clientId) {
+    public TxnBeginMsg(int clientId, int attempt, boolean staleReads) {
         this.clientId = clientId;
+        this.attempt = attempt;
+        this.staleReads = staleReads;
     }
 }
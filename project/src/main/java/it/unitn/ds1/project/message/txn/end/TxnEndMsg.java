@@ -6,10 +6,12 @@ import java.io.Serializable;
 // it may ask for commit (with probability COMMIT_PROBABILITY), or abort
 public class TxnEndMsg implements Serializable {
     public final Integer clientId;
+    public final long transactionID;
     public final Boolean commit; // if false, the transaction should abort
 
-    public TxnEndMsg(int clientId, boolean commit) {
+    public TxnEndMsg(int clientId, long transactionID, boolean commit) {
         this.clientId = clientId;
+        this.transactionID = transactionID;
         this.commit = commit;
     }
 }
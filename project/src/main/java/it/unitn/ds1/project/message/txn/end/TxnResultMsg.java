@@ -5,9 +5,11 @@ import java.io.Serializable;
 
 // message from the coordinator to the client with the outcome of the TXN
 public class TxnResultMsg implements Serializable {
+    public final long transactionID;
     public final Boolean commit; // if false, the transaction was aborted
 
-    public TxnResultMsg(boolean commit) {
+    public TxnResultMsg(long transactionID, boolean commit) {
+        this.transactionID = transactionID;
         this.commit = commit;
     }
 }
@@ -6,10 +6,12 @@ import java.io.Serializable;
 // READ request from the client to the coordinator
 public class TxnReadRequestMsg implements Serializable {
     public final Integer clientId;
+    public final long transactionID;
     public final Integer key; // the key of the value to read
 
-    public TxnReadRequestMsg(int clientId, int key) {
+    public TxnReadRequestMsg(int clientId, long transactionID, int key) {
         this.clientId = clientId;
+        this.transactionID = transactionID;
         this.key = key;
     }
 }
@@ -5,10 +5,12 @@ import java.io.Serializable;
 
 // reply from the coordinator when requested a READ on a given key
 public class TxnReadResultMsg implements Serializable {
+    public final long transactionID;
     public final Integer key; // the key associated to the requested item
     public final Integer value; // the value found in the data store for that item
 
-    public TxnReadResultMsg(int key, int value) {
+    public TxnReadResultMsg(long transactionID, int key, int value) {
+        this.transactionID = transactionID;
         this.key = key;
         this.value = value;
     }
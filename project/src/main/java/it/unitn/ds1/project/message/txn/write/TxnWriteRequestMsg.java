@@ -4,11 +4,13 @@ import java.io.Serializable;
 
 public class TxnWriteRequestMsg implements Serializable {
     public final Integer clientId;
+    public final long transactionID;
     public final Integer key; // the key of the value to write
     public final Integer value; // the new value to write
 
-    public TxnWriteRequestMsg(int clientId, int key, int value) {
+    public TxnWriteRequestMsg(int clientId, long transactionID, int key, int value) {
         this.clientId = clientId;
+        this.transactionID = transactionID;
         this.key = key;
         this.value = value;
     }
@@ -0,0 +1,15 @@
+package it.unitn.ds1.project.metrics;
+
+// why a transaction was aborted, counted by Metrics where the abort is decided
+public enum AbortReason {
+    CLIENT,                 // the client asked for it
+    CONFLICT,               // the concurrency control refused an access
+    WOUNDED,                // an older transaction wanted its lock (2PL wound-wait)
+    VALIDATION,             // the participant voted NO
+    KEY_MOVED,              // the key has migrated to another DSS meanwhile
+    MIGRATION_WAIT,         // the key was migrating here for too long
+    VIEW_CHANGE,            // its work was at a primary that has since been replaced
+    VOTE_TIMEOUT,           // the vote request, or some vote, never came
+    DSS_RECOVERY,           // a participant crashed before voting
+    COORDINATOR_RECOVERY    // the coordinator crashed before deciding
+}
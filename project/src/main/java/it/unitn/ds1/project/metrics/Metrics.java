@@ -0,0 +1,185 @@
+package it.unitn.ds1.project.metrics;
+
+import it.unitn.ds1.common.Histogram;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latencies and counters every actor reports into, shared by all of them like Log. Latencies are in
+// microseconds; each one is kept twice, since the start and since the last report, so that a periodic report
+// shows how the system behaves now and the summary how it behaved overall.
+// The actors do not contend for a lock: each thread records the latencies into histograms of its own, which only
+// the report locks besides it, and the counters are LongAdders. The report merges them, and writes the CSV file
+// once it no longer holds any lock.
+public class Metrics {
+
+    // latencies
+    public static final String CLIENT_TXN = "client.txn";                   // begin (first attempt) to result
+    public static final String CLIENT_READ = "client.read";                 // both reads of an operation
+    public static final String COORDINATOR_VOTE = "coordinator.vote";       // TxnEnd to decision
+    public static final String COORDINATOR_DECISION = "coordinator.decision"; // decision to the last acknowledgement
+    public static final String DSS_PREPARE = "dss.prepare";                 // vote request to the vote leaving, durable
+
+    // counters
+    public static final String COMMITS = "client.commit";
+    public static final String ABORTS = "client.abort";
+    private static final String ABORT_REASON = "abort.";
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    // the latencies of each thread since the last report
+    private static final List<Recorder> recorders = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<Recorder> recorder = ThreadLocal.withInitial(() -> {
+        Recorder r = new Recorder();
+        recorders.add(r);
+        return r;
+    });
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    // merged by the reports, under their lock
+    private static final Object reportLock = new Object();
+    private static final Map<String, Histogram> totalLatencies = new TreeMap<>();
+    private static final Map<String, Long> countedAtLastReport = new HashMap<>();
+    private static final long start = System.currentTimeMillis();
+    private static long lastReport = start;
+
+    public static void record(String name, long micros) {
+        recorder.get().record(name, micros);
+    }
+
+    // latency from a System.nanoTime() taken at the start
+    public static void recordSince(String name, long startNanos) {
+        record(name, (System.nanoTime() - startNanos) / 1000);
+    }
+
+    public static void count(String name) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).increment();
+    }
+
+    // since the start
+    public static long total(String name) {
+        LongAdder c = counters.get(name);
+        return c == null ? 0 : c.sum();
+    }
+
+    public static void abort(AbortReason reason) {
+        count(ABORT_REASON + reason.name().toLowerCase(Locale.ROOT));
+    }
+
+    // What happened since the last report, which starts a new interval; also appended to the CSV file at csvPath,
+    // if not null, one row per metric (latencies in ms, header written when the file is new).
+    public static List<String> report(String csvPath) {
+        Map<String, Histogram> latencies = new TreeMap<>();
+        Map<String, Long> counts = new TreeMap<>();
+        long now;
+        double seconds;
+        synchronized (reportLock) {
+            now = System.currentTimeMillis();
+            seconds = Math.max(1, now - lastReport) / 1000.0;
+            recorders.forEach(r -> r.drainInto(latencies));
+            latencies.forEach((name, h) -> totalLatencies.computeIfAbsent(name, k -> new Histogram()).add(h));
+            counters.forEach((name, c) -> {
+                long total = c.sum();
+                counts.put(name, total - countedAtLastReport.getOrDefault(name, 0L));
+                countedAtLastReport.put(name, total);
+            });
+            lastReport = now;
+        }
+
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "Metrics over the last %.1f s", seconds));
+        latencies.forEach((name, h) -> lines.add(describe(name, h)));
+        counts.forEach((name, c) -> lines.add(String.format(Locale.ROOT, "%-22s %8d  %8.2f/s", name, c, c / seconds)));
+
+        if (csvPath != null) {
+            try {
+                appendCsv(csvPath, (now - start) / 1000.0, seconds, latencies, counts);
+            } catch (IOException e) {
+                lines.add("Could not write " + csvPath + ": " + e.getMessage());
+            }
+        }
+        return lines;
+    }
+
+    // everything since the start
+    public static List<String> summary() {
+        Map<String, Histogram> latencies = new TreeMap<>();
+        synchronized (reportLock) {
+            totalLatencies.forEach((name, h) -> latencies.put(name, new Histogram(h)));
+            recorders.forEach(r -> r.addTo(latencies));
+        }
+        Map<String, Long> counts = new TreeMap<>();
+        counters.forEach((name, c) -> counts.put(name, c.sum()));
+
+        double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "Metrics over %.1f s", seconds));
+        latencies.forEach((name, h) -> lines.add(describe(name, h)));
+        counts.forEach((name, c) -> lines.add(String.format(Locale.ROOT, "%-22s %8d  %8.2f/s", name, c, c / seconds)));
+        return lines;
+    }
+
+    private static void appendCsv(String path, double at, double seconds, Map<String, Histogram> latencies,
+                                  Map<String, Long> counts) throws IOException {
+        boolean empty = !new File(path).exists();
+        try (PrintWriter out = new PrintWriter(new FileWriter(path, true))) {
+            if (empty) {
+                out.println("time_s,metric,count,rate_per_s,mean_ms,p50_ms,p90_ms,p99_ms,p999_ms,max_ms");
+            }
+            latencies.forEach((name, i) -> {
+                StringBuilder row = new StringBuilder(String.format(Locale.ROOT, "%.1f,%s,%d,%.2f,%.3f",
+                        at, name, i.count(), i.count() / seconds, i.mean() / 1000));
+                for (double p : PERCENTILES) {
+                    row.append(String.format(Locale.ROOT, ",%.3f", i.percentile(p) / 1000.0));
+                }
+                row.append(String.format(Locale.ROOT, ",%.3f", i.max() / 1000.0));
+                out.println(row);
+            });
+            counts.forEach((name, c) -> out.println(String.format(Locale.ROOT, "%.1f,%s,%d,%.2f,,,,,,",
+                    at, name, c, c / seconds)));
+        }
+    }
+
+    private static String describe(String name, Histogram h) {
+        StringBuilder s = new StringBuilder(String.format(Locale.ROOT, "%-22s %8d  mean %8.2f ms",
+                name, h.count(), h.mean() / 1000));
+        for (double p : PERCENTILES) {
+            s.append(String.format(Locale.ROOT, "  p%s %8.2f", p % 1 == 0 ? String.valueOf((int) p) : String.valueOf(p),
+                    h.percentile(p) / 1000.0));
+        }
+        s.append(String.format(Locale.ROOT, "  max %8.2f", h.max() / 1000.0));
+        return s.toString();
+    }
+
+    // the latencies one thread recorded since the last report: its lock is only contended by the reports
+    private static final class Recorder {
+        private final Map<String, Histogram> latencies = new HashMap<>();
+
+        synchronized void record(String name, long micros) {
+            latencies.computeIfAbsent(name, k -> new Histogram()).record(micros);
+        }
+
+        // adds the latencies to the given ones, and starts over
+        synchronized void drainInto(Map<String, Histogram> into) {
+            latencies.forEach((name, h) -> {
+                into.computeIfAbsent(name, k -> new Histogram()).add(h);
+                h.reset();
+            });
+        }
+
+        synchronized void addTo(Map<String, Histogram> into) {
+            latencies.forEach((name, h) -> into.computeIfAbsent(name, k -> new Histogram()).add(h));
+        }
+    }
+}
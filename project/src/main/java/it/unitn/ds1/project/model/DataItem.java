@@ -1,22 +1,22 @@
 package it.unitn.ds1.project.model;
 
-import akka.actor.ActorRef;
-
-import java.util.concurrent.atomic.AtomicBoolean;
-
+// copy of an item living in a private workspace; the committed items and their locks live in ItemStore
 public class DataItem {
     private Integer value;
     private Integer version;
     private boolean touched;
 
-    private ActorRef locker;
-    private final AtomicBoolean locked = new AtomicBoolean(false);
-
     public DataItem(Integer value, Integer version) {
         this.value = value;
         this.version = version;
     }
 
+    public DataItem(Integer value, Integer version, boolean touched) {
+        this.value = value;
+        this.version = version;
+        this.touched = touched;
+    }
+
     public DataItem(DataItem other) {
         this.version = other.version;
         this.touched = false;
@@ -31,46 +31,31 @@ public class DataItem {
         return this.version;
     }
 
-    public void setValue(Integer value, ActorRef locker) {
-        if (locker == null) { // privateworkspace case
-        } else if (locker != this.locker) throw new RuntimeException(
-                "Wrong locker! " + locker + " vs " + this.locker);
+    public boolean isTouched() {
+        return this.touched;
+    }
+
+    public void setValue(Integer value) {
         this.value = value;
     }
 
-    public void setVersion(Integer version, ActorRef locker) {
-        if (locker == null) { // privateworkspace case
-        } else if (locker != this.locker) throw new RuntimeException("Wrong locker!");
+    public void setVersion(Integer version) {
         this.version = version;
     }
 
-    public void incrementVersion(ActorRef locker) {
-        if (locker == null) { // privateworkspace case
-        } else if (locker != this.locker) throw new RuntimeException("Wrong locker!");
+    public void incrementVersion() {
         if (!touched) {
             touched = true;
             this.version++;
         }
     }
 
-    public boolean acquireLock(ActorRef locker) {
-        boolean res = this.locked.compareAndSet(false, true);
-        if (res) this.locker = locker;
-        return res;
-    }
-
-    public void releaseLock() {
-        this.locker = null;
-        this.locked.set(false);
-    }
-
     @Override
     public String toString() {
         return "DataItem{" +
                 "value=" + value +
                 ", version=" + version +
                 ", touched=" + touched +
-                ", locked=" + locked +
                 '}';
     }
 }
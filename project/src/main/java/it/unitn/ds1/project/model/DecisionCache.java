@@ -0,0 +1,93 @@
+package it.unitn.ds1.project.model;
+
+import it.unitn.ds1.common.LongHashMap;
+import it.unitn.ds1.project.message.dss.decision.DSSDecision;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// Decisions of the transactions a node has retired. Nobody should need them any more, but a late
+// DSSDecisionRequest, or a late message of the transaction, may still come: they are kept for `retention` ms,
+// and at most `capacity` of them, the oldest leaving first.
+public class DecisionCache {
+    private final long retention;
+    private final int capacity;
+
+    private final LongHashMap<Entry> entries = new LongHashMap<>();
+    // oldest first: retirement times only grow
+    private final Deque<Entry> byAge = new ArrayDeque<>();
+
+    public DecisionCache(long retention, int capacity) {
+        this.retention = retention;
+        this.capacity = capacity;
+    }
+
+    public void add(long transactionID, DSSDecision decision, long commitTimestamp, long now) {
+        expire(now);
+        Entry entry = new Entry(transactionID, decision, commitTimestamp, now);
+        entries.put(transactionID, entry);
+        byAge.addLast(entry);
+        while (byAge.size() > capacity) {
+            drop(byAge.pollFirst());
+        }
+    }
+
+    public boolean contains(long transactionID) {
+        return entries.containsKey(transactionID);
+    }
+
+    // null if not (or no longer) here
+    public DSSDecision decision(long transactionID) {
+        Entry entry = entries.get(transactionID);
+        return entry == null ? null : entry.decision;
+    }
+
+    public long commitTimestamp(long transactionID) {
+        Entry entry = entries.get(transactionID);
+        return entry == null ? 0 : entry.commitTimestamp;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        byAge.clear();
+    }
+
+    private void expire(long now) {
+        while (!byAge.isEmpty() && now - byAge.peekFirst().retiredAt >= retention) {
+            drop(byAge.pollFirst());
+        }
+    }
+
+    // a transaction retired again has a newer entry, which stays
+    private void drop(Entry entry) {
+        if (entries.get(entry.transactionID) == entry) {
+            entries.remove(entry.transactionID);
+        }
+    }
+
+    private static class Entry {
+        final long transactionID;
+        final DSSDecision decision;
+        final long commitTimestamp;
+        final long retiredAt;
+
+        Entry(long transactionID, DSSDecision decision, long commitTimestamp, long retiredAt) {
+            this.transactionID = transactionID;
+            this.decision = decision;
+            this.commitTimestamp = commitTimestamp;
+            this.retiredAt = retiredAt;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DecisionCache{" +
+                "size=" + entries.size() +
+                ", retention=" + retention +
+                '}';
+    }
+}
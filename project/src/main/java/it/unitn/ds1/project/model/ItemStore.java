@@ -0,0 +1,193 @@
+package it.unitn.ds1.project.model;
+
+import it.unitn.ds1.project.persistence.Checkpointable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Storage engine for the items of a single DSS.
+// Values, versions and lock owners are kept in packed int arrays indexed by the slot KeyIndex gives to each key,
+// so no object is allocated per item and the store stays invisible to the GC no matter how many keys it holds.
+public class ItemStore implements Checkpointable {
+    public static final int NO_OWNER = -1;
+
+    // replaced, keeping the surviving items, when keys migrate in or out
+    private KeyIndex keys;
+    private int[] values;
+    private int[] versions;
+    private int[] lockOwners;
+
+    public ItemStore(int[] keys, int initialValue, int initialVersion) {
+        rekey(keys);
+        reset(initialValue, initialVersion);
+    }
+
+    // bring every item back to its initial state, dropping all locks
+    public void reset(int initialValue, int initialVersion) {
+        Arrays.fill(this.values, initialValue);
+        Arrays.fill(this.versions, initialVersion);
+        Arrays.fill(this.lockOwners, NO_OWNER);
+    }
+
+    public boolean containsKey(int key) {
+        return keys.slotOf(key) >= 0;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public int[] keys() {
+        return keys.keys();
+    }
+
+    public int getValue(int key) {
+        return values[index(key)];
+    }
+
+    public int getVersion(int key) {
+        return versions[index(key)];
+    }
+
+    // copy of the item, to be placed in a private workspace
+    public DataItem copy(int key) {
+        int i = index(key);
+        return new DataItem(values[i], versions[i]);
+    }
+
+    public void setValue(int key, int value, int owner) {
+        int i = index(key);
+        checkOwner(i, owner);
+        values[i] = value;
+    }
+
+    public void setVersion(int key, int version, int owner) {
+        int i = index(key);
+        checkOwner(i, owner);
+        versions[i] = version;
+    }
+
+    public boolean isLocked(int key) {
+        return lockOwners[index(key)] != NO_OWNER;
+    }
+
+    public boolean acquireLock(int key, int owner) {
+        int i = index(key);
+        if (lockOwners[i] != NO_OWNER) {
+            return false;
+        }
+        lockOwners[i] = owner;
+        return true;
+    }
+
+    public void releaseLock(int key) {
+        lockOwners[index(key)] = NO_OWNER;
+    }
+
+    /* -- Migration ---------------------------- */
+
+    public void export(int key, MigratedItems into) {
+        int i = index(key);
+        into.add(key, 0, values[i], versions[i]);
+    }
+
+    // take the keys over, with their newest version
+    public void adopt(MigratedItems items) {
+        rekey(keys.with(items.keys()));
+        for (int key : items.keys()) {
+            int i = index(key);
+            int newest = items.versions(key) - 1;
+            values[i] = items.value(key, newest);
+            versions[i] = items.version(key, newest);
+            lockOwners[i] = NO_OWNER;
+        }
+    }
+
+    public void drop(int[] dropped) {
+        rekey(keys.without(dropped));
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    // committed values and versions only: locks are never part of a checkpoint
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(values.length);
+        for (int i = 0; i < values.length; i++) {
+            out.writeInt(keys.keyAt(i));
+            out.writeInt(values[i]);
+            out.writeInt(versions[i]);
+        }
+    }
+
+    // the checkpoint may have been taken after keys migrated in or out: its keys are the ones I hold
+    @Override
+    public void readFrom(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        int[] checkpointKeys = new int[size];
+        int[] checkpointValues = new int[size];
+        int[] checkpointVersions = new int[size];
+        for (int i = 0; i < size; i++) {
+            checkpointKeys[i] = in.readInt();
+            checkpointValues[i] = in.readInt();
+            checkpointVersions[i] = in.readInt();
+        }
+
+        rekey(checkpointKeys);
+        System.arraycopy(checkpointValues, 0, values, 0, size);
+        System.arraycopy(checkpointVersions, 0, versions, 0, size);
+        Arrays.fill(this.lockOwners, NO_OWNER);
+    }
+
+    // move to a new set of keys: the items I keep are copied in their new slots, the new ones are left to the caller
+    private void rekey(int[] newKeys) {
+        KeyIndex newIndex = new KeyIndex(newKeys);
+        int[] newValues = new int[newKeys.length];
+        int[] newVersions = new int[newKeys.length];
+        int[] newLockOwners = new int[newKeys.length];
+        Arrays.fill(newLockOwners, NO_OWNER);
+
+        for (int i = 0; keys != null && i < keys.size(); i++) {
+            int slot = newIndex.slotOf(keys.keyAt(i));
+            if (slot >= 0) {
+                newValues[slot] = values[i];
+                newVersions[slot] = versions[i];
+                newLockOwners[slot] = lockOwners[i];
+            }
+        }
+
+        this.keys = newIndex;
+        this.values = newValues;
+        this.versions = newVersions;
+        this.lockOwners = newLockOwners;
+    }
+
+    private int index(int key) {
+        int i = keys.slotOf(key);
+        if (i < 0) {
+            throw new IllegalArgumentException("Key " + key + " is not held by this store");
+        }
+        return i;
+    }
+
+    private void checkOwner(int i, int owner) {
+        if (lockOwners[i] != owner) {
+            throw new RuntimeException("Wrong locker! " + owner + " vs " + lockOwners[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ItemStore{" +
+                "size=" + values.length +
+                '}';
+    }
+}
@@ -0,0 +1,89 @@
+package it.unitn.ds1.project.model;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Maps the keys held by a store to dense slots 0 .. size() - 1, so that the packed arrays of the stores
+// can hold any set of keys and not only a contiguous range.
+// Open addressing with linear probing on a power-of-two table of int, at most half full.
+public class KeyIndex {
+    private final int[] keys;       // key of each slot
+    private final int[] table;      // slot + 1 of the key hashed to each bucket, 0 if the bucket is free
+    private final int mask;
+    private final int shift;        // 32 - log2 of the capacity: the top bits of the hash pick the bucket
+
+    public KeyIndex(int[] keys) {
+        this.keys = keys.clone();
+
+        int capacity = Integer.highestOneBit(Math.max(2, keys.length * 2 - 1)) << 1;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        this.shift = Integer.numberOfLeadingZeros(capacity) + 1;
+
+        for (int slot = 0; slot < keys.length; slot++) {
+            int bucket = bucketOf(keys[slot]);
+            if (bucket >= 0) {
+                throw new IllegalArgumentException("Duplicate key " + keys[slot]);
+            }
+            table[-bucket - 1] = slot + 1;
+        }
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    // slot of the key, -1 if the key is not held
+    public int slotOf(int key) {
+        int bucket = bucketOf(key);
+        return bucket >= 0 ? table[bucket] - 1 : -1;
+    }
+
+    public int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public int[] keys() {
+        return keys.clone();
+    }
+
+    // my keys followed by the added ones I do not have yet
+    public int[] with(int[] added) {
+        return IntStream.concat(Arrays.stream(keys), Arrays.stream(added).filter(key -> slotOf(key) < 0))
+                .distinct().toArray();
+    }
+
+    // my keys but the removed ones
+    public int[] without(int[] removed) {
+        KeyIndex dropped = new KeyIndex(removed);
+        return Arrays.stream(keys).filter(key -> dropped.slotOf(key) < 0).toArray();
+    }
+
+    // the longest way from the bucket a key hashes to, to the one holding it: a few buckets with a good hash
+    int maxDisplacement() {
+        int max = 0;
+        for (int bucket = 0; bucket < table.length; bucket++) {
+            if (table[bucket] != 0) {
+                max = Math.max(max, (bucket - homeOf(keys[table[bucket] - 1])) & mask);
+            }
+        }
+        return max;
+    }
+
+    // Fibonacci hashing: the top bits of the product depend on every bit of the key
+    private int homeOf(int key) {
+        return (key * 0x9E3779B9) >>> shift;
+    }
+
+    // bucket holding the key, or -(free bucket) - 1 where it would go
+    private int bucketOf(int key) {
+        int bucket = homeOf(key);
+        while (table[bucket] != 0) {
+            if (keys[table[bucket] - 1] == key) {
+                return bucket;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+        return -bucket - 1;
+    }
+}
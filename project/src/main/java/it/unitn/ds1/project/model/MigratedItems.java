@@ -0,0 +1,73 @@
+package it.unitn.ds1.project.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Committed state of some keys on their way from one DSS to another: every version kept for each key,
+// oldest first. The versions of a key are packed in a single long[] as (timestamp, value, version) triples.
+public class MigratedItems implements Serializable {
+    private final TreeMap<Integer, long[]> history = new TreeMap<>();
+
+    public void add(int key, long timestamp, int value, int version) {
+        long[] versions = history.get(key);
+        versions = versions == null ? new long[3] : Arrays.copyOf(versions, versions.length + 3);
+        versions[versions.length - 3] = timestamp;
+        versions[versions.length - 2] = value;
+        versions[versions.length - 1] = version;
+        history.put(key, versions);
+    }
+
+    // newer state of some keys: it replaces what I had for them
+    public void putAll(MigratedItems newer) {
+        history.putAll(newer.history);
+    }
+
+    public void remove(int key) {
+        history.remove(key);
+    }
+
+    public int[] keys() {
+        return history.keySet().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public boolean containsKey(int key) {
+        return history.containsKey(key);
+    }
+
+    public int versions(int key) {
+        return history.get(key).length / 3;
+    }
+
+    public long timestamp(int key, int n) {
+        return history.get(key)[3 * n];
+    }
+
+    public int value(int key, int n) {
+        return (int) history.get(key)[3 * n + 1];
+    }
+
+    public int version(int key, int n) {
+        return (int) history.get(key)[3 * n + 2];
+    }
+
+    public long maxTimestamp() {
+        long max = 0;
+        for (Map.Entry<Integer, long[]> e : history.entrySet()) {
+            max = Math.max(max, e.getValue()[e.getValue().length - 3]);
+        }
+        return max;
+    }
+
+    public int size() {
+        return history.size();
+    }
+
+    @Override
+    public String toString() {
+        return "MigratedItems{" +
+                "keys=" + history.keySet() +
+                '}';
+    }
+}
@@ -0,0 +1,236 @@
+package it.unitn.ds1.project.model;
+
+import it.unitn.ds1.project.persistence.Checkpointable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Storage engine for the items of a single DSS in MVCC mode.
+// Every key keeps a ring with its last `depth` committed versions, each stamped with the commit timestamp
+// of the transaction that wrote it. As in ItemStore everything lives in packed arrays: the versions
+// of the key in slot i of the KeyIndex start at i * depth.
+public class MultiVersionStore implements Checkpointable {
+    public static final long NOT_PREPARED = 0;
+
+    private final int depth;
+
+    // replaced, keeping the surviving versions, when keys migrate in or out
+    private KeyIndex keys;
+    private int size;
+
+    private long[] timestamps;
+    private int[] values;
+    private int[] versions;
+    private int[] newest;     // slot of the newest version of each key
+    private int[] count;      // versions currently kept for each key
+
+    // prepare timestamp of the transaction holding the write lock of each key
+    private long[] preparedAt;
+
+    public MultiVersionStore(int[] keys, int depth, int initialValue, int initialVersion) {
+        this.depth = depth;
+        rekey(keys);
+        reset(initialValue, initialVersion);
+    }
+
+    // a single initial version, committed at time 0, for every item; no locks
+    public void reset(int initialValue, int initialVersion) {
+        Arrays.fill(this.count, 0);
+        Arrays.fill(this.preparedAt, NOT_PREPARED);
+        for (int i = 0; i < size; i++) {
+            append(i, initialValue, initialVersion, 0);
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return keys.slotOf(key) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int[] keys() {
+        return keys.keys();
+    }
+
+    // the newest version committed at or before the snapshot, null if it has already been pruned
+    public DataItem read(int key, long snapshot) {
+        int i = index(key);
+        for (int n = 0; n < count[i]; n++) {
+            int slot = slot(i, newest[i] - n);
+            if (timestamps[slot] <= snapshot) {
+                return new DataItem(values[slot], versions[slot]);
+            }
+        }
+        return null;
+    }
+
+    public DataItem latest(int key) {
+        int slot = slot(index(key), newest[index(key)]);
+        return new DataItem(values[slot], versions[slot]);
+    }
+
+    public long latestTimestamp(int key) {
+        return timestamps[slot(index(key), newest[index(key)])];
+    }
+
+    public long preparedAt(int key) {
+        return preparedAt[index(key)];
+    }
+
+    public boolean prepare(int key, long timestamp) {
+        int i = index(key);
+        if (preparedAt[i] != NOT_PREPARED) {
+            return false;
+        }
+        preparedAt[i] = timestamp;
+        return true;
+    }
+
+    public void release(int key) {
+        preparedAt[index(key)] = NOT_PREPARED;
+    }
+
+    // add a new committed version, dropping the oldest one if the ring is full
+    public void install(int key, int value, int version, long timestamp) {
+        append(index(key), value, version, timestamp);
+    }
+
+    /* -- Migration ---------------------------- */
+
+    public void export(int key, MigratedItems into) {
+        int i = index(key);
+        for (int n = count[i] - 1; n >= 0; n--) {
+            int slot = slot(i, newest[i] - n);
+            into.add(key, timestamps[slot], values[slot], versions[slot]);
+        }
+    }
+
+    // take the keys over with their whole history, so that older snapshots can still be served
+    public void adopt(MigratedItems items) {
+        rekey(keys.with(items.keys()));
+        for (int key : items.keys()) {
+            int i = index(key);
+            count[i] = 0;
+            preparedAt[i] = NOT_PREPARED;
+            for (int n = 0; n < items.versions(key); n++) {
+                append(i, items.value(key, n), items.version(key, n), items.timestamp(key, n));
+            }
+        }
+    }
+
+    public void drop(int[] dropped) {
+        rekey(keys.without(dropped));
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += values[slot(i, newest[i])];
+        }
+        return sum;
+    }
+
+    // every version kept, oldest first; locks are never part of a checkpoint
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(keys.keyAt(i));
+            out.writeInt(count[i]);
+            for (int n = count[i] - 1; n >= 0; n--) {
+                int slot = slot(i, newest[i] - n);
+                out.writeLong(timestamps[slot]);
+                out.writeInt(values[slot]);
+                out.writeInt(versions[slot]);
+            }
+        }
+    }
+
+    // the checkpoint may have been taken after keys migrated in or out: its keys are the ones I hold
+    @Override
+    public void readFrom(DataInputStream in) throws IOException {
+        int checkpointSize = in.readInt();
+        MigratedItems checkpointItems = new MigratedItems();
+        for (int i = 0; i < checkpointSize; i++) {
+            int key = in.readInt();
+            int kept = in.readInt();
+            for (int n = 0; n < kept; n++) {
+                long timestamp = in.readLong();
+                int value = in.readInt();
+                int version = in.readInt();
+                checkpointItems.add(key, timestamp, value, version);
+            }
+        }
+
+        // what I held is replaced by what the checkpoint holds
+        rekey(new int[0]);
+        adopt(checkpointItems);
+    }
+
+    // move to a new set of keys: the rings I keep are copied in their new slots, the new ones start empty
+    private void rekey(int[] newKeys) {
+        KeyIndex newIndex = new KeyIndex(newKeys);
+        int newSize = newKeys.length;
+        long[] newTimestamps = new long[newSize * depth];
+        int[] newValues = new int[newSize * depth];
+        int[] newVersions = new int[newSize * depth];
+        int[] newNewest = new int[newSize];
+        int[] newCount = new int[newSize];
+        long[] newPreparedAt = new long[newSize];
+
+        for (int i = 0; keys != null && i < size; i++) {
+            int j = newIndex.slotOf(keys.keyAt(i));
+            if (j >= 0) {
+                System.arraycopy(timestamps, i * depth, newTimestamps, j * depth, depth);
+                System.arraycopy(values, i * depth, newValues, j * depth, depth);
+                System.arraycopy(versions, i * depth, newVersions, j * depth, depth);
+                newNewest[j] = newest[i];
+                newCount[j] = count[i];
+                newPreparedAt[j] = preparedAt[i];
+            }
+        }
+
+        this.keys = newIndex;
+        this.size = newSize;
+        this.timestamps = newTimestamps;
+        this.values = newValues;
+        this.versions = newVersions;
+        this.newest = newNewest;
+        this.count = newCount;
+        this.preparedAt = newPreparedAt;
+    }
+
+    private void append(int i, int value, int version, long timestamp) {
+        newest[i] = count[i] == 0 ? 0 : (newest[i] + 1) % depth;
+        count[i] = Math.min(count[i] + 1, depth);
+
+        int slot = slot(i, newest[i]);
+        timestamps[slot] = timestamp;
+        values[slot] = value;
+        versions[slot] = version;
+    }
+
+    private int slot(int i, int position) {
+        return i * depth + Math.floorMod(position, depth);
+    }
+
+    private int index(int key) {
+        int i = keys.slotOf(key);
+        if (i < 0) {
+            throw new IllegalArgumentException("Key " + key + " is not held by this store");
+        }
+        return i;
+    }
+
+    @Override
+    public String toString() {
+        return "MultiVersionStore{" +
+                "size=" + size +
+                ", depth=" + depth +
+                '}';
+    }
+}
@@ -3,4 +3,24 @@ package it.unitn.ds1.project.model;
 import java.util.HashMap;
 
 public class PrivateWorkspace extends HashMap<Integer, DataItem> {
+    // when the transaction began: the snapshot it reads in MVCC, its age in 2PL
+    private long startTimestamp;
+    // MVCC only: a version the snapshot needed had already been pruned, the transaction can only abort
+    private boolean stale;
+
+    public long getStartTimestamp() {
+        return startTimestamp;
+    }
+
+    public void setStartTimestamp(long startTimestamp) {
+        this.startTimestamp = startTimestamp;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+
+    public void markStale() {
+        this.stale = true;
+    }
 }
@@ -0,0 +1,130 @@
+package it.unitn.ds1.project.model;
+
+import akka.actor.ActorRef;
+import it.unitn.ds1.project.partition.RoutingTable;
+import it.unitn.ds1.project.replication.QuorumRead;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Everything a coordinator keeps about one of its transactions, from TxnBegin until it is retired.
+// The decision itself is not here: it is kept with those of the DSSes, in AbstractNode.
+public class Transaction {
+    public final long id;
+    public final ActorRef client;
+    // start of the transaction: the snapshot its reads are served at in MVCC, its age in 2PL
+    public final long startTimestamp;
+    // the routing table current when it began
+    public final RoutingTable routing;
+
+    // the DSSes contacted: the participants of its 2PC
+    public final Set<ActorRef> participants = new HashSet<>();
+    // the participants that voted YES
+    public final Set<ActorRef> yesVoters = new HashSet<>();
+    // read-only and accepting stale values: its reads still unanswered, by key; null otherwise
+    public final Map<Integer, QuorumRead> staleReads;
+
+    // the latest prepare timestamp among the YES votes, which the commit timestamp must not precede
+    private long prepareTimestamp = 0;
+    // committing in one phase: the decision is taken by its only DSS
+    private boolean onePhase = false;
+    // the participants that have not acknowledged the decision yet; null until decided
+    private Set<ActorRef> unacknowledged = null;
+    // the client has been told the outcome
+    private boolean answered = false;
+    // some request was sent again: its answers tell nothing about the round-trip times
+    private boolean resent = false;
+    // System.nanoTime() of TxnEnd and of the decision, for the metrics; 0 until then
+    private long endedAt = 0;
+    private long decidedAt = 0;
+
+    public Transaction(long id, ActorRef client, long startTimestamp, RoutingTable routing, boolean staleReads) {
+        this.id = id;
+        this.client = client;
+        this.startTimestamp = startTimestamp;
+        this.routing = routing;
+        this.staleReads = staleReads ? new HashMap<>() : null;
+    }
+
+    public boolean isStaleRead() {
+        return staleReads != null;
+    }
+
+    public void observePrepare(long prepareTimestamp) {
+        this.prepareTimestamp = Math.max(this.prepareTimestamp, prepareTimestamp);
+    }
+
+    public long getPrepareTimestamp() {
+        return prepareTimestamp;
+    }
+
+    public boolean allVotedYes() {
+        return yesVoters.size() >= participants.size();
+    }
+
+    public boolean isOnePhase() {
+        return onePhase;
+    }
+
+    public void setOnePhase(boolean onePhase) {
+        this.onePhase = onePhase;
+    }
+
+    // from now on, the participants must acknowledge the decision
+    public void awaitAcknowledgements() {
+        this.unacknowledged = new HashSet<>(participants);
+    }
+
+    public Set<ActorRef> getUnacknowledged() {
+        return unacknowledged;
+    }
+
+    public boolean isAcknowledged() {
+        return unacknowledged != null && unacknowledged.isEmpty();
+    }
+
+    public boolean isAnswered() {
+        return answered;
+    }
+
+    public void markAnswered() {
+        this.answered = true;
+    }
+
+    public boolean isResent() {
+        return resent;
+    }
+
+    public void markResent() {
+        this.resent = true;
+    }
+
+    public long getEndedAt() {
+        return endedAt;
+    }
+
+    public void markEnded() {
+        this.endedAt = System.nanoTime();
+    }
+
+    public long getDecidedAt() {
+        return decidedAt;
+    }
+
+    public void markDecided() {
+        this.decidedAt = System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+        return "Transaction{" +
+                "id=" + TransactionID.toString(id) +
+                ", participants=" + participants.size() +
+                ", yesVoters=" + yesVoters.size() +
+                ", onePhase=" + onePhase +
+                ", answered=" + answered +
+                '}';
+    }
+}
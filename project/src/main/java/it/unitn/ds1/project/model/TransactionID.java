@@ -0,0 +1,26 @@
+package it.unitn.ds1.project.model;
+
+// Transaction IDs are packed in a long: the ID of the coordinator that assigned it in the high 32 bits,
+// a counter of that coordinator in the low 32 bits. Two coordinators never assign the same ID,
+// and a coordinator never assigns the same ID twice.
+public final class TransactionID {
+
+    private TransactionID() {
+    }
+
+    public static long of(int coordinatorID, int counter) {
+        return ((long) coordinatorID << 32) | (counter & 0xffffffffL);
+    }
+
+    public static int coordinatorOf(long transactionID) {
+        return (int) (transactionID >>> 32);
+    }
+
+    public static int counterOf(long transactionID) {
+        return (int) transactionID;
+    }
+
+    public static String toString(long transactionID) {
+        return coordinatorOf(transactionID) + "." + Integer.toUnsignedString(counterOf(transactionID));
+    }
+}
@@ -0,0 +1,103 @@
+package it.unitn.ds1.project.partition;
+
+import java.util.Arrays;
+
+// Consistent hashing: every DSS places some virtual nodes on a ring of 32-bit hashes and a key belongs
+// to the first virtual node at or after its own hash, wrapping around.
+// Adding a DSS only moves the keys that land on its new virtual nodes, instead of reshuffling everything,
+// and the number of virtual nodes of each DSS is its weight: halving it moves about half of its keys away.
+public class ConsistentHashPartitioner implements Partitioner {
+    private final int keyCount;
+    private final int partitions;
+
+    // the ring, sorted by point; owners[i] is the DSS of the virtual node at points[i]
+    private final int[] points;
+    private final int[] owners;
+
+    public ConsistentHashPartitioner(int keyCount, int[] virtualNodes) {
+        this.keyCount = keyCount;
+        this.partitions = virtualNodes.length;
+
+        int total = 0;
+        for (int n : virtualNodes) {
+            if (n < 0) {
+                throw new IllegalArgumentException("Negative number of virtual nodes: " + n);
+            }
+            total += n;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("The ring needs at least one virtual node");
+        }
+
+        // point in the high half, owner in the low half: sorting orders the ring by point,
+        // and colliding points are broken by owner so that every node builds the same ring
+        long[] ring = new long[total];
+        int next = 0;
+        for (int partition = 0; partition < partitions; partition++) {
+            for (int v = 0; v < virtualNodes[partition]; v++) {
+                int point = mix(mix(partition) ^ (v * 0x9E3779B9));
+                ring[next++] = ((long) point << 32) | partition;
+            }
+        }
+        Arrays.sort(ring);
+
+        this.points = new int[total];
+        this.owners = new int[total];
+        for (int i = 0; i < total; i++) {
+            points[i] = (int) (ring[i] >> 32);
+            owners[i] = (int) ring[i];
+        }
+    }
+
+    // same number of virtual nodes for every DSS
+    public ConsistentHashPartitioner(int keyCount, int partitions, int virtualNodes) {
+        this(keyCount, uniform(partitions, virtualNodes));
+    }
+
+    @Override
+    public int keyCount() {
+        return keyCount;
+    }
+
+    @Override
+    public int partitions() {
+        return partitions;
+    }
+
+    @Override
+    public int partitionOf(int key) {
+        if (key < 0 || key >= keyCount) {
+            throw new IllegalArgumentException("Key " + key + " is outside the keystore");
+        }
+        int i = Arrays.binarySearch(points, mix(key));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+
+    // murmur3 finalizer: consecutive keys end up far apart on the ring
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int[] uniform(int partitions, int virtualNodes) {
+        int[] nodes = new int[partitions];
+        Arrays.fill(nodes, virtualNodes);
+        return nodes;
+    }
+
+    @Override
+    public String toString() {
+        return "ConsistentHashPartitioner{" +
+                "keyCount=" + keyCount +
+                ", partitions=" + partitions +
+                ", virtualNodes=" + points.length +
+                '}';
+    }
+}
@@ -0,0 +1,93 @@
+package it.unitn.ds1.project.partition;
+
+import akka.actor.ActorRef;
+import it.unitn.ds1.project.model.MigratedItems;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// The keys a DSS is handing over to another one, as seen by the source. It is part of the state the backups
+// get, so that a backup taking over goes on with it.
+//  - COPYING: the target is getting a copy of the keys, commits made here meanwhile are forwarded to it
+//  - SWITCHING: the coordinators route new transactions to the target; the old ones are let finish here
+//  - DONE: the keys left, with these items: the target is told until it says they are safe with it
+public class Migration implements Serializable {
+
+    public enum Phase {COPYING, SWITCHING, DONE}
+
+    public final String id;
+    public final int[] keys;
+    public final int target;    // index of the target DSS
+
+    private final Set<Integer> keySet = new HashSet<>();
+    private final Set<ActorRef> undrained;
+    private Phase phase = Phase.COPYING;
+    private MigratedItems items = null;
+
+    public Migration(String id, int[] keys, int target, List<ActorRef> coordinators) {
+        this.id = id;
+        this.keys = keys.clone();
+        this.target = target;
+        Arrays.stream(keys).forEach(keySet::add);
+        this.undrained = new HashSet<>(coordinators);
+    }
+
+    // for a backup, which must not share it with me
+    public Migration(Migration migration) {
+        this.id = migration.id;
+        this.keys = migration.keys;
+        this.target = migration.target;
+        this.keySet.addAll(migration.keySet);
+        this.undrained = new HashSet<>(migration.undrained);
+        this.phase = migration.phase;
+        this.items = migration.items;
+    }
+
+    public boolean moves(int key) {
+        return keySet.contains(key);
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public void switching() {
+        phase = Phase.SWITCHING;
+    }
+
+    public void done(MigratedItems items) {
+        phase = Phase.DONE;
+        this.items = items;
+    }
+
+    public MigratedItems getItems() {
+        return items;
+    }
+
+    // coordinators that may still send transactions routed with the old table
+    public Set<ActorRef> getUndrained() {
+        return undrained;
+    }
+
+    public void drained(ActorRef coordinator) {
+        undrained.remove(coordinator);
+    }
+
+    // from now on no transaction can come for the keys: they only have to be left by the ones already here
+    public boolean isSealed() {
+        return phase != Phase.COPYING && undrained.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "Migration{" +
+                "id=" + id +
+                ", keys=" + keys.length +
+                ", target=" + target +
+                ", phase=" + phase +
+                '}';
+    }
+}
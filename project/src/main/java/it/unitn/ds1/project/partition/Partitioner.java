@@ -0,0 +1,24 @@
+package it.unitn.ds1.project.partition;
+
+import java.util.stream.IntStream;
+
+// Assigns every key of the keystore to the DSS that holds it.
+// Init uses it to tell each DSS its keys and coordinators use it to route reads and writes,
+// so the two always agree on where a key lives.
+public interface Partitioner {
+
+    enum Type {RANGE, CONSISTENT_HASH}
+
+    // keys are 0 .. keyCount() - 1
+    int keyCount();
+
+    int partitions();
+
+    // index of the DSS holding the key
+    int partitionOf(int key);
+
+    // every key held by a DSS, in increasing order; a DSS may hold any number of keys, even none
+    default int[] keysOf(int partition) {
+        return IntStream.range(0, keyCount()).filter(key -> partitionOf(key) == partition).toArray();
+    }
+}
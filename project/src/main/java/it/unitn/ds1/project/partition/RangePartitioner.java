@@ -0,0 +1,51 @@
+package it.unitn.ds1.project.partition;
+
+// The original layout: DSS i holds the contiguous range [i * keysPerPartition, (i + 1) * keysPerPartition).
+public class RangePartitioner implements Partitioner {
+    private final int partitions;
+    private final int keysPerPartition;
+
+    public RangePartitioner(int partitions, int keysPerPartition) {
+        this.partitions = partitions;
+        this.keysPerPartition = keysPerPartition;
+    }
+
+    @Override
+    public int keyCount() {
+        return partitions * keysPerPartition;
+    }
+
+    @Override
+    public int partitions() {
+        return partitions;
+    }
+
+    @Override
+    public int partitionOf(int key) {
+        checkKey(key);
+        return key / keysPerPartition;
+    }
+
+    @Override
+    public int[] keysOf(int partition) {
+        int[] keys = new int[keysPerPartition];
+        for (int i = 0; i < keysPerPartition; i++) {
+            keys[i] = partition * keysPerPartition + i;
+        }
+        return keys;
+    }
+
+    private void checkKey(int key) {
+        if (key < 0 || key >= keyCount()) {
+            throw new IllegalArgumentException("Key " + key + " is outside the keystore");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RangePartitioner{" +
+                "partitions=" + partitions +
+                ", keysPerPartition=" + keysPerPartition +
+                '}';
+    }
+}
@@ -0,0 +1,50 @@
+package it.unitn.ds1.project.partition;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Where the coordinators send each key: the partitioner, except for the keys that have migrated since.
+// A table is never modified: a migration makes a new one, and each transaction keeps routing with the table
+// that was current when it began, so that it never meets the same key at two DSSes.
+public class RoutingTable {
+    public final int epoch;
+
+    private final Partitioner partitioner;
+    private final Map<Integer, Integer> moved;
+
+    public RoutingTable(Partitioner partitioner) {
+        this(0, partitioner, Map.of());
+    }
+
+    private RoutingTable(int epoch, Partitioner partitioner, Map<Integer, Integer> moved) {
+        this.epoch = epoch;
+        this.partitioner = partitioner;
+        this.moved = moved;
+    }
+
+    public int partitionOf(int key) {
+        Integer partition = moved.get(key);
+        return partition != null ? partition : partitioner.partitionOf(key);
+    }
+
+    // the same table, with the keys now held by another DSS
+    public RoutingTable move(int[] keys, int partition) {
+        Map<Integer, Integer> nowMoved = new HashMap<>(moved);
+        for (int key : keys) {
+            if (partitioner.partitionOf(key) == partition) {
+                nowMoved.remove(key);   // back home
+            } else {
+                nowMoved.put(key, partition);
+            }
+        }
+        return new RoutingTable(epoch + 1, partitioner, nowMoved);
+    }
+
+    @Override
+    public String toString() {
+        return "RoutingTable{" +
+                "epoch=" + epoch +
+                ", moved=" + moved.size() +
+                '}';
+    }
+}
@@ -0,0 +1,12 @@
+package it.unitn.ds1.project.persistence;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// the committed state of a storage engine, as saved in and loaded from a checkpoint
+public interface Checkpointable {
+    void writeTo(DataOutputStream out) throws IOException;
+
+    void readFrom(DataInputStream in) throws IOException;
+}
@@ -0,0 +1,166 @@
+package it.unitn.ds1.project.persistence;
+
+import it.unitn.ds1.project.message.dss.decision.DSSDecision;
+import it.unitn.ds1.project.message.dss.vote.DSSVote;
+import it.unitn.ds1.project.model.DataItem;
+import it.unitn.ds1.project.model.PrivateWorkspace;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// a single entry of the write-ahead log: the vote of a DSS, the decision it learned, or the end of a transaction
+// whose decision the coordinator is known to have, after which it is forgotten
+public class LogRecord {
+
+    public enum Type {VOTE, DECISION, FORGET}
+
+    public final Type type;
+    public final long transactionID;
+    // prepare timestamp of a vote, commit timestamp of a decision
+    public final long timestamp;
+
+    // VOTE only
+    public final DSSVote vote;
+    public final String coordinatorPath;
+    public final List<String> participantPaths;
+    public final PrivateWorkspace workspace;
+
+    // DECISION only
+    public final DSSDecision decision;
+
+    private LogRecord(Type type, long transactionID, long timestamp, DSSVote vote, String coordinatorPath,
+                      List<String> participantPaths, PrivateWorkspace workspace, DSSDecision decision) {
+        this.type = type;
+        this.transactionID = transactionID;
+        this.timestamp = timestamp;
+        this.vote = vote;
+        this.coordinatorPath = coordinatorPath;
+        this.participantPaths = participantPaths;
+        this.workspace = workspace;
+        this.decision = decision;
+    }
+
+    // A YES vote carries everything needed to re-lock the items and apply the writes after a crash,
+    // and to run the termination protocol with the other participants.
+    public static LogRecord vote(long transactionID, long timestamp, DSSVote vote, String coordinatorPath,
+                                 List<String> participantPaths, PrivateWorkspace workspace) {
+        return new LogRecord(Type.VOTE, transactionID, timestamp, vote, coordinatorPath == null ? "" : coordinatorPath,
+                participantPaths == null ? List.of() : participantPaths,
+                workspace == null ? new PrivateWorkspace() : workspace, null);
+    }
+
+    public static LogRecord decision(long transactionID, long timestamp, DSSDecision decision) {
+        return new LogRecord(Type.DECISION, transactionID, timestamp, null, null, null, null, decision);
+    }
+
+    public static LogRecord forget(long transactionID) {
+        return new LogRecord(Type.FORGET, transactionID, 0, null, null, null, null, null);
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(type.ordinal());
+        out.writeLong(transactionID);
+        out.writeLong(timestamp);
+
+        switch (type) {
+            case VOTE:
+                out.writeByte(vote.ordinal());
+                out.writeUTF(coordinatorPath);
+                out.writeInt(participantPaths.size());
+                for (String participantPath : participantPaths) {
+                    out.writeUTF(participantPath);
+                }
+                out.writeInt(workspace.size());
+                for (Map.Entry<Integer, DataItem> e : workspace.entrySet()) {
+                    out.writeInt(e.getKey());
+                    out.writeInt(e.getValue().getValue());
+                    out.writeInt(e.getValue().getVersion());
+                    out.writeBoolean(e.getValue().isTouched());
+                }
+                break;
+            case DECISION:
+                out.writeByte(decision.ordinal());
+                break;
+            case FORGET:
+                break;
+        }
+    }
+
+    static LogRecord readFrom(DataInputStream in) throws IOException {
+        Type type = Type.values()[in.readByte()];
+        long transactionID = in.readLong();
+        long timestamp = in.readLong();
+
+        switch (type) {
+            case VOTE:
+                DSSVote vote = DSSVote.values()[in.readByte()];
+                String coordinatorPath = in.readUTF();
+                List<String> participantPaths = new ArrayList<>();
+                int participants = in.readInt();
+                for (int i = 0; i < participants; i++) {
+                    participantPaths.add(in.readUTF());
+                }
+                PrivateWorkspace workspace = new PrivateWorkspace();
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    int key = in.readInt();
+                    int value = in.readInt();
+                    int version = in.readInt();
+                    boolean touched = in.readBoolean();
+                    workspace.put(key, new DataItem(value, version, touched));
+                }
+                return new LogRecord(type, transactionID, timestamp, vote, coordinatorPath, participantPaths, workspace, null);
+            case DECISION:
+                DSSDecision decision = DSSDecision.values()[in.readByte()];
+                return decision(transactionID, timestamp, decision);
+            case FORGET:
+                return forget(transactionID);
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    // the records in their log format, to ship them to another node
+    public static byte[] encode(List<LogRecord> records) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(records.size());
+            for (LogRecord record : records) {
+                record.writeTo(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static List<LogRecord> decode(byte[] encoded) {
+        List<LogRecord> records = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                records.add(readFrom(in));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return records;
+    }
+
+    @Override
+    public String toString() {
+        return "LogRecord{" +
+                "type=" + type +
+                ", transactionID=" + transactionID +
+                (type == Type.VOTE ? ", vote=" + vote + ", items=" + workspace.size()
+                        : type == Type.DECISION ? ", decision=" + decision : "") +
+                '}';
+    }
+}
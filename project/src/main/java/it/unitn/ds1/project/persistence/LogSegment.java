@@ -0,0 +1,126 @@
+package it.unitn.ds1.project.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// A fixed-size, memory-mapped file holding a contiguous run of log records.
+// Every record is framed as [length][crc][payload]; a zero length marks the end of the written part,
+// and a bad checksum marks a torn write, so both are where replay stops.
+class LogSegment {
+    private static final int HEADER_SIZE = 8;
+
+    final long index;
+    private MappedByteBuffer buffer;        // null once closed
+
+    // everything before this position has been forced to disk
+    private int flushedPosition;
+
+    private LogSegment(long index, MappedByteBuffer buffer) {
+        this.index = index;
+        this.buffer = buffer;
+        this.flushedPosition = buffer.position();
+    }
+
+    static LogSegment create(Path file, long index, int size) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new LogSegment(index, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static List<LogRecord> read(Path file) {
+        List<LogRecord> records = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            while (buffer.remaining() >= HEADER_SIZE) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                if (checksum(payload) != checksum) {
+                    break;
+                }
+                records.add(LogRecord.readFrom(new DataInputStream(new ByteArrayInputStream(payload))));
+            }
+            unmap(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return records;
+    }
+
+    boolean fits(byte[] payload) {
+        // keep room for the zero length that terminates the segment
+        return buffer.remaining() >= payload.length + HEADER_SIZE + 4;
+    }
+
+    void append(byte[] payload) {
+        buffer.putInt(payload.length);
+        buffer.putInt(checksum(payload));
+        buffer.put(payload);
+    }
+
+    boolean hasUnflushed() {
+        return buffer.position() > flushedPosition;
+    }
+
+    void force() {
+        if (hasUnflushed()) {
+            buffer.force();
+            flushedPosition = buffer.position();
+        }
+    }
+
+    // forget whatever was appended after the last force, as a crash would
+    void discardUnflushed() {
+        for (int i = flushedPosition; i < buffer.position(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        buffer.position(flushedPosition);
+    }
+
+    // Unmaps the file right away rather than whenever the buffer is collected, so that the mapped segments do not
+    // pile up until a GC, nor keep a deleted file around. Nothing may be appended or forced afterwards.
+    void close() {
+        if (buffer != null) {
+            unmap(buffer);
+            buffer = null;
+        }
+    }
+
+    // the JDK has no public API to unmap a buffer: the cleaner of sun.misc.Unsafe does it, else the GC will
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // left to the GC
+        }
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
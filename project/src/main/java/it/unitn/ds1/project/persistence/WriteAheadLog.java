@@ -0,0 +1,211 @@
+package it.unitn.ds1.project.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Log of a DSS, made of fixed-size memory-mapped segments plus a checkpoint of the whole state.
+//
+// Group commit: append() only copies a record into the mapped segment, flush() forces all the
+// records appended since the previous flush with a single msync.
+// Checkpoint: the state is written to a new checkpoint file that names the first segment still needed,
+// after which all older segments are deleted; recovery loads the checkpoint and replays only the tail.
+// The log only ever deletes the files it names itself, whatever else the directory holds. A segment is unmapped
+// once it is complete and durable, or deleted.
+public class WriteAheadLog {
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final Pattern SEGMENT = Pattern.compile(SEGMENT_PREFIX + "\\d+\\.log");
+
+    private final Path directory;
+    private final int segmentSize;
+
+    private LogSegment current;
+    private final List<LogSegment> unflushed = new ArrayList<>();
+    private int pendingRecords = 0;
+    private int recordsSinceCheckpoint = 0;
+
+    public WriteAheadLog(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        // every run starts from an empty log
+        try {
+            Files.createDirectories(directory);
+            for (Path segment : segments()) {
+                Files.delete(segment);
+            }
+            Files.deleteIfExists(directory.resolve(CHECKPOINT));
+            Files.deleteIfExists(directory.resolve(CHECKPOINT + ".tmp"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.current = LogSegment.create(segmentPath(0), 0, segmentSize);
+    }
+
+    public void append(LogRecord record) {
+        byte[] payload = serialize(record);
+        if (payload.length + 12 > segmentSize) {
+            throw new IllegalArgumentException("Record of " + payload.length + " bytes does not fit in a segment");
+        }
+
+        if (!current.fits(payload)) {
+            roll();
+        }
+        current.append(payload);
+        pendingRecords++;
+        recordsSinceCheckpoint++;
+    }
+
+    public int pendingRecords() {
+        return pendingRecords;
+    }
+
+    public int recordsSinceCheckpoint() {
+        return recordsSinceCheckpoint;
+    }
+
+    // make every record appended so far durable; returns how many were committed by this flush
+    public int flush() {
+        int flushed = pendingRecords;
+        unflushed.forEach(segment -> {
+            segment.force();
+            segment.close();
+        });
+        unflushed.clear();
+        current.force();
+        pendingRecords = 0;
+        return flushed;
+    }
+
+    // what a crash does to records that were never flushed
+    public void discardPending() {
+        unflushed.forEach(segment -> {
+            segment.discardUnflushed();
+            segment.close();
+        });
+        unflushed.clear();
+        current.discardUnflushed();
+        pendingRecords = 0;
+    }
+
+    // Persist items and the per-transaction state (as records to be replayed on top of them),
+    // then drop the segments that the checkpoint made useless.
+    // Must be called right after flush(), so that the state matches the durable log.
+    public void checkpoint(Checkpointable items, List<LogRecord> state) {
+        roll();
+        long firstSegment = current.index;
+
+        Path temporary = directory.resolve(CHECKPOINT + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.SYNC))) {
+            out.writeLong(firstSegment);
+            items.writeTo(out);
+            out.writeInt(state.size());
+            for (LogRecord record : state) {
+                record.writeTo(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // the checkpoint holds whatever they had
+        unflushed.forEach(LogSegment::close);
+        unflushed.clear();
+        try {
+            Files.move(temporary, directory.resolve(CHECKPOINT),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            for (Path segment : segments()) {
+                if (segmentIndex(segment) < firstSegment) {
+                    Files.delete(segment);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        recordsSinceCheckpoint = 0;
+    }
+
+    // load the latest checkpoint into items and return the records to replay on top of it, in order
+    public List<LogRecord> replay(Checkpointable items) {
+        List<LogRecord> records = new ArrayList<>();
+        long firstSegment = 0;
+
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        if (Files.exists(checkpoint)) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(checkpoint))) {
+                firstSegment = in.readLong();
+                items.readFrom(in);
+                int size = in.readInt();
+                for (int i = 0; i < size; i++) {
+                    records.add(LogRecord.readFrom(in));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        for (Path segment : segments()) {
+            if (segmentIndex(segment) >= firstSegment) {
+                records.addAll(LogSegment.read(segment));
+            }
+        }
+        return records;
+    }
+
+    // flush and unmap everything: the log is not to be used anymore
+    public void close() {
+        flush();
+        current.close();
+    }
+
+    private void roll() {
+        if (current.hasUnflushed()) {
+            unflushed.add(current);
+        } else {
+            current.close();
+        }
+        current = LogSegment.create(segmentPath(current.index + 1), current.index + 1, segmentSize);
+    }
+
+    private List<Path> segments() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> SEGMENT.matcher(f.getFileName().toString()).matches())
+                    .sorted(Comparator.comparingLong(WriteAheadLog::segmentIndex))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("%s%08d.log", SEGMENT_PREFIX, index));
+    }
+
+    private static long segmentIndex(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - ".log".length()));
+    }
+
+    private static byte[] serialize(LogRecord record) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            record.writeTo(new DataOutputStream(payload));
+            return payload.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package it.unitn.ds1.project.replication;
+
+import akka.actor.ActorRef;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The backups of a partition that are in sync with its primary, as seen by the primary.
+// A backup is in sync from the moment it asks for the whole state; from then on it gets every log record,
+// and a reply that depends on a record can only leave once a quorum of the backups in sync has acknowledged it.
+// The messages to the backups are numbered by rounds, and a backup acknowledges the last round it got: a reply
+// also waits for a quorum to acknowledge a round sent after it, so a primary that has been replaced without
+// knowing cannot answer anymore. A backup that falls behind for too long is dropped, and has to ask for the
+// whole state again.
+public class BackupTracker {
+    public static final long NOTHING = -1;
+
+    private final List<ActorRef> backups;
+    // last record and last round acknowledged by each backup in sync
+    private final Map<ActorRef, Long> acked = new HashMap<>();
+    private final Map<ActorRef, Long> confirmed = new HashMap<>();
+    // since when each backup in sync has been missing some acknowledgement
+    private final Map<ActorRef, Long> laggingSince = new HashMap<>();
+    private long round = 0;
+
+    // the replicas of the partition, in the order they take over, one of them being the primary
+    public BackupTracker(List<ActorRef> replicas, ActorRef primary) {
+        this.backups = new ArrayList<>(replicas);
+        this.backups.remove(primary);
+    }
+
+    public List<ActorRef> backups() {
+        return backups;
+    }
+
+    // in the order they take over
+    public List<ActorRef> inSync() {
+        List<ActorRef> inSync = new ArrayList<>();
+        backups.stream().filter(acked::containsKey).forEach(inSync::add);
+        return inSync;
+    }
+
+    // the backup is getting the whole state: it has acknowledged nothing yet
+    public void add(ActorRef backup, long now) {
+        acked.put(backup, NOTHING);
+        confirmed.put(backup, NOTHING);
+        laggingSince.put(backup, now);
+    }
+
+    public void ack(ActorRef backup, long seq, long round, long now) {
+        if (!acked.containsKey(backup)) {
+            return; // dropped meanwhile
+        }
+        acked.merge(backup, seq, Math::max);
+        confirmed.merge(backup, round, Math::max);
+        if (confirmed.get(backup) >= this.round) {
+            laggingSince.remove(backup);
+        } else {
+            laggingSince.put(backup, now);
+        }
+    }
+
+    // the round of the last message sent to the backups
+    public long round() {
+        return round;
+    }
+
+    // a message is about to be sent to every backup in sync: its round
+    public long nextRound(long now) {
+        round++;
+        confirmed.keySet().forEach(backup -> laggingSince.putIfAbsent(backup, now));
+        return round;
+    }
+
+    // the backups that have not acknowledged anything for longer than timeout
+    public List<ActorRef> dropLagging(long now, long timeout) {
+        List<ActorRef> dropped = new ArrayList<>();
+        laggingSince.forEach((backup, since) -> {
+            if (now - since > timeout) {
+                dropped.add(backup);
+            }
+        });
+        dropped.forEach(backup -> {
+            acked.remove(backup);
+            confirmed.remove(backup);
+            laggingSince.remove(backup);
+        });
+        return dropped;
+    }
+
+    // the last record that quorum backups in sync have, NOTHING if fewer than quorum are in sync: the replies
+    // wait until enough of them are back, as a smaller quorum would not meet the electorate of the next primary
+    public long durable(int quorum) {
+        return quorumOf(acked.values(), quorum);
+    }
+
+    // the last round that quorum backups in sync have acknowledged, NOTHING if fewer than quorum are in sync
+    public long confirmed(int quorum) {
+        return quorumOf(confirmed.values(), quorum);
+    }
+
+    private static long quorumOf(Collection<Long> values, int quorum) {
+        if (quorum <= 0) {
+            return Long.MAX_VALUE;
+        }
+        if (values.size() < quorum) {
+            return NOTHING;
+        }
+        return values.stream().sorted(Comparator.reverseOrder())
+                .skip(quorum - 1).findFirst().orElseThrow();
+    }
+
+    // how many of the backups a new primary must hear from, itself included, to be sure that one of them has
+    // every record a quorum acknowledged; all the backups of the partition count, in sync or not, as any
+    // quorum of them may have acknowledged the last records
+    public static int electorate(int backups, int quorum) {
+        return backups - quorum + 1;
+    }
+
+    public void clear() {
+        acked.clear();
+        confirmed.clear();
+        laggingSince.clear();
+    }
+}
@@ -0,0 +1,42 @@
+package it.unitn.ds1.project.replication;
+
+import akka.actor.ActorRef;
+
+import java.util.HashSet;
+import java.util.Set;
+
+// The answers to a read sent to a quorum of the replicas of a key: the value with the highest version wins,
+// and the read is over once enough distinct replicas have answered.
+public class QuorumRead {
+    private final int quorum;
+    private final Set<ActorRef> answered = new HashSet<>();
+    private ActorRef settler = null;
+    private int value;
+    private int version = -1;
+
+    public QuorumRead(int quorum) {
+        this.quorum = quorum;
+    }
+
+    public void answer(ActorRef replica, int value, int version) {
+        if (answered.add(replica) && version > this.version) {
+            this.value = value;
+            this.version = version;
+        }
+    }
+
+    // the quorum did not answer in time: the answer of the primary, which has the latest commits, is enough;
+    // true if it has already come
+    public boolean settleWith(ActorRef primary) {
+        settler = primary;
+        return answered.contains(primary);
+    }
+
+    public boolean isComplete() {
+        return answered.size() >= quorum || (settler != null && answered.contains(settler));
+    }
+
+    public int value() {
+        return value;
+    }
+}
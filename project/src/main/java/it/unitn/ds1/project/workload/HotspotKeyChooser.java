@@ -0,0 +1,25 @@
+package it.unitn.ds1.project.workload;
+
+import java.util.Random;
+
+// A hot set, the first hotKeyFraction of the keys, gets hotOpFraction of the picks; the rest of the picks
+// go to the other keys. Uniform within each of the two sets.
+public class HotspotKeyChooser implements KeyChooser {
+    private final int keyCount;
+    private final int hotKeys;
+    private final double hotOpFraction;
+
+    public HotspotKeyChooser(int keyCount, double hotKeyFraction, double hotOpFraction) {
+        this.keyCount = keyCount;
+        this.hotKeys = Math.max(1, Math.min(keyCount, (int) Math.round(keyCount * hotKeyFraction)));
+        this.hotOpFraction = hotOpFraction;
+    }
+
+    @Override
+    public int next(Random r) {
+        if (hotKeys == keyCount || r.nextDouble() < hotOpFraction) {
+            return r.nextInt(hotKeys);
+        }
+        return hotKeys + r.nextInt(keyCount - hotKeys);
+    }
+}
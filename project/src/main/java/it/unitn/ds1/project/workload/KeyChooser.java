@@ -0,0 +1,16 @@
+package it.unitn.ds1.project.workload;
+
+import java.util.Random;
+
+// Picks the keys a client reads and writes, following some distribution over 0 .. keyCount - 1.
+// Each client has its own: LATEST remembers what this client has written.
+public interface KeyChooser {
+
+    enum Type {UNIFORM, ZIPFIAN, HOTSPOT, LATEST}
+
+    int next(Random r);
+
+    // the client has just written the key
+    default void written(int key) {
+    }
+}
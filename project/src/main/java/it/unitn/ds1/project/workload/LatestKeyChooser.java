@@ -0,0 +1,29 @@
+package it.unitn.ds1.project.workload;
+
+import java.util.Random;
+
+// The keys just written are the hottest: the distance back from the last key this client wrote is Zipfian,
+// so a client keeps going back to what it has just touched. Before any write, it starts from a random key.
+public class LatestKeyChooser implements KeyChooser {
+    private final int keyCount;
+    private final ZipfianKeyChooser distance;
+    private int latest = -1;
+
+    public LatestKeyChooser(int keyCount, double theta) {
+        this.keyCount = keyCount;
+        this.distance = new ZipfianKeyChooser(keyCount, theta);
+    }
+
+    @Override
+    public int next(Random r) {
+        if (latest < 0) {
+            latest = r.nextInt(keyCount);
+        }
+        return Math.floorMod(latest - distance.next(r), keyCount);
+    }
+
+    @Override
+    public void written(int key) {
+        latest = key;
+    }
+}
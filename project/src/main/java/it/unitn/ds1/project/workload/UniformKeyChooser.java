@@ -0,0 +1,17 @@
+package it.unitn.ds1.project.workload;
+
+import java.util.Random;
+
+// every key equally likely
+public class UniformKeyChooser implements KeyChooser {
+    private final int keyCount;
+
+    public UniformKeyChooser(int keyCount) {
+        this.keyCount = keyCount;
+    }
+
+    @Override
+    public int next(Random r) {
+        return r.nextInt(keyCount);
+    }
+}
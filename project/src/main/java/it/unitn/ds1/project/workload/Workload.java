@@ -0,0 +1,91 @@
+package it.unitn.ds1.project.workload;
+
+import java.util.Random;
+
+// The load every client generates: how its transactions arrive, which keys they touch, how many operations
+// they have and how many of those write. The Config of the run holds it, and the Cluster hands it to the clients.
+public class Workload {
+
+    // CLOSED: a client keeps inFlight TXNs open, the next one beginning (after a pause) when one ends;
+    // OPEN: a client begins TXNs at arrivalRate per second (Poisson arrivals), however many are still open
+    public enum Mode {CLOSED, OPEN}
+
+    public final Mode mode;
+    public final int inFlight;
+    public final double arrivalRate;
+
+    public final KeyChooser.Type keys;
+    public final double zipfTheta;          // ZIPFIAN and LATEST
+    public final double hotKeyFraction;     // HOTSPOT
+    public final double hotOpFraction;      // HOTSPOT
+
+    public final double writeProbability;   // each operation reads two keys, then writes them with this probability
+    public final int minTxnLength;          // operations per TXN, uniform in [minTxnLength, maxTxnLength]
+    public final int maxTxnLength;
+
+    public Workload(Mode mode, int inFlight, double arrivalRate,
+                    KeyChooser.Type keys, double zipfTheta, double hotKeyFraction, double hotOpFraction,
+                    double writeProbability, int minTxnLength, int maxTxnLength) {
+        if (mode == Mode.CLOSED && inFlight < 1) {
+            throw new IllegalArgumentException("A closed-loop client needs at least one TXN in flight: " + inFlight);
+        }
+        if (mode == Mode.OPEN && arrivalRate <= 0) {
+            throw new IllegalArgumentException("An open-loop client needs a positive arrival rate: " + arrivalRate);
+        }
+        if (!isFraction(hotKeyFraction) || !isFraction(hotOpFraction) || !isFraction(writeProbability)) {
+            throw new IllegalArgumentException("Fractions and probabilities must be in [0, 1]: hot keys "
+                    + hotKeyFraction + ", hot operations " + hotOpFraction + ", writes " + writeProbability);
+        }
+        if (minTxnLength < 1 || maxTxnLength < minTxnLength) {
+            throw new IllegalArgumentException("Bad TXN length range: " + minTxnLength + " .. " + maxTxnLength);
+        }
+        this.mode = mode;
+        this.inFlight = inFlight;
+        this.arrivalRate = arrivalRate;
+        this.keys = keys;
+        this.zipfTheta = zipfTheta;
+        this.hotKeyFraction = hotKeyFraction;
+        this.hotOpFraction = hotOpFraction;
+        this.writeProbability = writeProbability;
+        this.minTxnLength = minTxnLength;
+        this.maxTxnLength = maxTxnLength;
+    }
+
+    private static boolean isFraction(double x) {
+        return x >= 0 && x <= 1;
+    }
+
+    // a new chooser for each client, which may keep some state of its own
+    public KeyChooser keyChooser(int keyCount) {
+        switch (keys) {
+            case ZIPFIAN:
+                return new ZipfianKeyChooser(keyCount, zipfTheta);
+            case HOTSPOT:
+                return new HotspotKeyChooser(keyCount, hotKeyFraction, hotOpFraction);
+            case LATEST:
+                return new LatestKeyChooser(keyCount, zipfTheta);
+            default:
+                return new UniformKeyChooser(keyCount);
+        }
+    }
+
+    public int txnLength(Random r) {
+        return minTxnLength + r.nextInt(maxTxnLength - minTxnLength + 1);
+    }
+
+    // time to the next arrival of an open-loop client, ms: exponential, with mean 1000 / arrivalRate
+    public int interArrival(Random r) {
+        return (int) Math.round(-Math.log(1 - r.nextDouble()) * 1000 / arrivalRate);
+    }
+
+    @Override
+    public String toString() {
+        return "Workload{" +
+                "mode=" + mode +
+                (mode == Mode.CLOSED ? ", inFlight=" + inFlight : ", arrivalRate=" + arrivalRate) +
+                ", keys=" + keys +
+                ", writeProbability=" + writeProbability +
+                ", txnLength=" + minTxnLength + ".." + maxTxnLength +
+                '}';
+    }
+}
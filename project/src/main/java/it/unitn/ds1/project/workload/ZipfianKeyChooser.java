@@ -0,0 +1,46 @@
+package it.unitn.ds1.project.workload;
+
+import java.util.Random;
+
+// Key k is picked with probability proportional to 1 / (k + 1)^theta: key 0 is the hottest, and the higher theta,
+// the more the few first keys get. Gray et al.'s generator ("Quickly generating billion-record synthetic
+// databases"), the one YCSB uses: constant time per key, after a pass over the keys to compute zeta(n).
+public class ZipfianKeyChooser implements KeyChooser {
+    private final int keyCount;
+    private final double theta;
+    private final double zetaN;
+    private final double alpha;
+    private final double eta;
+
+    public ZipfianKeyChooser(int keyCount, double theta) {
+        if (theta <= 0 || theta >= 1) {
+            throw new IllegalArgumentException("Zipfian theta must be in (0, 1): " + theta);
+        }
+        this.keyCount = keyCount;
+        this.theta = theta;
+        this.zetaN = zeta(keyCount, theta);
+        this.alpha = 1 / (1 - theta);
+        this.eta = (1 - Math.pow(2.0 / keyCount, 1 - theta)) / (1 - zeta(2, theta) / zetaN);
+    }
+
+    private static double zeta(int n, double theta) {
+        double sum = 0;
+        for (int i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+
+    @Override
+    public int next(Random r) {
+        double u = r.nextDouble();
+        double uz = u * zetaN;
+        if (uz < 1) {
+            return 0;
+        }
+        if (uz < 1 + Math.pow(0.5, theta)) {
+            return 1;
+        }
+        return Math.min(keyCount - 1, (int) (keyCount * Math.pow(eta * u - eta + 1, alpha)));
+    }
+}
@@ -0,0 +1,155 @@
+package it.unitn.ds1.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongHashMapTest {
+    // the capacity of a new map, which holds up to half of it before growing
+    private static final int CAPACITY = 16;
+
+    private static void assertSame(Map<Long, String> expected, LongHashMap<String> map) {
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key), "value of " + key));
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(expected.keySet().stream().mapToLong(Long::longValue).sorted().toArray(), keys);
+    }
+
+    // keys whose home slot, in a new map, is one of the given ones
+    private static List<Long> keysHomedAt(int count, int... slots) {
+        List<Long> keys = new ArrayList<>();
+        for (long key = 0; keys.size() < count; key++) {
+            int home = LongHashMap.hash(key) & (CAPACITY - 1);
+            if (Arrays.stream(slots).anyMatch(slot -> slot == home)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    @Test
+    void putGetRemove() {
+        LongHashMap<String> map = new LongHashMap<>();
+        assertNull(map.put(1, "a"));
+        assertEquals("a", map.put(1, "b"));
+        assertEquals("b", map.get(1));
+        assertTrue(map.containsKey(1));
+        assertNull(map.get(2));
+        assertEquals("z", map.getOrDefault(2, "z"));
+        assertEquals("b", map.remove(1));
+        assertNull(map.remove(1));
+        assertTrue(map.isEmpty());
+        assertThrows(NullPointerException.class, () -> map.put(3, null));
+    }
+
+    // The run starts in the last slots and wraps around to the first ones: removing any of its keys must shift
+    // back the ones after it, across the end of the table, without losing those homed after the hole.
+    @Test
+    void removeInsideAWrappedRun() {
+        List<Long> keys = keysHomedAt(CAPACITY / 2, CAPACITY - 2, CAPACITY - 1, 0);
+        for (int first = 0; first < keys.size(); first++) {
+            for (int second = 0; second < keys.size(); second++) {
+                LongHashMap<String> map = new LongHashMap<>();
+                Map<Long, String> expected = new HashMap<>();
+                for (long key : keys) {
+                    map.put(key, "v" + key);
+                    expected.put(key, "v" + key);
+                }
+                assertSame(expected, map);
+
+                for (long removed : new long[]{keys.get(first), keys.get(second)}) {
+                    assertEquals(expected.remove(removed), map.remove(removed));
+                    assertFalse(map.containsKey(removed));
+                    assertSame(expected, map);
+                }
+
+                // the slots freed are reused
+                map.put(keys.get(first), "again");
+                expected.put(keys.get(first), "again");
+                assertSame(expected, map);
+            }
+        }
+    }
+
+    // the map grows while keys come and go, many of them in the same runs
+    @Test
+    void resizeDuringInsertsAndRemoves() {
+        LongHashMap<String> map = new LongHashMap<>();
+        Map<Long, String> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            // the same counter at several coordinators, as in TransactionID: only the high bits differ
+            long key = ((long) (i % 7) << 32) | (i / 7);
+            map.put(key, "v" + i);
+            expected.put(key, "v" + i);
+            if (i % 3 == 0) {
+                long old = ((long) ((i / 2) % 7) << 32) | (i / 14);
+                assertEquals(expected.remove(old), map.remove(old));
+            }
+            if (Integer.bitCount(expected.size()) == 1) {
+                // right after a resize
+                assertSame(expected, map);
+            }
+        }
+        assertSame(expected, map);
+
+        for (long key : map.keys()) {
+            if (key % 2 == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+        assertSame(expected, map);
+    }
+
+    @Test
+    void randomizedAgainstHashMap() {
+        Random r = new Random(42);
+        LongHashMap<String> map = new LongHashMap<>();
+        Map<Long, String> expected = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            // few keys, so that they collide and come back often; some with only high bits set
+            long key = r.nextInt(2000);
+            if (r.nextBoolean()) {
+                key <<= 40;
+            }
+            switch (r.nextInt(5)) {
+                case 0:
+                case 1:
+                    assertEquals(expected.put(key, "v" + i), map.put(key, "v" + i));
+                    break;
+                case 2:
+                    assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                case 3:
+                    long k = key;
+                    assertEquals(expected.computeIfAbsent(k, x -> "c" + k), map.computeIfAbsent(k, x -> "c" + k));
+                    break;
+                default:
+                    assertEquals(expected.get(key), map.get(key));
+                    assertEquals(expected.containsKey(key), map.containsKey(key));
+                    break;
+            }
+            assertEquals(expected.size(), map.size());
+            if (i % 10000 == 0) {
+                assertSame(expected, map);
+            }
+        }
+        assertSame(expected, map);
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.keys().length);
+    }
+}
@@ -0,0 +1,42 @@
+package it.unitn.ds1.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongHashSetTest {
+
+    @Test
+    void randomizedAgainstHashSet() {
+        Random r = new Random(7);
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 100000; i++) {
+            long value = ((long) r.nextInt(4) << 32) | r.nextInt(500);
+            if (r.nextInt(3) == 0) {
+                assertEquals(expected.remove(value), set.remove(value));
+            } else {
+                assertEquals(expected.add(value), set.add(value));
+            }
+            assertEquals(expected.contains(value), set.contains(value));
+            assertEquals(expected.size(), set.size());
+        }
+
+        long[] values = set.toArray();
+        Arrays.sort(values);
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).sorted().toArray(), values);
+
+        // going through a copy while removing
+        for (long value : set.toArray()) {
+            set.remove(value);
+        }
+        assertTrue(set.isEmpty());
+    }
+}
@@ -0,0 +1,172 @@
+package it.unitn.ds1.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+    // as the wheel of a node: TIMER_TICK ms per tick, TIMER_WHEEL_SIZE buckets
+    private static final int TICK = 100;
+    private static final int SIZE = 512;
+    private static final int ROUND = TICK * SIZE;
+
+    // Advances the wheel at every tick until the given time, as the tick messages of a node would: returns when
+    // each key fired. A key that fired twice fails.
+    private static Map<Long, Long> runUntil(TimingWheel wheel, long until) {
+        Map<Long, Long> fired = new HashMap<>();
+        for (long now = wheel.nextTickAt(); now <= until; now = wheel.nextTickAt()) {
+            long at = now;
+            wheel.advance(now, key -> assertNull(fired.put(key, at), "key " + key + " fired twice"));
+        }
+        return fired;
+    }
+
+    @Test
+    void sizeMustBeAPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel(TICK, 500));
+    }
+
+    @Test
+    void cancel() {
+        TimingWheel wheel = new TimingWheel(TICK, SIZE);
+        // all in the same bucket, so that cancelling unlinks the head, the middle and the tail of its list
+        for (long key = 0; key < 5; key++) {
+            wheel.schedule(key, 1000, 0);
+        }
+        assertTrue(wheel.cancel(4));
+        assertTrue(wheel.cancel(2));
+        assertTrue(wheel.cancel(0));
+        assertFalse(wheel.cancel(2));
+        assertFalse(wheel.cancel(99));
+        assertFalse(wheel.isScheduled(2));
+        assertTrue(wheel.isScheduled(3));
+        assertEquals(2, wheel.size());
+
+        Map<Long, Long> fired = runUntil(wheel, 2000);
+        assertEquals(Map.of(1L, 1000L, 3L, 1000L), fired);
+        assertTrue(wheel.isEmpty());
+
+        // the entries freed are reused
+        wheel.schedule(7, 300, 2000);
+        assertEquals(Map.of(7L, 2300L), runUntil(wheel, 3000));
+    }
+
+    // setting the timer of a key again replaces the one pending: it fires once, at the new time
+    @Test
+    void rearm() {
+        TimingWheel wheel = new TimingWheel(TICK, SIZE);
+        wheel.schedule(1, 500, 0);
+        wheel.schedule(1, 2000, 0);
+        // later, in the same bucket
+        wheel.schedule(2, 500, 0);
+        wheel.schedule(2, 500 + ROUND, 0);
+        // earlier
+        wheel.schedule(3, 2000, 0);
+        wheel.schedule(3, 500, 0);
+        // at the same time again, from later on
+        wheel.schedule(4, 800, 0);
+        wheel.schedule(4, 300, 500);
+        assertEquals(4, wheel.size());
+
+        assertEquals(Map.of(1L, 2000L, 2L, 500L + ROUND, 3L, 500L, 4L, 800L), runUntil(wheel, 2 * ROUND));
+        assertTrue(wheel.isEmpty());
+    }
+
+    // A timer due after more than one round shares its bucket with those due in the first round: the visits to
+    // the bucket in the rounds before its own must leave it there.
+    @Test
+    void longerThanARound() {
+        TimingWheel wheel = new TimingWheel(TICK, SIZE);
+        long start = 12345;
+        wheel.schedule(1, 300, start);
+        wheel.schedule(2, ROUND + 300, start);
+        wheel.schedule(3, 3 * ROUND + 300, start);
+        wheel.schedule(4, ROUND, start);
+
+        Map<Long, Long> fired = runUntil(wheel, start + 4 * ROUND);
+        assertEquals(4, fired.size());
+        long[] delays = {0, 300, ROUND + 300, 3 * ROUND + 300, ROUND};
+        for (long key = 1; key <= 4; key++) {
+            long late = fired.get(key) - (start + delays[(int) key]);
+            assertTrue(late >= 0 && late < TICK, "key " + key + " fired " + late + " ms late");
+        }
+    }
+
+    // a node that was busy for more than a round advances the wheel once, over every bucket
+    @Test
+    void advanceOverMoreThanARound() {
+        TimingWheel wheel = new TimingWheel(TICK, SIZE);
+        wheel.schedule(1, 300, 0);
+        wheel.schedule(2, ROUND + 300, 0);
+        wheel.schedule(3, 3 * ROUND + 300, 0);
+
+        List<Long> fired = new ArrayList<>();
+        wheel.advance(2 * ROUND, fired::add);
+        assertEquals(List.of(1L, 2L), fired.stream().sorted().collect(Collectors.toList()));
+        assertTrue(wheel.isScheduled(3));
+
+        fired.clear();
+        wheel.advance(3 * ROUND + 299, fired::add);
+        assertEquals(List.of(), fired);
+        wheel.advance(3 * ROUND + 300, fired::add);
+        assertEquals(List.of(3L), fired);
+    }
+
+    // never before its delay, at most one tick after it
+    @Test
+    void neverEarlyAtMostOneTickLate() {
+        Random r = new Random(3);
+        TimingWheel wheel = new TimingWheel(TICK, SIZE);
+        Map<Long, Long> dueAt = new HashMap<>();
+        long now = 777;
+        for (long key = 0; key < 5000; key++) {
+            int delay = r.nextInt(3 * ROUND);
+            wheel.schedule(key, delay, now);
+            dueAt.put(key, now + delay);
+            now += r.nextInt(3);
+        }
+
+        Map<Long, Long> fired = runUntil(wheel, now + 3 * ROUND + TICK);
+        assertEquals(dueAt.keySet(), fired.keySet());
+        dueAt.forEach((key, due) -> {
+            long late = fired.get(key) - due;
+            assertTrue(late >= 0 && late < TICK, "key " + key + " fired " + late + " ms late");
+        });
+    }
+
+    // the timers due at the same tick fire one by one: one of them may cancel, or set, the others
+    @Test
+    void changedWhileOthersFire() {
+        TimingWheel wheel = new TimingWheel(TICK, SIZE);
+        wheel.schedule(1, 500, 0);
+        wheel.schedule(2, 500, 0);
+        wheel.schedule(3, 500, 0);
+
+        List<Long> fired = new ArrayList<>();
+        wheel.advance(500, key -> {
+            fired.add(key);
+            if (fired.size() == 1) {
+                for (long other = 1; other <= 3; other++) {
+                    if (other != key) {
+                        assertTrue(wheel.cancel(other));
+                    }
+                }
+                wheel.schedule(key + 10, 200, 500);
+            }
+        });
+        assertEquals(1, fired.size());
+        assertEquals(1, wheel.size());
+        assertEquals(Map.of(fired.get(0) + 10, 700L), runUntil(wheel, 1000));
+    }
+}
@@ -0,0 +1,117 @@
+package it.unitn.ds1.project.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyIndexTest {
+
+    // every key at its slot, the keys around them nowhere
+    private static void assertIndexes(KeyIndex index, int[] keys) {
+        assertEquals(keys.length, index.size());
+        Set<Integer> held = new HashSet<>();
+        for (int slot = 0; slot < keys.length; slot++) {
+            assertEquals(slot, index.slotOf(keys[slot]), "slot of key " + keys[slot]);
+            assertEquals(keys[slot], index.keyAt(slot));
+            held.add(keys[slot]);
+        }
+        for (int key : keys) {
+            for (int other : new int[]{key - 1, key + 1, ~key}) {
+                if (!held.contains(other)) {
+                    assertEquals(-1, index.slotOf(other), "key " + other + " is not held");
+                }
+            }
+        }
+    }
+
+    private static int[] spread(int n, long seed) {
+        Random r = new Random(seed);
+        Set<Integer> seen = new HashSet<>();
+        return IntStream.generate(r::nextInt).filter(seen::add).limit(n).toArray();
+    }
+
+    @Test
+    void insertAndLookUp() {
+        int[] keys = {7, -3, 0, 42, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        KeyIndex index = new KeyIndex(keys);
+        assertIndexes(index, keys);
+        assertArrayEquals(keys, index.keys());
+    }
+
+    @Test
+    void empty() {
+        KeyIndex index = new KeyIndex(new int[0]);
+        assertEquals(0, index.size());
+        assertEquals(-1, index.slotOf(0));
+    }
+
+    @Test
+    void refusesDuplicates() {
+        assertThrows(IllegalArgumentException.class, () -> new KeyIndex(new int[]{1, 2, 1}));
+    }
+
+    // a store that gains and loses keys in a migration gets a new index over the new keys
+    @Test
+    void rekey() {
+        KeyIndex index = new KeyIndex(IntStream.range(0, 100).toArray());
+
+        int[] added = index.with(new int[]{99, 100, 150, 100});
+        assertArrayEquals(IntStream.concat(IntStream.range(0, 100), IntStream.of(100, 150)).toArray(), added);
+        assertIndexes(new KeyIndex(added), added);
+
+        int[] removed = new KeyIndex(added).without(new int[]{0, 50, 150, 1000});
+        assertEquals(99, removed.length);
+        assertTrue(Arrays.stream(removed).noneMatch(key -> key == 0 || key == 50 || key == 150));
+        KeyIndex rekeyed = new KeyIndex(removed);
+        assertIndexes(rekeyed, removed);
+        assertEquals(-1, rekeyed.slotOf(50));
+    }
+
+    @Test
+    void keysInARange() {
+        int[] keys = IntStream.range(1000, 2000).toArray();
+        KeyIndex index = new KeyIndex(keys);
+        assertIndexes(index, keys);
+        assertTrue(index.maxDisplacement() < 8, "displacement " + index.maxDisplacement());
+    }
+
+    @Test
+    void keysSpreadOverTheInts() {
+        int[] keys = spread(1000, 1);
+        KeyIndex index = new KeyIndex(keys);
+        assertIndexes(index, keys);
+        assertTrue(index.maxDisplacement() < 64, "displacement " + index.maxDisplacement());
+    }
+
+    // keys that differ only in their high bits, as the low bits of a hash that kept 16 bits would not tell apart
+    @Test
+    void keysApartByAPowerOfTwo() {
+        int[] keys = IntStream.range(0, 1000).map(i -> i << 16).toArray();
+        KeyIndex index = new KeyIndex(keys);
+        assertIndexes(index, keys);
+        assertTrue(index.maxDisplacement() < 64, "displacement " + index.maxDisplacement());
+    }
+
+    // more than 2^16 buckets: the bucket must depend on as many bits of the hash
+    @Test
+    void moreThan2To16Buckets() {
+        int[] range = IntStream.range(0, 1 << 17).toArray();
+        KeyIndex clustered = new KeyIndex(range);
+        assertIndexes(clustered, range);
+        assertTrue(clustered.maxDisplacement() < 8, "displacement " + clustered.maxDisplacement());
+
+        int[] keys = spread(1 << 17, 2);
+        KeyIndex spread = new KeyIndex(keys);
+        assertIndexes(spread, keys);
+        assertTrue(spread.maxDisplacement() < 64, "displacement " + spread.maxDisplacement());
+    }
+}
@@ -0,0 +1,242 @@
+package it.unitn.ds1.project.persistence;
+
+import it.unitn.ds1.project.message.dss.decision.DSSDecision;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteAheadLogTest {
+    // room for a few decisions only, so that the log rolls over many segments
+    private static final int SEGMENT_SIZE = 128;
+
+    @TempDir
+    Path directory;
+
+    private static LogRecord decision(long transactionID) {
+        return LogRecord.decision(transactionID, transactionID * 10, DSSDecision.COMMIT);
+    }
+
+    private static List<Long> transactionsOf(List<LogRecord> records) {
+        return records.stream().map(record -> record.transactionID).collect(Collectors.toList());
+    }
+
+    private static List<Long> range(long from, long to) {
+        return LongStream.range(from, to).boxed().collect(Collectors.toList());
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> f.getFileName().toString().startsWith("segment-")).sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // the offset of the frame of the last record of a segment, all of them being decisions of the same size
+    private static long lastFrameOf(Path segment) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "r")) {
+            long position = 0;
+            long last = -1;
+            while (position + 8 <= file.length()) {
+                file.seek(position);
+                int length = file.readInt();
+                if (length <= 0) {
+                    break;
+                }
+                last = position;
+                position += 8 + length;
+            }
+            return last;
+        }
+    }
+
+    @Test
+    void appendAndReplay() {
+        WriteAheadLog log = new WriteAheadLog(directory, SEGMENT_SIZE);
+        for (long i = 0; i < 20; i++) {
+            log.append(decision(i));
+        }
+        assertEquals(20, log.pendingRecords());
+        assertEquals(20, log.flush());
+        assertEquals(0, log.pendingRecords());
+
+        Counter items = new Counter();
+        List<LogRecord> records = log.replay(items);
+        assertEquals(range(0, 20), transactionsOf(records));
+        LogRecord first = records.get(0);
+        assertEquals(LogRecord.Type.DECISION, first.type);
+        assertEquals(0, first.timestamp);
+        assertEquals(DSSDecision.COMMIT, records.get(1).decision);
+        assertEquals(10, records.get(1).timestamp);
+        assertEquals(0, items.value);
+        log.close();
+    }
+
+    // Recovery loads the checkpoint and replays only what was appended after it: the segments before it are gone,
+    // and the records they held come back only through the state of the checkpoint.
+    @Test
+    void checkpointTruncatesAndReplaysTheTail() throws IOException {
+        WriteAheadLog log = new WriteAheadLog(directory, SEGMENT_SIZE);
+        for (long i = 0; i < 20; i++) {
+            log.append(decision(i));
+        }
+        log.flush();
+        List<Path> before = segments();
+        assertTrue(before.size() > 2, "segments " + before);
+
+        Counter items = new Counter();
+        items.value = 42;
+        log.checkpoint(items, List.of(decision(7), decision(13)));
+        assertEquals(0, log.recordsSinceCheckpoint());
+        before.forEach(segment -> assertFalse(Files.exists(segment), segment + " is still there"));
+
+        for (long i = 20; i < 30; i++) {
+            log.append(decision(i));
+        }
+        log.flush();
+        assertEquals(10, log.recordsSinceCheckpoint());
+
+        Counter recovered = new Counter();
+        List<LogRecord> records = log.replay(recovered);
+        assertEquals(42, recovered.value);
+        List<Long> expected = range(20, 30);
+        expected.addAll(0, List.of(7L, 13L));
+        assertEquals(expected, transactionsOf(records));
+
+        // a later checkpoint replaces the first one, and truncates again
+        List<Path> tail = segments();
+        items.value = 43;
+        log.checkpoint(items, List.of());
+        tail.forEach(segment -> assertFalse(Files.exists(segment), segment + " is still there"));
+        assertEquals(List.of(), log.replay(recovered));
+        assertEquals(43, recovered.value);
+        log.close();
+    }
+
+    @Test
+    void discardPendingAsACrashWould() {
+        WriteAheadLog log = new WriteAheadLog(directory, SEGMENT_SIZE);
+        for (long i = 0; i < 10; i++) {
+            log.append(decision(i));
+        }
+        log.flush();
+        for (long i = 10; i < 20; i++) {
+            log.append(decision(i));
+        }
+        log.discardPending();
+        assertEquals(0, log.pendingRecords());
+        assertEquals(range(0, 10), transactionsOf(log.replay(new Counter())));
+
+        // the log goes on where the durable part ended
+        log.append(decision(100));
+        log.flush();
+        List<Long> expected = range(0, 10);
+        expected.add(100L);
+        assertEquals(expected, transactionsOf(log.replay(new Counter())));
+        log.close();
+    }
+
+    // a crash in the middle of writing the last record: only part of it reached the file
+    @Test
+    void tornLastRecord() throws IOException {
+        WriteAheadLog log = new WriteAheadLog(directory, SEGMENT_SIZE);
+        for (long i = 0; i < 10; i++) {
+            log.append(decision(i));
+        }
+        log.close();
+
+        List<Path> segments = segments();
+        Path last = segments.get(segments.size() - 1);
+        long frame = lastFrameOf(last);
+        try (RandomAccessFile file = new RandomAccessFile(last.toFile(), "rw")) {
+            file.setLength(frame + 10);
+        }
+        assertEquals(range(0, 9), transactionsOf(log.replay(new Counter())));
+
+        // only the length made it
+        try (RandomAccessFile file = new RandomAccessFile(last.toFile(), "rw")) {
+            file.setLength(frame + 4);
+        }
+        assertEquals(range(0, 9), transactionsOf(log.replay(new Counter())));
+    }
+
+    // the last record is all there, but not as written: its checksum does not match
+    @Test
+    void lastRecordFailingItsChecksum() throws IOException {
+        WriteAheadLog log = new WriteAheadLog(directory, SEGMENT_SIZE);
+        for (long i = 0; i < 10; i++) {
+            log.append(decision(i));
+        }
+        log.close();
+
+        List<Path> segments = segments();
+        Path last = segments.get(segments.size() - 1);
+        long payload = lastFrameOf(last) + 8;
+        try (RandomAccessFile file = new RandomAccessFile(last.toFile(), "rw")) {
+            file.seek(payload + 3);
+            int b = file.read();
+            file.seek(payload + 3);
+            file.write(b ^ 0x10);
+        }
+        assertEquals(range(0, 9), transactionsOf(log.replay(new Counter())));
+
+        // a payload zeroed by the file system: the length is there, the bytes are not
+        try (RandomAccessFile file = new RandomAccessFile(last.toFile(), "rw")) {
+            file.seek(payload - 8);
+            int length = file.readInt();
+            file.seek(payload);
+            file.write(new byte[length]);
+        }
+        assertEquals(range(0, 9), transactionsOf(log.replay(new Counter())));
+    }
+
+    // a new log starts empty, but deletes only the files it would have written itself
+    @Test
+    void startsEmptyKeepingOtherFiles() throws IOException {
+        WriteAheadLog old = new WriteAheadLog(directory, SEGMENT_SIZE);
+        for (long i = 0; i < 20; i++) {
+            old.append(decision(i));
+        }
+        old.checkpoint(new Counter(), List.of());
+        old.close();
+        Path other = Files.writeString(directory.resolve("notes.txt"), "keep");
+        Path lookalike = Files.writeString(directory.resolve("segment-backup.log"), "keep");
+
+        WriteAheadLog log = new WriteAheadLog(directory, SEGMENT_SIZE);
+        assertTrue(Files.exists(other));
+        assertTrue(Files.exists(lookalike));
+        assertFalse(Files.exists(directory.resolve("checkpoint")));
+        Counter items = new Counter();
+        items.value = -1;
+        assertEquals(List.of(), log.replay(items));
+        assertEquals(-1, items.value);
+        log.close();
+    }
+
+    private static final class Counter implements Checkpointable {
+        int value;
+
+        @Override
+        public void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(value);
+        }
+
+        @Override
+        public void readFrom(DataInputStream in) throws IOException {
+            value = in.readInt();
+        }
+    }
+}